@@ -0,0 +1,294 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.flowpowered.caustic.api.gl.Texture.Format;
+import com.flowpowered.caustic.api.util.CausticUtil;
+import com.flowpowered.caustic.api.util.Rectangle;
+
+/**
+ * Reads, decodes and writes assets off the context thread, on virtual threads when the JVM has them and on a pool of daemon threads otherwise. The GL work on the results is queued and done on the
+ * context thread with {@link #runUploads(long)}, a time budget at a time, so new content never holds up a frame.
+ */
+public class AssetService {
+    public static final long SHUTDOWN_TIMEOUT = 5000;
+    private final ExecutorService executor;
+    private final boolean virtual;
+    // Only touched from the context thread
+    private final List<PendingUpload<?>> uploads = new ArrayList<>();
+
+    /**
+     * Constructs a new asset service.
+     *
+     * @param threads The number of I/O threads, or 0 for a virtual thread per task, falling back to one thread per available processor on JVMs without virtual threads
+     */
+    public AssetService(int threads) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("Thread count must be positive or 0");
+        }
+        ExecutorService virtualExecutor = null;
+        if (threads == 0) {
+            // Looked up reflectively, the sandbox is built for JVMs that predate them
+            try {
+                virtualExecutor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException ex) {
+                virtualExecutor = null;
+            }
+        }
+        if (virtualExecutor != null) {
+            executor = virtualExecutor;
+            virtual = true;
+        } else {
+            executor = Executors.newFixedThreadPool(threads == 0 ? Runtime.getRuntime().availableProcessors() : threads, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "Assets-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            virtual = false;
+        }
+    }
+
+    /**
+     * Returns whether or not the tasks run on virtual threads.
+     *
+     * @return Whether or not the threads are virtual
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Runs a task off the context thread.
+     *
+     * @param task The task
+     * @param <T> The type of the result
+     * @return The future result
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * Reads and decodes a class path image resource, ready to upload to a texture.
+     *
+     * @param path The resource path
+     * @param format The format of the decoded data
+     * @return The future image data
+     */
+    public Future<ImageData> loadImage(final String path, final Format format) {
+        return submit(new Callable<ImageData>() {
+            @Override
+            public ImageData call() throws IOException {
+                try (InputStream in = openResource(path)) {
+                    final Rectangle size = new Rectangle();
+                    final ByteBuffer data = CausticUtil.getImageData(in, format, size);
+                    return new ImageData(data, size.getWidth(), size.getHeight());
+                }
+            }
+        });
+    }
+
+    /**
+     * Queues the upload of an asset, done on the context thread by {@link #runUploads(long)} once the asset is ready. A failed asset is reported and dropped. Must be called from the context
+     * thread.
+     *
+     * @param asset The future asset
+     * @param upload The upload of the asset
+     * @param <T> The type of the asset
+     */
+    public <T> void upload(Future<T> asset, Upload<T> upload) {
+        uploads.add(new PendingUpload<>(asset, upload));
+    }
+
+    /**
+     * Runs the uploads of the ready assets, in the order they were queued, until the time budget is spent. At least one is run when any is ready, so a large asset isn't held back forever. Must be
+     * called from the context thread.
+     *
+     * @param budget The time budget, in nanoseconds
+     * @return The number of uploads run
+     */
+    public int runUploads(long budget) {
+        final long start = System.nanoTime();
+        int count = 0;
+        for (Iterator<PendingUpload<?>> iterator = uploads.iterator(); iterator.hasNext() && (count == 0 || System.nanoTime() - start < budget); ) {
+            final PendingUpload<?> upload = iterator.next();
+            if (upload.isReady()) {
+                iterator.remove();
+                upload.run();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Waits for all the queued assets and runs their uploads. Must be called from the context thread.
+     */
+    public void finishUploads() {
+        for (PendingUpload<?> upload : uploads) {
+            upload.run();
+        }
+        uploads.clear();
+    }
+
+    /**
+     * Returns the number of uploads queued and not yet run.
+     *
+     * @return The pending upload count
+     */
+    public int getPendingUploadCount() {
+        return uploads.size();
+    }
+
+    /**
+     * Stops the I/O threads, waiting up to {@link #SHUTDOWN_TIMEOUT} milliseconds for the running tasks, so a file being written isn't cut short. Queued uploads are dropped. The service can't be used
+     * after this.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        uploads.clear();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                System.out.println("Asset tasks still running after " + SHUTDOWN_TIMEOUT + " ms, they will be dropped");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static InputStream openResource(String path) throws IOException {
+        final InputStream in = AssetService.class.getResourceAsStream(path);
+        if (in == null) {
+            throw new IOException("Missing resource: " + path);
+        }
+        return in;
+    }
+
+    /**
+     * The GL work done on the context thread once an asset is ready.
+     *
+     * @param <T> The type of the asset
+     */
+    public interface Upload<T> {
+        /**
+         * Uploads the asset.
+         *
+         * @param asset The asset
+         */
+        void upload(T asset);
+    }
+
+    /**
+     * Decoded image data, with its size.
+     */
+    public static class ImageData {
+        private final ByteBuffer data;
+        private final int width;
+        private final int height;
+
+        private ImageData(ByteBuffer data, int width, int height) {
+            this.data = data;
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * Returns the pixel data.
+         *
+         * @return The data
+         */
+        public ByteBuffer getData() {
+            return data;
+        }
+
+        /**
+         * Returns the width in pixels.
+         *
+         * @return The width
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * Returns the height in pixels.
+         *
+         * @return The height
+         */
+        public int getHeight() {
+            return height;
+        }
+    }
+
+    private static class PendingUpload<T> {
+        private final Future<T> asset;
+        private final Upload<T> upload;
+
+        private PendingUpload(Future<T> asset, Upload<T> upload) {
+            this.asset = asset;
+            this.upload = upload;
+        }
+
+        private boolean isReady() {
+            return asset.isDone();
+        }
+
+        private void run() {
+            final T value;
+            try {
+                value = asset.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException ex) {
+                System.out.println("Asset failed: " + ex.getCause());
+                return;
+            }
+            upload.upload(value);
+        }
+    }
+}
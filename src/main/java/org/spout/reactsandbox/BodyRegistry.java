@@ -0,0 +1,291 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.flowpowered.caustic.api.model.Model;
+
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import org.spout.physics.body.CollisionBody;
+
+/**
+ * A dense registry of the bodies of a world and their render state. Bodies are referred to by integer handles, which stay valid until the body is removed and are then reused. The state is
+ * stored in parallel arrays packed at the front, so iterating over it is a linear scan and removal swaps the last entry into the hole. Bodies are looked up by their ID in a primitive map.
+ */
+public class BodyRegistry {
+    /**
+     * The body was synced to its models while at rest, so it doesn't need updating until it moves again.
+     */
+    public static final byte RESTING = 1;
+    /**
+     * The body is waiting for its models to be created.
+     */
+    public static final byte PENDING_MODELS = 1 << 1;
+    /**
+     * The body is selected.
+     */
+    public static final byte SELECTED = 1 << 2;
+    private static final int NO_HANDLE = -1;
+    // Dense columns, indexed from 0 to size
+    private CollisionBody[] bodies;
+    private Model[] shapeModels;
+    private Model[] aabbModels;
+    private byte[] flags;
+    private int[] denseToHandle;
+    // Sparse handle slots, pointing into the dense columns, or encoded as -2 - the next free slot when free
+    private int[] handleToDense;
+    private int nextFreeHandle = NO_HANDLE;
+    private int handleCount = 0;
+    private int size = 0;
+    private final TIntIntMap idToHandle = new TIntIntHashMap(16, 0.5f, NO_HANDLE, NO_HANDLE);
+    private final List<CollisionBody> bodyList = new AbstractList<CollisionBody>() {
+        @Override
+        public CollisionBody get(int index) {
+            if (index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+            }
+            return bodies[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    };
+
+    /**
+     * Constructs a new empty registry.
+     */
+    public BodyRegistry() {
+        allocate(16);
+    }
+
+    private void allocate(int capacity) {
+        bodies = bodies == null ? new CollisionBody[capacity] : Arrays.copyOf(bodies, capacity);
+        shapeModels = shapeModels == null ? new Model[capacity] : Arrays.copyOf(shapeModels, capacity);
+        aabbModels = aabbModels == null ? new Model[capacity] : Arrays.copyOf(aabbModels, capacity);
+        flags = flags == null ? new byte[capacity] : Arrays.copyOf(flags, capacity);
+        denseToHandle = denseToHandle == null ? new int[capacity] : Arrays.copyOf(denseToHandle, capacity);
+        handleToDense = handleToDense == null ? new int[capacity] : Arrays.copyOf(handleToDense, capacity);
+    }
+
+    /**
+     * Makes room for the given number of additional bodies, growing the columns once.
+     *
+     * @param additional The number of bodies about to be added
+     */
+    public void ensureCapacity(int additional) {
+        final int required = handleCount + additional;
+        if (required > bodies.length) {
+            allocate(Math.max(required, bodies.length * 2));
+            idToHandle.ensureCapacity(additional);
+        }
+    }
+
+    /**
+     * Adds a body to the registry, without models.
+     *
+     * @param body The body to add
+     * @return The handle of the body
+     */
+    public int add(CollisionBody body) {
+        final int handle;
+        if (nextFreeHandle != NO_HANDLE) {
+            handle = nextFreeHandle;
+            nextFreeHandle = -2 - handleToDense[handle];
+        } else {
+            ensureCapacity(1);
+            handle = handleCount++;
+        }
+        final int index = size++;
+        bodies[index] = body;
+        shapeModels[index] = null;
+        aabbModels[index] = null;
+        flags[index] = 0;
+        denseToHandle[index] = handle;
+        handleToDense[handle] = index;
+        idToHandle.put(body.getID(), handle);
+        return handle;
+    }
+
+    /**
+     * Removes the body of the handle. The handle can be reused by the next added body.
+     *
+     * @param handle The handle of the body
+     */
+    public void remove(int handle) {
+        final int index = handleToDense[handle];
+        idToHandle.remove(bodies[index].getID());
+        // Move the last entry into the hole
+        final int last = --size;
+        if (index != last) {
+            bodies[index] = bodies[last];
+            shapeModels[index] = shapeModels[last];
+            aabbModels[index] = aabbModels[last];
+            flags[index] = flags[last];
+            denseToHandle[index] = denseToHandle[last];
+            handleToDense[denseToHandle[index]] = index;
+        }
+        bodies[last] = null;
+        shapeModels[last] = null;
+        aabbModels[last] = null;
+        handleToDense[handle] = -2 - nextFreeHandle;
+        nextFreeHandle = handle;
+    }
+
+    /**
+     * Returns true if the handle refers to a registered body.
+     *
+     * @param handle The handle
+     * @return Whether or not the handle is in use
+     */
+    public boolean contains(int handle) {
+        return handle >= 0 && handle < handleCount && handleToDense[handle] >= 0;
+    }
+
+    /**
+     * Returns the handle of the body.
+     *
+     * @param body The body
+     * @return The handle, or -1 if the body isn't registered
+     */
+    public int getHandle(CollisionBody body) {
+        final int handle = idToHandle.get(body.getID());
+        return handle != NO_HANDLE && bodies[handleToDense[handle]] == body ? handle : NO_HANDLE;
+    }
+
+    /**
+     * Returns the number of registered bodies.
+     *
+     * @return The body count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a view of the bodies, in dense order. It changes as bodies are added and removed.
+     *
+     * @return An unmodifiable list of the bodies
+     */
+    public List<CollisionBody> getBodies() {
+        return bodyList;
+    }
+
+    /**
+     * Returns the dense index of the handle, valid until the next removal.
+     *
+     * @param handle The handle
+     * @return The dense index
+     */
+    public int getIndex(int handle) {
+        return handleToDense[handle];
+    }
+
+    /**
+     * Returns the handle of the body at the dense index.
+     *
+     * @param index The dense index
+     * @return The handle
+     */
+    public int getHandleAt(int index) {
+        return denseToHandle[index];
+    }
+
+    /**
+     * Returns the body at the dense index.
+     *
+     * @param index The dense index
+     * @return The body
+     */
+    public CollisionBody getBodyAt(int index) {
+        return bodies[index];
+    }
+
+    /**
+     * Returns the model of the shape of the body at the dense index.
+     *
+     * @param index The dense index
+     * @return The model of the shape, or null if the body has none
+     */
+    public Model getShapeModelAt(int index) {
+        return shapeModels[index];
+    }
+
+    /**
+     * Returns the model of the AABB of the body at the dense index.
+     *
+     * @param index The dense index
+     * @return The model of the AABB, or null if the body has none
+     */
+    public Model getAABBModelAt(int index) {
+        return aabbModels[index];
+    }
+
+    /**
+     * Sets the models of the body at the dense index.
+     *
+     * @param index The dense index
+     * @param shapeModel The model of the shape, or null
+     * @param aabbModel The model of the AABB, or null
+     */
+    public void setModelsAt(int index, Model shapeModel, Model aabbModel) {
+        shapeModels[index] = shapeModel;
+        aabbModels[index] = aabbModel;
+    }
+
+    /**
+     * Returns true if all the given flags are set for the body at the dense index.
+     *
+     * @param index The dense index
+     * @param flag The flags
+     * @return Whether or not the flags are set
+     */
+    public boolean hasFlagsAt(int index, byte flag) {
+        return (flags[index] & flag) == flag;
+    }
+
+    /**
+     * Sets or clears the flags for the body at the dense index.
+     *
+     * @param index The dense index
+     * @param flag The flags
+     * @param set Whether to set or clear the flags
+     */
+    public void setFlagsAt(int index, byte flag, boolean set) {
+        if (set) {
+            flags[index] |= flag;
+        } else {
+            flags[index] &= ~flag;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.flowpowered.math.vector.Vector3f;
+
+/**
+ * A camera path through control points, each a position with a pitch and yaw in degrees. The positions are joined by a Catmull-Rom spline, which passes through every point, and the angles are
+ * interpolated along it the same way. The path is parametrized from 0 to 1, each segment taking an equal share.
+ */
+public class CameraPath {
+    private final List<Vector3f> positions = new ArrayList<>();
+    private final List<Vector3f> angles = new ArrayList<>();
+
+    /**
+     * Adds a control point at the end of the path.
+     *
+     * @param position The position of the camera
+     * @param pitch The pitch in degrees
+     * @param yaw The yaw in degrees
+     * @return This path, for chained calls
+     */
+    public CameraPath add(Vector3f position, float pitch, float yaw) {
+        positions.add(position);
+        angles.add(new Vector3f(pitch, yaw, 0));
+        return this;
+    }
+
+    /**
+     * Returns the number of control points.
+     *
+     * @return The point count
+     */
+    public int getPointCount() {
+        return positions.size();
+    }
+
+    /**
+     * Returns the position on the path.
+     *
+     * @param t The parameter, from 0 at the first point to 1 at the last
+     * @return The position
+     */
+    public Vector3f getPosition(float t) {
+        return interpolate(positions, t);
+    }
+
+    /**
+     * Returns the pitch on the path.
+     *
+     * @param t The parameter, from 0 at the first point to 1 at the last
+     * @return The pitch in degrees
+     */
+    public float getPitch(float t) {
+        return interpolate(angles, t).getX();
+    }
+
+    /**
+     * Returns the yaw on the path.
+     *
+     * @param t The parameter, from 0 at the first point to 1 at the last
+     * @return The yaw in degrees
+     */
+    public float getYaw(float t) {
+        return interpolate(angles, t).getY();
+    }
+
+    private static Vector3f interpolate(List<Vector3f> points, float t) {
+        final int count = points.size();
+        if (count == 0) {
+            throw new IllegalStateException("The path has no points");
+        }
+        if (count == 1) {
+            return points.get(0);
+        }
+        final float scaled = Math.min(Math.max(t, 0), 1) * (count - 1);
+        final int segment = Math.min((int) scaled, count - 2);
+        final float u = scaled - segment;
+        // The end points are repeated for the tangents of the first and last segments
+        final Vector3f p0 = points.get(Math.max(segment - 1, 0));
+        final Vector3f p1 = points.get(segment);
+        final Vector3f p2 = points.get(segment + 1);
+        final Vector3f p3 = points.get(Math.min(segment + 2, count - 1));
+        final float u2 = u * u;
+        final float u3 = u2 * u;
+        return p1.mul(2)
+                .add(p2.sub(p0).mul(u))
+                .add(p0.mul(2).sub(p1.mul(5)).add(p2.mul(4)).sub(p3).mul(u2))
+                .add(p1.mul(3).sub(p0).sub(p2.mul(3)).add(p3).mul(u3))
+                .mul(0.5f);
+    }
+}
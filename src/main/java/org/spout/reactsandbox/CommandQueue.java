@@ -0,0 +1,124 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded lock-free queue for many producer threads and a single consumer thread. Each slot of the ring has a sequence number telling whether it's free for the producer at a position or holds
+ * the element for the consumer, so producers only contend on claiming a position and never wait on each other.
+ *
+ * @param <E> The type of the elements
+ */
+public class CommandQueue<E> {
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    // Only accessed by the consumer
+    private long head = 0;
+
+    /**
+     * Constructs a new queue.
+     *
+     * @param capacity The minimum capacity, rounded up to a power of two
+     */
+    public CommandQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than zero");
+        }
+        final int size = Integer.highestOneBit(capacity - 1) << 1;
+        mask = Math.max(size, 1) - 1;
+        elements = new AtomicReferenceArray<>(mask + 1);
+        sequences = new AtomicLongArray(mask + 1);
+        for (int i = 0; i <= mask; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Returns the capacity of the queue.
+     *
+     * @return The capacity
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Adds an element at the end of the queue, unless it's full. Can be called from any thread.
+     *
+     * @param element The element to add
+     * @return True if the element was added, false if the queue was full
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException("Element cannot be null");
+        }
+        long position = tail.get();
+        while (true) {
+            final int index = (int) position & mask;
+            final long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                // The slot is free for this position, claim it
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    // Publishes the element to the consumer
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The slot still holds an element from the previous lap
+                return false;
+            } else {
+                // Another producer claimed the position first
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Removes the element at the front of the queue. Must only be called from the consumer thread.
+     *
+     * @return The element, or null if the queue is empty
+     */
+    public E poll() {
+        final int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        final E element = elements.get(index);
+        elements.lazySet(index, null);
+        // Frees the slot for the producers of the next lap
+        sequences.lazySet(index, head + mask + 1);
+        head++;
+        return element;
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A non-blocking control endpoint on a loopback TCP port. Clients send one command per line and get one response line per command, in order. The server is polled from the render thread, so the
+ * handler runs there and can touch the sandbox directly. Each poll handles at most a given number of commands, leaving the rest for the next poll, so a flood of commands can't stall a frame.
+ */
+public class ControlServer implements Closeable {
+    private static final Charset CHARSET = Charset.forName("US-ASCII");
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_RESPONSE_LENGTH = 1024;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final Handler handler;
+    private final int maxCommandsPerPoll;
+    private final List<Connection> connections = new ArrayList<>();
+
+    /**
+     * Constructs a new control server and starts listening.
+     *
+     * @param port The loopback port to listen on
+     * @param maxCommandsPerPoll The maximum number of commands handled by each poll
+     * @param handler The handler of the commands
+     * @throws IOException If the port couldn't be bound
+     */
+    public ControlServer(int port, int maxCommandsPerPoll, Handler handler) throws IOException {
+        this.handler = handler;
+        this.maxCommandsPerPoll = maxCommandsPerPoll;
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.configureBlocking(false);
+        server.socket().bind(new InetSocketAddress(InetAddress.getByName(null), port));
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Accepts new connections, reads the available data, handles the complete commands up to the per poll limit and writes the responses. Never blocks. A failing client connection is logged and
+     * dropped, the others carry on.
+     *
+     * @return The number of commands handled
+     * @throws IOException If the selector failed
+     */
+    public int poll() throws IOException {
+        if (selector.selectNow() > 0) {
+            for (Iterator<SelectionKey> iterator = selector.selectedKeys().iterator(); iterator.hasNext(); ) {
+                final SelectionKey key = iterator.next();
+                iterator.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept();
+                } else if (key.isReadable()) {
+                    read((Connection) key.attachment());
+                }
+            }
+        }
+        int handled = 0;
+        for (Iterator<Connection> iterator = connections.iterator(); iterator.hasNext(); ) {
+            final Connection connection = iterator.next();
+            try {
+                handled += handleCommands(connection, maxCommandsPerPoll - handled);
+                write(connection);
+            } catch (IOException ex) {
+                // The client is gone, so are its pending responses
+                connection.closed = true;
+                connection.in.clear();
+                connection.out.clear();
+            }
+            // Finish handling the commands a client sent before closing its side
+            if (connection.closed && connection.out.position() == 0 && indexOfNewLine(connection.in, 0, connection.in.position()) < 0) {
+                close(connection);
+                iterator.remove();
+            }
+        }
+        return handled;
+    }
+
+    private void accept() {
+        SocketChannel channel;
+        while (true) {
+            try {
+                channel = server.accept();
+            } catch (IOException ex) {
+                System.out.println("Control server couldn't accept a connection: " + ex.getMessage());
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            final Connection connection = new Connection(channel);
+            try {
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (IOException ex) {
+                System.out.println("Control server dropped a connection: " + ex.getMessage());
+                close(connection);
+                continue;
+            }
+            connections.add(connection);
+        }
+    }
+
+    private static void close(Connection connection) {
+        try {
+            connection.channel.close();
+        } catch (IOException ex) {
+            System.out.println("Control server couldn't close a connection: " + ex.getMessage());
+        }
+    }
+
+    private void read(Connection connection) {
+        try {
+            if (connection.channel.read(connection.in) < 0) {
+                connection.closed = true;
+            } else if (!connection.in.hasRemaining() && indexOfNewLine(connection.in, 0, connection.in.position()) < 0) {
+                // A line longer than the buffer can never be handled
+                connection.closed = true;
+                connection.in.clear();
+            }
+        } catch (IOException ex) {
+            connection.closed = true;
+        }
+    }
+
+    private int handleCommands(Connection connection, int budget) {
+        final ByteBuffer in = connection.in;
+        in.flip();
+        int handled = 0;
+        int newLine;
+        // Leave room for the response of each command, or wait for the client to read them
+        while (handled < budget && connection.out.remaining() >= MAX_RESPONSE_LENGTH + 1 && (newLine = indexOfNewLine(in, in.position(), in.limit())) >= 0) {
+            final byte[] bytes = new byte[newLine - in.position()];
+            in.get(bytes);
+            in.get();
+            final String command = new String(bytes, CHARSET).trim();
+            if (command.isEmpty()) {
+                continue;
+            }
+            String response = handler.handle(command);
+            if (response.length() > MAX_RESPONSE_LENGTH) {
+                response = response.substring(0, MAX_RESPONSE_LENGTH);
+            }
+            connection.out.put(response.getBytes(CHARSET));
+            connection.out.put((byte) '\n');
+            handled++;
+        }
+        in.compact();
+        return handled;
+    }
+
+    private static int indexOfNewLine(ByteBuffer buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void write(Connection connection) throws IOException {
+        if (connection.out.position() == 0) {
+            return;
+        }
+        connection.out.flip();
+        connection.channel.write(connection.out);
+        connection.out.compact();
+    }
+
+    /**
+     * Closes all the connections and stops listening.
+     *
+     * @throws IOException If a channel couldn't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        for (Connection connection : connections) {
+            connection.channel.close();
+        }
+        connections.clear();
+        server.close();
+        selector.close();
+    }
+
+    /**
+     * Handles the commands received by the server.
+     */
+    public static interface Handler {
+        /**
+         * Handles a command and returns the response, which must fit on one line.
+         *
+         * @param command The command line, trimmed
+         * @return The response
+         */
+        String handle(String command);
+    }
+
+    private static class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+        private final ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+        private boolean closed = false;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.flowpowered.caustic.api.data.VertexAttribute;
+import com.flowpowered.caustic.api.data.VertexAttribute.DataType;
+import com.flowpowered.caustic.api.data.VertexData;
+import com.flowpowered.caustic.api.gl.VertexArray;
+import com.flowpowered.math.vector.Vector3f;
+import com.flowpowered.math.vector.Vector4f;
+
+import gnu.trove.list.TFloatList;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TFloatArrayList;
+
+/**
+ * Collects colored debug lines for a frame and streams them into a single vertex array, so they can all be drawn in one call. Points are drawn as small axis aligned crosses. Lines are only
+ * collected for the enabled categories.
+ */
+public class DebugDraw {
+    private static final float POINT_SIZE = 0.1f;
+    private final Set<Category> enabled = EnumSet.noneOf(Category.class);
+    private final TFloatList positions = new TFloatArrayList();
+    private final TFloatList colors = new TFloatArrayList();
+    private final VertexData data = new VertexData();
+    private final VertexAttribute positionsAttribute = new VertexAttribute("positions", DataType.FLOAT, 3);
+    private final VertexAttribute colorsAttribute = new VertexAttribute("colors", DataType.FLOAT, 4);
+
+    /**
+     * Constructs a new debug draw with all the categories disabled.
+     */
+    public DebugDraw() {
+        data.addAttribute(0, positionsAttribute);
+        data.addAttribute(1, colorsAttribute);
+    }
+
+    /**
+     * Returns true if the lines of the category are drawn.
+     *
+     * @param category The category
+     * @return Whether or not the category is enabled
+     */
+    public boolean isEnabled(Category category) {
+        return enabled.contains(category);
+    }
+
+    /**
+     * Enables or disables the lines of the category.
+     *
+     * @param category The category
+     * @param enabled Whether or not to draw the category
+     */
+    public void setEnabled(Category category, boolean enabled) {
+        if (enabled) {
+            this.enabled.add(category);
+        } else {
+            this.enabled.remove(category);
+        }
+    }
+
+    /**
+     * Returns true if any category is enabled.
+     *
+     * @return Whether or not anything can be drawn
+     */
+    public boolean isAnyEnabled() {
+        return !enabled.isEmpty();
+    }
+
+    /**
+     * Adds a line in the color of the category, if it's enabled.
+     *
+     * @param category The category of the line
+     * @param x1 The x coordinate of the start
+     * @param y1 The y coordinate of the start
+     * @param z1 The z coordinate of the start
+     * @param x2 The x coordinate of the end
+     * @param y2 The y coordinate of the end
+     * @param z2 The z coordinate of the end
+     */
+    public void addLine(Category category, float x1, float y1, float z1, float x2, float y2, float z2) {
+        if (!enabled.contains(category)) {
+            return;
+        }
+        addVertex(x1, y1, z1, category.getColor());
+        addVertex(x2, y2, z2, category.getColor());
+    }
+
+    /**
+     * Adds a line in the color of the category, if it's enabled.
+     *
+     * @param category The category of the line
+     * @param start The start of the line
+     * @param end The end of the line
+     */
+    public void addLine(Category category, Vector3f start, Vector3f end) {
+        addLine(category, start.getX(), start.getY(), start.getZ(), end.getX(), end.getY(), end.getZ());
+    }
+
+    /**
+     * Adds a point in the color of the category, if it's enabled.
+     *
+     * @param category The category of the point
+     * @param x The x coordinate
+     * @param y The y coordinate
+     * @param z The z coordinate
+     */
+    public void addPoint(Category category, float x, float y, float z) {
+        addLine(category, x - POINT_SIZE, y, z, x + POINT_SIZE, y, z);
+        addLine(category, x, y - POINT_SIZE, z, x, y + POINT_SIZE, z);
+        addLine(category, x, y, z - POINT_SIZE, x, y, z + POINT_SIZE);
+    }
+
+    /**
+     * Adds a point in the color of the category, if it's enabled.
+     *
+     * @param category The category of the point
+     * @param point The point
+     */
+    public void addPoint(Category category, Vector3f point) {
+        addPoint(category, point.getX(), point.getY(), point.getZ());
+    }
+
+    private void addVertex(float x, float y, float z, Vector4f color) {
+        positions.add(x);
+        positions.add(y);
+        positions.add(z);
+        colors.add(color.getX());
+        colors.add(color.getY());
+        colors.add(color.getZ());
+        colors.add(color.getW());
+    }
+
+    /**
+     * Returns true if no lines were added since the last clear.
+     *
+     * @return Whether or not there's nothing to draw
+     */
+    public boolean isEmpty() {
+        return positions.isEmpty();
+    }
+
+    /**
+     * Uploads the lines to the vertex array, replacing its previous data. Does nothing if there are no lines.
+     *
+     * @param vertexArray The vertex array to upload to
+     */
+    public void upload(VertexArray vertexArray) {
+        if (isEmpty()) {
+            return;
+        }
+        // Each vertex is only used once, so the indices are just kept as long as the vertex list
+        final TIntList indices = data.getIndices();
+        final int vertexCount = positions.size() / 3;
+        if (indices.size() > vertexCount) {
+            indices.remove(vertexCount, indices.size() - vertexCount);
+        }
+        for (int i = indices.size(); i < vertexCount; i++) {
+            indices.add(i);
+        }
+        positionsAttribute.setData(positions);
+        colorsAttribute.setData(colors);
+        vertexArray.setData(data);
+    }
+
+    /**
+     * Removes all the lines, for the next frame.
+     */
+    public void clear() {
+        positions.clear();
+        colors.clear();
+    }
+
+    /**
+     * The categories of debug lines, each with its own color.
+     */
+    public static enum Category {
+        CONTACTS("Contacts", new Vector4f(1, 0.2f, 0.2f, 1)),
+        PAIRS("Pairs", new Vector4f(0.2f, 0.9f, 0.9f, 1)),
+        JOINTS("Joints", new Vector4f(0.9f, 0.2f, 0.9f, 1));
+        private final String configName;
+        private final Vector4f color;
+
+        private Category(String configName, Vector4f color) {
+            this.configName = configName;
+            this.color = color;
+        }
+
+        /**
+         * Returns the name of the category's toggle in the configuration.
+         *
+         * @return The config name
+         */
+        public String getConfigName() {
+            return configName;
+        }
+
+        /**
+         * Returns the color of the category's lines.
+         *
+         * @return The color
+         */
+        public Vector4f getColor() {
+            return color;
+        }
+    }
+}
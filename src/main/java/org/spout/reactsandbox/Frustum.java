@@ -0,0 +1,89 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+import com.flowpowered.math.matrix.Matrix4f;
+import com.flowpowered.math.vector.Vector3f;
+
+/**
+ * The six planes of a view frustum, extracted from a projection and view matrix, used to cull bounding spheres.
+ */
+public class Frustum {
+    private final float[] planes = new float[24];
+
+    /**
+     * Updates the planes from the product of the projection and view matrices.
+     *
+     * @param matrix The view projection matrix
+     */
+    public void update(Matrix4f matrix) {
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 4; j++) {
+                final float w = matrix.get(3, j);
+                final float row = matrix.get(i, j);
+                planes[i * 8 + j] = w + row;
+                planes[i * 8 + 4 + j] = w - row;
+            }
+        }
+        for (int i = 0; i < 24; i += 4) {
+            final float length = (float) Math.sqrt(planes[i] * planes[i] + planes[i + 1] * planes[i + 1] + planes[i + 2] * planes[i + 2]);
+            planes[i] /= length;
+            planes[i + 1] /= length;
+            planes[i + 2] /= length;
+            planes[i + 3] /= length;
+        }
+    }
+
+    /**
+     * Returns true if the sphere is at least partially inside the frustum.
+     *
+     * @param center The center of the sphere
+     * @param radius The radius of the sphere
+     * @return Whether or not the sphere intersects the frustum
+     */
+    public boolean intersectsSphere(Vector3f center, float radius) {
+        return intersectsSphere(center.getX(), center.getY(), center.getZ(), radius);
+    }
+
+    /**
+     * Returns true if the sphere is at least partially inside the frustum.
+     *
+     * @param x The x coordinate of the center of the sphere
+     * @param y The y coordinate of the center of the sphere
+     * @param z The z coordinate of the center of the sphere
+     * @param radius The radius of the sphere
+     * @return Whether or not the sphere intersects the frustum
+     */
+    public boolean intersectsSphere(float x, float y, float z, float radius) {
+        for (int i = 0; i < 24; i += 4) {
+            if (planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3] < -radius) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
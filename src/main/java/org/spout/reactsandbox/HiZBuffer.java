@@ -0,0 +1,196 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+import java.nio.FloatBuffer;
+
+import com.flowpowered.math.matrix.Matrix4f;
+import com.flowpowered.math.vector.Vector3f;
+
+/**
+ * A hierarchical depth buffer: a pyramid of the farthest depths of a depth buffer, each level covering 2x2 texels of the one below. Boxes are tested against it with the view projection matrix the
+ * depths were rendered with, reading only the few texels of the level where the box covers about 2x2 texels. It doesn't use OpenGL, the depths are read back from the GPU by the caller.
+ */
+public class HiZBuffer {
+    private final float[] matrix = new float[16];
+    private float[][] levels = null;
+    private int[] widths;
+    private int[] heights;
+
+    /**
+     * Rebuilds the pyramid from new depths.
+     *
+     * @param depths The window space depths, from 0 to 1, row by row from the bottom left
+     * @param width The width of the depth buffer
+     * @param height The height of the depth buffer
+     * @param viewProjection The product of the projection and view matrices the depths were rendered with
+     */
+    public void update(FloatBuffer depths, int width, int height, Matrix4f viewProjection) {
+        for (int row = 0; row < 4; row++) {
+            for (int column = 0; column < 4; column++) {
+                matrix[row * 4 + column] = viewProjection.get(row, column);
+            }
+        }
+        if (levels == null || widths[0] != width || heights[0] != height) {
+            allocate(width, height);
+        }
+        depths.get(levels[0], 0, width * height);
+        for (int level = 1; level < levels.length; level++) {
+            final float[] source = levels[level - 1];
+            final int sourceWidth = widths[level - 1];
+            final int sourceHeight = heights[level - 1];
+            final float[] destination = levels[level];
+            final int levelWidth = widths[level];
+            final int levelHeight = heights[level];
+            for (int y = 0; y < levelHeight; y++) {
+                // Odd sizes leave a last row and column without a pair, which are clamped to the edge
+                final int y0 = y * 2 * sourceWidth;
+                final int y1 = Math.min(y * 2 + 1, sourceHeight - 1) * sourceWidth;
+                for (int x = 0; x < levelWidth; x++) {
+                    final int x0 = x * 2;
+                    final int x1 = Math.min(x0 + 1, sourceWidth - 1);
+                    destination[y * levelWidth + x] = Math.max(Math.max(source[y0 + x0], source[y0 + x1]), Math.max(source[y1 + x0], source[y1 + x1]));
+                }
+            }
+        }
+    }
+
+    private void allocate(int width, int height) {
+        int count = 1;
+        for (int size = Math.max(width, height); size > 1; size = (size + 1) / 2) {
+            count++;
+        }
+        levels = new float[count][];
+        widths = new int[count];
+        heights = new int[count];
+        for (int level = 0; level < count; level++) {
+            widths[level] = width;
+            heights[level] = height;
+            levels[level] = new float[width * height];
+            width = (width + 1) / 2;
+            height = (height + 1) / 2;
+        }
+    }
+
+    // Reads back the pyramid, for the tests
+    int getLevelCount() {
+        return levels.length;
+    }
+
+    int getLevelWidth(int level) {
+        return widths[level];
+    }
+
+    int getLevelHeight(int level) {
+        return heights[level];
+    }
+
+    float getDepth(int level, int x, int y) {
+        return levels[level][y * widths[level] + x];
+    }
+
+    /**
+     * Returns true if the buffer has been updated at least once.
+     *
+     * @return Whether or not there are depths to test against
+     */
+    public boolean isReady() {
+        return levels != null;
+    }
+
+    /**
+     * Returns true if the axis aligned box enclosing the sphere is entirely behind the depths.
+     *
+     * @param center The center of the sphere
+     * @param radius The radius of the sphere
+     * @return Whether or not the sphere is occluded
+     */
+    public boolean isOccluded(Vector3f center, float radius) {
+        final float x = center.getX(), y = center.getY(), z = center.getZ();
+        return isOccluded(x - radius, y - radius, z - radius, x + radius, y + radius, z + radius);
+    }
+
+    /**
+     * Returns true if the axis aligned box is entirely behind the depths. Boxes crossing the near plane or outside the buffer are never occluded.
+     *
+     * @param minX The minimum x coordinate of the box
+     * @param minY The minimum y coordinate of the box
+     * @param minZ The minimum z coordinate of the box
+     * @param maxX The maximum x coordinate of the box
+     * @param maxY The maximum y coordinate of the box
+     * @param maxZ The maximum z coordinate of the box
+     * @return Whether or not the box is occluded
+     */
+    public boolean isOccluded(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        if (levels == null) {
+            return false;
+        }
+        float left = Float.POSITIVE_INFINITY, bottom = Float.POSITIVE_INFINITY, right = Float.NEGATIVE_INFINITY, top = Float.NEGATIVE_INFINITY;
+        float nearest = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < 8; i++) {
+            final float x = (i & 1) == 0 ? minX : maxX;
+            final float y = (i & 2) == 0 ? minY : maxY;
+            final float z = (i & 4) == 0 ? minZ : maxZ;
+            final float w = matrix[12] * x + matrix[13] * y + matrix[14] * z + matrix[15];
+            if (w <= 0) {
+                return false;
+            }
+            final float screenX = (matrix[0] * x + matrix[1] * y + matrix[2] * z + matrix[3]) / w;
+            final float screenY = (matrix[4] * x + matrix[5] * y + matrix[6] * z + matrix[7]) / w;
+            final float depth = (matrix[8] * x + matrix[9] * y + matrix[10] * z + matrix[11]) / w;
+            left = Math.min(left, screenX);
+            right = Math.max(right, screenX);
+            bottom = Math.min(bottom, screenY);
+            top = Math.max(top, screenY);
+            nearest = Math.min(nearest, depth);
+        }
+        if (left > 1 || right < -1 || bottom > 1 || top < -1 || nearest < -1) {
+            return false;
+        }
+        // From normalized device coordinates to texels of the full size level
+        final int width = widths[0], height = heights[0];
+        final int x0 = Math.max((int) ((left * 0.5f + 0.5f) * width), 0);
+        final int x1 = Math.min((int) ((right * 0.5f + 0.5f) * width), width - 1);
+        final int y0 = Math.max((int) ((bottom * 0.5f + 0.5f) * height), 0);
+        final int y1 = Math.min((int) ((top * 0.5f + 0.5f) * height), height - 1);
+        int level = 0;
+        while (level < levels.length - 1 && Math.max(x1 - x0, y1 - y0) >> level > 1) {
+            level++;
+        }
+        final float[] depths = levels[level];
+        final int levelWidth = widths[level];
+        final float boxDepth = nearest * 0.5f + 0.5f;
+        for (int y = y0 >> level; y <= y1 >> level; y++) {
+            for (int x = x0 >> level; x <= x1 >> level; x++) {
+                if (depths[y * levelWidth + x] >= boxDepth) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * The perceptual difference between two images of the same size. Each pair of pixels is converted from sRGB to CIE L*a*b* and compared by their distance, the CIE76 delta E, for which about 2.3 is a
+ * just noticeable difference. The pixels further apart than a tolerance are counted as failing, and a heat map of the differences is kept for inspection.
+ */
+public class ImageDiff {
+    private static final float[] LINEAR = new float[256];
+    private final int width;
+    private final int height;
+    private final float tolerance;
+    private final BufferedImage heatMap;
+    private double meanDeltaE = 0;
+    private float maxDeltaE = 0;
+    private int failingPixels = 0;
+
+    static {
+        for (int i = 0; i < LINEAR.length; i++) {
+            final float c = i / 255f;
+            LINEAR[i] = c <= 0.04045f ? c / 12.92f : (float) Math.pow((c + 0.055f) / 1.055f, 2.4f);
+        }
+    }
+
+    /**
+     * Compares an image to its reference.
+     *
+     * @param reference The reference image
+     * @param image The image to compare
+     * @param tolerance The delta E past which a pixel is failing
+     */
+    public ImageDiff(BufferedImage reference, BufferedImage image, float tolerance) {
+        if (reference.getWidth() != image.getWidth() || reference.getHeight() != image.getHeight()) {
+            throw new IllegalArgumentException("The image is " + image.getWidth() + "x" + image.getHeight() + ", the reference is " + reference.getWidth() + "x" + reference.getHeight());
+        }
+        width = image.getWidth();
+        height = image.getHeight();
+        this.tolerance = tolerance;
+        heatMap = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final float[] referenceLab = new float[3];
+        final float[] imageLab = new float[3];
+        double sum = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                toLab(reference.getRGB(x, y), referenceLab);
+                toLab(image.getRGB(x, y), imageLab);
+                final float dL = referenceLab[0] - imageLab[0];
+                final float da = referenceLab[1] - imageLab[1];
+                final float db = referenceLab[2] - imageLab[2];
+                final float deltaE = (float) Math.sqrt(dL * dL + da * da + db * db);
+                sum += deltaE;
+                maxDeltaE = Math.max(maxDeltaE, deltaE);
+                if (deltaE > tolerance) {
+                    failingPixels++;
+                }
+                // Failing pixels are red, scaled by how far past the tolerance they are, the others gray by their difference
+                final int heat;
+                if (deltaE > tolerance) {
+                    final int red = Math.min(255, 128 + (int) ((deltaE - tolerance) * 8));
+                    heat = red << 16;
+                } else {
+                    final int gray = (int) (deltaE / tolerance * 64);
+                    heat = gray << 16 | gray << 8 | gray;
+                }
+                heatMap.setRGB(x, y, heat);
+            }
+        }
+        meanDeltaE = sum / (width * height);
+    }
+
+    private static void toLab(int rgb, float[] lab) {
+        final float r = LINEAR[rgb >> 16 & 0xff];
+        final float g = LINEAR[rgb >> 8 & 0xff];
+        final float b = LINEAR[rgb & 0xff];
+        // Linear sRGB to XYZ, relative to the D65 white point
+        final float x = (0.4124f * r + 0.3576f * g + 0.1805f * b) / 0.95047f;
+        final float y = 0.2126f * r + 0.7152f * g + 0.0722f * b;
+        final float z = (0.0193f * r + 0.1192f * g + 0.9505f * b) / 1.08883f;
+        final float fx = labCurve(x);
+        final float fy = labCurve(y);
+        final float fz = labCurve(z);
+        lab[0] = 116 * fy - 16;
+        lab[1] = 500 * (fx - fy);
+        lab[2] = 200 * (fy - fz);
+    }
+
+    private static float labCurve(float t) {
+        return t > 216 / 24389f ? (float) Math.cbrt(t) : (24389 / 27f * t + 16) / 116;
+    }
+
+    /**
+     * Returns the average delta E over all the pixels.
+     *
+     * @return The mean delta E
+     */
+    public double getMeanDeltaE() {
+        return meanDeltaE;
+    }
+
+    /**
+     * Returns the largest delta E of all the pixels.
+     *
+     * @return The max delta E
+     */
+    public float getMaxDeltaE() {
+        return maxDeltaE;
+    }
+
+    /**
+     * Returns the fraction of the pixels further apart than the tolerance.
+     *
+     * @return The failing fraction, from 0 to 1
+     */
+    public float getFailingFraction() {
+        return failingPixels / (float) (width * height);
+    }
+
+    /**
+     * Returns the tolerance the pixels were compared with.
+     *
+     * @return The tolerance in delta E
+     */
+    public float getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Returns an image of the differences: gray up to the tolerance, red past it.
+     *
+     * @return The heat map
+     */
+    public BufferedImage getHeatMap() {
+        return heatMap;
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.flowpowered.caustic.api.Camera;
+import com.flowpowered.caustic.api.data.VertexData;
+import com.flowpowered.caustic.api.gl.VertexArray;
+import com.flowpowered.caustic.api.model.Model;
+import com.flowpowered.caustic.api.util.MeshGenerator;
+import com.flowpowered.math.TrigMath;
+import com.flowpowered.math.vector.Vector3f;
+import com.flowpowered.math.vector.Vector4i;
+
+import gnu.trove.list.TFloatList;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TFloatArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Swaps the vertex arrays of models between chains of meshes of decreasing detail, based on the projected size of the models. Each pass keeps its own levels, so that a pass can use coarser meshes
+ * than another by using a smaller bias. A level only changes once the size is past its threshold by a margin, so that models at a threshold don't pop back and forth.
+ */
+public class LevelOfDetail {
+    /**
+     * The number of levels in a chain, the first being the full detail mesh.
+     */
+    public static final int LEVEL_COUNT = 4;
+    // Slices around the axis and stacks along it for each coarse level
+    private static final int[] SLICES = {16, 10, 6};
+    private static final int[] STACKS = {8, 6, 4};
+    // Projected radius, as a fraction of half the view height, under which each coarse level is used
+    private static final float[] THRESHOLDS = {0.25f, 0.1f, 0.04f};
+    private static final float HYSTERESIS = 0.15f;
+    private final Map<Model, Entry> entries = new IdentityHashMap<>();
+    private final int passCount;
+
+    /**
+     * Creates a new level of detail selector.
+     *
+     * @param passCount The number of passes to keep levels for
+     */
+    public LevelOfDetail(int passCount) {
+        this.passCount = passCount;
+    }
+
+    /**
+     * Adds a model, using the first level of the chain until the next selection.
+     *
+     * @param model The model
+     * @param levels The chain of vertex arrays, from the most to the least detailed
+     * @param boundingRadius The radius of a sphere around the model origin enclosing the unscaled model
+     */
+    public void add(Model model, VertexArray[] levels, float boundingRadius) {
+        model.setVertexArray(levels[0]);
+        entries.put(model, new Entry(levels, boundingRadius, passCount));
+    }
+
+    /**
+     * Removes a model. It keeps its current vertex array.
+     *
+     * @param model The model, ignored if never added
+     */
+    public void remove(Model model) {
+        entries.remove(model);
+    }
+
+    /**
+     * Returns the number of models with a chain.
+     *
+     * @return The model count
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Selects the level of each model for a pass, and swaps in its vertex array.
+     *
+     * @param pass The index of the pass
+     * @param camera The camera of the pass
+     * @param bias The factor of the projected sizes, smaller values select coarser levels
+     * @param renderList The bucketed list of the models, those of its hidden groups are skipped
+     * @param rebucket Whether or not to move the models whose level changed to the bucket of their new vertex array, when the pass draws in the order of the list
+     */
+    public void select(int pass, Camera camera, float bias, ModelRenderList renderList, boolean rebucket) {
+        final Vector3f eye = camera.getPosition();
+        // The projection scale of the vertical axis is the inverse of the tangent of half the field of view
+        final float projection = camera.getProjectionMatrix().get(1, 1) * bias;
+        for (Map.Entry<Model, Entry> mapEntry : entries.entrySet()) {
+            final Model model = mapEntry.getKey();
+            if (!renderList.contains(model)) {
+                continue;
+            }
+            final Entry entry = mapEntry.getValue();
+            final float distance = model.getPosition().distance(eye);
+            final float size = distance > 0 ? entry.boundingRadius * model.getScale().max() * projection / distance : Float.POSITIVE_INFINITY;
+            int level = entry.levels[pass];
+            while (level < LEVEL_COUNT - 1 && size < THRESHOLDS[level] * (1 - HYSTERESIS)) {
+                level++;
+            }
+            while (level > 0 && size > THRESHOLDS[level - 1] * (1 + HYSTERESIS)) {
+                level--;
+            }
+            entry.levels[pass] = (byte) level;
+            model.setVertexArray(entry.vertexArrays[level]);
+            if (rebucket) {
+                renderList.updateModel(model);
+            }
+        }
+    }
+
+    /**
+     * Puts every model back to its most detailed level, in all passes.
+     *
+     * @param renderList The bucketed list to move the models back to the bucket of their most detailed mesh
+     */
+    public void reset(ModelRenderList renderList) {
+        for (Map.Entry<Model, Entry> mapEntry : entries.entrySet()) {
+            final Entry entry = mapEntry.getValue();
+            for (int i = 0; i < passCount; i++) {
+                entry.levels[i] = 0;
+            }
+            mapEntry.getKey().setVertexArray(entry.vertexArrays[0]);
+            renderList.updateModel(mapEntry.getKey());
+        }
+    }
+
+    /**
+     * Generates a UV sphere centered on the origin.
+     *
+     * @param radius The radius
+     * @param level The coarse level, from 1 to {@link #LEVEL_COUNT} - 1
+     * @return The vertex data
+     */
+    public static VertexData generateSphere(float radius, int level) {
+        return generateCapsule(radius, 0, level);
+    }
+
+    /**
+     * Generates a capsule centered on the origin, along the y axis.
+     *
+     * @param radius The radius of the hemispheres
+     * @param height The distance between the centers of the hemispheres
+     * @param level The coarse level, from 1 to {@link #LEVEL_COUNT} - 1
+     * @return The vertex data
+     */
+    public static VertexData generateCapsule(float radius, float height, int level) {
+        final int slices = SLICES[level - 1];
+        final int stacks = STACKS[level - 1];
+        final TFloatList positions = new TFloatArrayList();
+        final TFloatList normals = new TFloatArrayList();
+        final TIntList indices = new TIntArrayList();
+        final int halfStacks = stacks / 2;
+        // The equator ring is added twice, once for each hemisphere, with the straight part between them
+        final int rows = height > 0 ? stacks + 2 : stacks + 1;
+        for (int row = 0; row < rows; row++) {
+            final int stack = height > 0 && row > halfStacks ? row - 1 : row;
+            final float offset = height > 0 ? (row > halfStacks ? -height / 2 : height / 2) : 0;
+            final float phi = (float) TrigMath.PI * stack / stacks;
+            final float ringRadius = TrigMath.sin(phi);
+            final float y = TrigMath.cos(phi);
+            for (int slice = 0; slice <= slices; slice++) {
+                final float theta = 2 * (float) TrigMath.PI * slice / slices;
+                final float x = ringRadius * TrigMath.cos(theta);
+                final float z = ringRadius * TrigMath.sin(theta);
+                addVertex(positions, normals, x * radius, y * radius + offset, z * radius, x, y, z);
+            }
+        }
+        addBands(indices, 0, rows - 1, slices);
+        return MeshGenerator.buildMesh(new Vector4i(3, 3, 0, 0), positions, normals, null, indices);
+    }
+
+    /**
+     * Generates a cylinder centered on the origin, along the y axis.
+     *
+     * @param radius The radius
+     * @param height The height
+     * @param level The coarse level, from 1 to {@link #LEVEL_COUNT} - 1
+     * @return The vertex data
+     */
+    public static VertexData generateCylinder(float radius, float height, int level) {
+        final int slices = SLICES[level - 1];
+        final TFloatList positions = new TFloatArrayList();
+        final TFloatList normals = new TFloatArrayList();
+        final TIntList indices = new TIntArrayList();
+        final float halfHeight = height / 2;
+        for (int row = 0; row < 2; row++) {
+            final float y = row == 0 ? halfHeight : -halfHeight;
+            for (int slice = 0; slice <= slices; slice++) {
+                final float theta = 2 * (float) TrigMath.PI * slice / slices;
+                final float x = TrigMath.cos(theta);
+                final float z = TrigMath.sin(theta);
+                addVertex(positions, normals, x * radius, y, z * radius, x, 0, z);
+            }
+        }
+        addBands(indices, 0, 1, slices);
+        addCap(positions, normals, indices, radius, halfHeight, slices, true);
+        addCap(positions, normals, indices, radius, -halfHeight, slices, false);
+        return MeshGenerator.buildMesh(new Vector4i(3, 3, 0, 0), positions, normals, null, indices);
+    }
+
+    /**
+     * Generates a cone centered on the origin, along the y axis, with the apex up.
+     *
+     * @param radius The radius of the base
+     * @param height The height
+     * @param level The coarse level, from 1 to {@link #LEVEL_COUNT} - 1
+     * @return The vertex data
+     */
+    public static VertexData generateCone(float radius, float height, int level) {
+        final int slices = SLICES[level - 1];
+        final TFloatList positions = new TFloatArrayList();
+        final TFloatList normals = new TFloatArrayList();
+        final TIntList indices = new TIntArrayList();
+        final float halfHeight = height / 2;
+        final float slant = (float) Math.sqrt(radius * radius + height * height);
+        // The apex is added once per slice, so that each side face has its own normal
+        for (int row = 0; row < 2; row++) {
+            for (int slice = 0; slice <= slices; slice++) {
+                final float theta = 2 * (float) TrigMath.PI * slice / slices;
+                final float x = TrigMath.cos(theta);
+                final float z = TrigMath.sin(theta);
+                final float ringRadius = row == 0 ? 0 : radius;
+                addVertex(positions, normals, x * ringRadius, row == 0 ? halfHeight : -halfHeight, z * ringRadius, x * height / slant, radius / slant, z * height / slant);
+            }
+        }
+        for (int slice = 0; slice < slices; slice++) {
+            final int bottom = slices + 1 + slice;
+            indices.add(slice);
+            indices.add(bottom + 1);
+            indices.add(bottom);
+        }
+        addCap(positions, normals, indices, radius, -halfHeight, slices, false);
+        return MeshGenerator.buildMesh(new Vector4i(3, 3, 0, 0), positions, normals, null, indices);
+    }
+
+    private static void addVertex(TFloatList positions, TFloatList normals, float x, float y, float z, float normalX, float normalY, float normalZ) {
+        positions.add(x);
+        positions.add(y);
+        positions.add(z);
+        normals.add(normalX);
+        normals.add(normalY);
+        normals.add(normalZ);
+    }
+
+    // Adds the triangles between consecutive rings of slices + 1 vertices, from the first to the last row
+    private static void addBands(TIntList indices, int firstRow, int lastRow, int slices) {
+        final int rowSize = slices + 1;
+        for (int row = firstRow; row < lastRow; row++) {
+            for (int slice = 0; slice < slices; slice++) {
+                final int top = row * rowSize + slice;
+                final int bottom = top + rowSize;
+                indices.add(top);
+                indices.add(top + 1);
+                indices.add(bottom);
+                indices.add(top + 1);
+                indices.add(bottom + 1);
+                indices.add(bottom);
+            }
+        }
+    }
+
+    private static void addCap(TFloatList positions, TFloatList normals, TIntList indices, float radius, float y, int slices, boolean up) {
+        final float normalY = up ? 1 : -1;
+        final int center = positions.size() / 3;
+        addVertex(positions, normals, 0, y, 0, 0, normalY, 0);
+        for (int slice = 0; slice <= slices; slice++) {
+            final float theta = 2 * (float) TrigMath.PI * slice / slices;
+            addVertex(positions, normals, TrigMath.cos(theta) * radius, y, TrigMath.sin(theta) * radius, 0, normalY, 0);
+        }
+        for (int slice = 0; slice < slices; slice++) {
+            final int ring = center + 1 + slice;
+            indices.add(center);
+            if (up) {
+                indices.add(ring + 1);
+                indices.add(ring);
+            } else {
+                indices.add(ring);
+                indices.add(ring + 1);
+            }
+        }
+    }
+
+    private static class Entry {
+        private final VertexArray[] vertexArrays;
+        private final float boundingRadius;
+        private final byte[] levels;
+
+        private Entry(VertexArray[] vertexArrays, float boundingRadius, int passCount) {
+            this.vertexArrays = vertexArrays;
+            this.boundingRadius = boundingRadius;
+            levels = new byte[passCount];
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import com.flowpowered.caustic.api.util.CausticUtil;
+import com.flowpowered.math.matrix.Matrix4f;
+import com.flowpowered.math.vector.Vector3f;
+
+/**
+ * Bins point lights into screen tiles, so the lighting only loops over the few lights touching each tile. The lights are kept in world space, then each frame they are moved to view space and the screen
+ * rectangle enclosing each is added to the lists of the tiles it covers. The results are laid out as float texels for upload: two RGBA texels per light (position and radius, then color), one RG texel per
+ * tile (offset and count in the index list) and one R texel per index, in rows of {@link #INDEX_ROW_LENGTH}. It doesn't use OpenGL, the textures are owned by the caller.
+ */
+public class LightBinner {
+    public static final int TILE_SIZE = 16;
+    public static final int MAX_LIGHTS = 1024;
+    public static final int INDEX_ROW_LENGTH = 1024;
+    private final float[] lights = new float[MAX_LIGHTS * 7];
+    private int lightCount = 0;
+    private int tileCountX;
+    private int tileCountY;
+    private int[] tileCounts = new int[0];
+    private int[] tileOffsets = new int[0];
+    private int[] indices = new int[INDEX_ROW_LENGTH];
+    private int indexCount = 0;
+    private int visibleLightCount = 0;
+    // Screen rectangle in tiles of each light, or -1 in the first element when not visible
+    private final int[] lightTiles = new int[MAX_LIGHTS * 4];
+    private ByteBuffer lightData = CausticUtil.createByteBuffer(MAX_LIGHTS * 8 * 4);
+    private ByteBuffer tileData = CausticUtil.createByteBuffer(0);
+    private ByteBuffer indexData = CausticUtil.createByteBuffer(INDEX_ROW_LENGTH * 4);
+
+    /**
+     * Adds a point light. Lights past {@link #MAX_LIGHTS} are ignored.
+     *
+     * @param position The position in world space
+     * @param radius The distance past which the light has no effect
+     * @param color The color, which can be brighter than one
+     * @return Whether or not the light was added
+     */
+    public boolean addLight(Vector3f position, float radius, Vector3f color) {
+        if (lightCount >= MAX_LIGHTS) {
+            return false;
+        }
+        final int i = lightCount * 7;
+        lights[i] = position.getX();
+        lights[i + 1] = position.getY();
+        lights[i + 2] = position.getZ();
+        lights[i + 3] = radius;
+        lights[i + 4] = color.getX();
+        lights[i + 5] = color.getY();
+        lights[i + 6] = color.getZ();
+        lightCount++;
+        return true;
+    }
+
+    /**
+     * Removes all the lights.
+     */
+    public void clear() {
+        lightCount = 0;
+    }
+
+    /**
+     * Returns the number of lights.
+     *
+     * @return The light count
+     */
+    public int getLightCount() {
+        return lightCount;
+    }
+
+    /**
+     * Returns the number of lights that touched at least one tile in the last binning.
+     *
+     * @return The visible light count
+     */
+    public int getVisibleLightCount() {
+        return visibleLightCount;
+    }
+
+    /**
+     * Bins the lights for a new view.
+     *
+     * @param viewMatrix The view matrix of the camera
+     * @param tanHalfFOV The tangent of half the vertical field of view
+     * @param aspectRatio The aspect ratio of the view
+     * @param width The width of the screen in pixels
+     * @param height The height of the screen in pixels
+     */
+    public void bin(Matrix4f viewMatrix, float tanHalfFOV, float aspectRatio, int width, int height) {
+        final int countX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        final int countY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        if (countX != tileCountX || countY != tileCountY) {
+            tileCountX = countX;
+            tileCountY = countY;
+            tileCounts = new int[countX * countY];
+            tileOffsets = new int[countX * countY];
+            tileData = CausticUtil.createByteBuffer(countX * countY * 2 * 4);
+        } else {
+            Arrays.fill(tileCounts, 0);
+        }
+        final float scaleX = 1 / (tanHalfFOV * aspectRatio);
+        final float scaleY = 1 / tanHalfFOV;
+        final FloatBuffer lightFloats = lightData.asFloatBuffer();
+        visibleLightCount = 0;
+        // First pass: find the tiles of each light and count the lights per tile
+        for (int light = 0; light < lightCount; light++) {
+            final int i = light * 7;
+            final float worldX = lights[i], worldY = lights[i + 1], worldZ = lights[i + 2];
+            final float radius = lights[i + 3];
+            final float x = viewMatrix.get(0, 0) * worldX + viewMatrix.get(0, 1) * worldY + viewMatrix.get(0, 2) * worldZ + viewMatrix.get(0, 3);
+            final float y = viewMatrix.get(1, 0) * worldX + viewMatrix.get(1, 1) * worldY + viewMatrix.get(1, 2) * worldZ + viewMatrix.get(1, 3);
+            final float z = viewMatrix.get(2, 0) * worldX + viewMatrix.get(2, 1) * worldY + viewMatrix.get(2, 2) * worldZ + viewMatrix.get(2, 3);
+            final int t = light * 4;
+            // The camera looks down negative z, so the distance in front of it is -z
+            final float distance = -z;
+            if (distance + radius <= 0) {
+                lightTiles[t] = -1;
+                continue;
+            }
+            float left = -1, right = 1, bottom = -1, top = 1;
+            final float nearest = distance - radius;
+            if (nearest > 0) {
+                // The bounds of the sphere's box, each divided by the depth that pushes it furthest out
+                final float farthest = distance + radius;
+                left = Math.max(left, (x - radius) / (x - radius < 0 ? nearest : farthest) * scaleX);
+                right = Math.min(right, (x + radius) / (x + radius > 0 ? nearest : farthest) * scaleX);
+                bottom = Math.max(bottom, (y - radius) / (y - radius < 0 ? nearest : farthest) * scaleY);
+                top = Math.min(top, (y + radius) / (y + radius > 0 ? nearest : farthest) * scaleY);
+                if (left > right || bottom > top) {
+                    lightTiles[t] = -1;
+                    continue;
+                }
+            }
+            final int x0 = Math.max((int) ((left * 0.5f + 0.5f) * width) / TILE_SIZE, 0);
+            final int x1 = Math.min((int) ((right * 0.5f + 0.5f) * width) / TILE_SIZE, countX - 1);
+            final int y0 = Math.max((int) ((bottom * 0.5f + 0.5f) * height) / TILE_SIZE, 0);
+            final int y1 = Math.min((int) ((top * 0.5f + 0.5f) * height) / TILE_SIZE, countY - 1);
+            lightTiles[t] = x0;
+            lightTiles[t + 1] = x1;
+            lightTiles[t + 2] = y0;
+            lightTiles[t + 3] = y1;
+            for (int tileY = y0; tileY <= y1; tileY++) {
+                for (int tileX = x0; tileX <= x1; tileX++) {
+                    tileCounts[tileY * countX + tileX]++;
+                }
+            }
+            // The lights are indexed by their original index, so they're stored even if not compacted
+            final int l = light * 8;
+            lightFloats.put(l, x);
+            lightFloats.put(l + 1, y);
+            lightFloats.put(l + 2, z);
+            lightFloats.put(l + 3, radius);
+            lightFloats.put(l + 4, lights[i + 4]);
+            lightFloats.put(l + 5, lights[i + 5]);
+            lightFloats.put(l + 6, lights[i + 6]);
+            lightFloats.put(l + 7, 0);
+            visibleLightCount++;
+        }
+        // Prefix sum of the counts gives the start of each tile's list
+        int offset = 0;
+        for (int tile = 0; tile < tileCounts.length; tile++) {
+            tileOffsets[tile] = offset;
+            offset += tileCounts[tile];
+        }
+        indexCount = offset;
+        if (indices.length < indexCount) {
+            final int rows = (indexCount + INDEX_ROW_LENGTH - 1) / INDEX_ROW_LENGTH;
+            indices = new int[rows * INDEX_ROW_LENGTH];
+            indexData = CausticUtil.createByteBuffer(indices.length * 4);
+        }
+        // Second pass: fill the lists, using the counts as cursors
+        Arrays.fill(tileCounts, 0);
+        for (int light = 0; light < lightCount; light++) {
+            final int t = light * 4;
+            if (lightTiles[t] < 0) {
+                continue;
+            }
+            for (int tileY = lightTiles[t + 2]; tileY <= lightTiles[t + 3]; tileY++) {
+                for (int tileX = lightTiles[t]; tileX <= lightTiles[t + 1]; tileX++) {
+                    final int tile = tileY * countX + tileX;
+                    indices[tileOffsets[tile] + tileCounts[tile]++] = light;
+                }
+            }
+        }
+        final FloatBuffer tileFloats = tileData.asFloatBuffer();
+        for (int tile = 0; tile < tileCounts.length; tile++) {
+            tileFloats.put(tileOffsets[tile]);
+            tileFloats.put(tileCounts[tile]);
+        }
+        final FloatBuffer indexFloats = indexData.asFloatBuffer();
+        for (int index = 0; index < indexCount; index++) {
+            indexFloats.put(indices[index]);
+        }
+    }
+
+    /**
+     * Returns the lights in view space, as two RGBA float texels per light: the position and radius, then the color.
+     *
+     * @return The light texels, {@link #MAX_LIGHTS} rows of two
+     */
+    public ByteBuffer getLightData() {
+        return lightData;
+    }
+
+    /**
+     * Returns the offset in the index list and the light count of each tile, as one RG float texel per tile, row by row from the bottom left.
+     *
+     * @return The tile texels
+     */
+    public ByteBuffer getTileData() {
+        return tileData;
+    }
+
+    /**
+     * Returns the index list, as one R float texel per light index, in rows of {@link #INDEX_ROW_LENGTH}.
+     *
+     * @return The index texels
+     */
+    public ByteBuffer getIndexData() {
+        return indexData;
+    }
+
+    /**
+     * Returns the number of rows in the index data.
+     *
+     * @return The index row count
+     */
+    public int getIndexRowCount() {
+        return indices.length / INDEX_ROW_LENGTH;
+    }
+
+    /**
+     * Returns the number of tiles along the width of the screen.
+     *
+     * @return The horizontal tile count
+     */
+    public int getTileCountX() {
+        return tileCountX;
+    }
+
+    /**
+     * Returns the number of tiles along the height of the screen.
+     *
+     * @return The vertical tile count
+     */
+    public int getTileCountY() {
+        return tileCountY;
+    }
+
+    /**
+     * Returns the total length of the tile lists in the last binning.
+     *
+     * @return The index count
+     */
+    public int getIndexCount() {
+        return indexCount;
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.flowpowered.caustic.api.Material;
+import com.flowpowered.caustic.api.gl.VertexArray;
+import com.flowpowered.caustic.api.model.Model;
+
+/**
+ * A list of models grouped in buckets of the same material and vertex array, with the buckets of a material next to each other. Iterating it draws all the models of a material, then all the
+ * models of the next, so the program, texture and vertex array state only changes between buckets. Models are removed in constant time by swapping in the last model of their bucket, so the order
+ * within a bucket isn't kept. The list is a read only view, models are added and removed through {@link #addModel(Model)} and {@link #removeModel(Model)}.
+ * <p/>
+ * Models can be added to a group, whose models are all shown or hidden at once by {@link #setGroupVisible(Object, boolean)}. The buckets are per group, so this is done in constant time, and
+ * hidden models are skipped as whole buckets.
+ */
+public class ModelRenderList extends AbstractList<Model> {
+    private final List<Bucket> buckets = new ArrayList<>();
+    private final Map<Object, Group> groups = new IdentityHashMap<>();
+    private Map<Model, Slot> slots = new IdentityHashMap<>();
+    // Number of models the slots were last sized for
+    private int capacity = 0;
+    // Number of models in the visible groups
+    private int size = 0;
+    // The models in iteration order, rebuilt on the first indexed access after a change
+    private Model[] flat = new Model[0];
+    private int flatModCount = -1;
+
+    /**
+     * Makes room for the given number of additional models, to avoid rehashing repeatedly when adding many. The slots are only rebuilt when they would overflow, and then at least double, so
+     * making room for a few models at a time stays amortized constant.
+     *
+     * @param count The number of models about to be added
+     */
+    public void ensureCapacity(int count) {
+        final int total = slots.size();
+        if (total + count <= capacity) {
+            return;
+        }
+        capacity = Math.max(total + count, total * 2);
+        final Map<Model, Slot> resized = new IdentityHashMap<>(capacity);
+        resized.putAll(slots);
+        slots = resized;
+    }
+
+    /**
+     * Adds a model to the bucket of its material and vertex array, outside of any group. Does nothing if the model was already added.
+     *
+     * @param model The model to add
+     */
+    public void addModel(Model model) {
+        addModel(model, null);
+    }
+
+    /**
+     * Adds a model to the bucket of its material and vertex array in a group. Does nothing if the model was already added.
+     *
+     * @param model The model to add
+     * @param group The group of the model, compared by identity, or null for none
+     */
+    public void addModel(Model model, Object group) {
+        if (slots.containsKey(model)) {
+            return;
+        }
+        final Group modelGroup = getGroup(group);
+        final Bucket bucket = getBucket(modelGroup, model.getMaterial(), model.getVertexArray());
+        slots.put(model, new Slot(bucket, bucket.models.size()));
+        bucket.models.add(model);
+        modelGroup.size++;
+        if (modelGroup.visible) {
+            size++;
+        }
+        modCount++;
+    }
+
+    /**
+     * Removes a model, by swapping the last model of its bucket in its place.
+     *
+     * @param model The model to remove
+     * @return Whether or not the model was in the list
+     */
+    public boolean removeModel(Model model) {
+        final Slot slot = slots.remove(model);
+        if (slot == null) {
+            return false;
+        }
+        final List<Model> models = slot.bucket.models;
+        final Model last = models.remove(models.size() - 1);
+        if (last != model) {
+            models.set(slot.index, last);
+            slots.get(last).index = slot.index;
+        }
+        final Group group = slot.bucket.group;
+        if (models.isEmpty()) {
+            buckets.remove(slot.bucket);
+            group.bucketsByMaterial.get(slot.bucket.material).remove(slot.bucket.vertexArray);
+        }
+        group.size--;
+        if (group.visible) {
+            size--;
+        }
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Moves a model to the bucket matching its current material and vertex array. Must be called after changing either of them on a model of the list.
+     *
+     * @param model The model to update, ignored if not in the list
+     */
+    public void updateModel(Model model) {
+        final Slot slot = slots.get(model);
+        if (slot != null && (slot.bucket.material != model.getMaterial() || slot.bucket.vertexArray != model.getVertexArray())) {
+            removeModel(model);
+            addModel(model, slot.bucket.group.key);
+        }
+    }
+
+    /**
+     * Shows or hides all the models of a group, including the ones added later. Groups are visible by default.
+     *
+     * @param group The group, compared by identity
+     * @param visible Whether or not the models of the group are in the list
+     */
+    public void setGroupVisible(Object group, boolean visible) {
+        final Group modelGroup = getGroup(group);
+        if (modelGroup.visible == visible) {
+            return;
+        }
+        modelGroup.visible = visible;
+        size += visible ? modelGroup.size : -modelGroup.size;
+        modCount++;
+    }
+
+    /**
+     * Returns the number of buckets, which is the number of material and vertex array changes when drawing the list.
+     *
+     * @return The bucket count
+     */
+    public int getBucketCount() {
+        int count = 0;
+        for (Bucket bucket : buckets) {
+            if (bucket.group.visible) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Group getGroup(Object key) {
+        Group group = groups.get(key);
+        if (group == null) {
+            group = new Group(key);
+            groups.put(key, group);
+        }
+        return group;
+    }
+
+    private Bucket getBucket(Group group, Material material, VertexArray vertexArray) {
+        Map<VertexArray, Bucket> materialBuckets = group.bucketsByMaterial.get(material);
+        if (materialBuckets == null) {
+            materialBuckets = new IdentityHashMap<>();
+            group.bucketsByMaterial.put(material, materialBuckets);
+        }
+        Bucket bucket = materialBuckets.get(vertexArray);
+        if (bucket == null) {
+            bucket = new Bucket(group, material, vertexArray);
+            materialBuckets.put(vertexArray, bucket);
+            // Keep the buckets of a material together, across the groups
+            int index = buckets.size();
+            for (int i = buckets.size() - 1; i >= 0; i--) {
+                if (buckets.get(i).material == material) {
+                    index = i + 1;
+                    break;
+                }
+            }
+            buckets.add(index, bucket);
+        }
+        return bucket;
+    }
+
+    @Override
+    public Model get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (flatModCount != modCount) {
+            if (flat.length < size) {
+                flat = new Model[Math.max(size, flat.length * 2)];
+            }
+            int i = 0;
+            for (Bucket bucket : buckets) {
+                if (!bucket.group.visible) {
+                    continue;
+                }
+                for (Model model : bucket.models) {
+                    flat[i++] = model;
+                }
+            }
+            // Don't keep removed models alive
+            for (int j = i; j < flat.length && flat[j] != null; j++) {
+                flat[j] = null;
+            }
+            flatModCount = modCount;
+        }
+        return flat[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        final Slot slot = slots.get(object);
+        return slot != null && slot.bucket.group.visible;
+    }
+
+    @Override
+    public Iterator<Model> iterator() {
+        return new Iterator<Model>() {
+            private final int expectedModCount = modCount;
+            private int bucketIndex = skipHidden(0);
+            private int modelIndex = 0;
+
+            @Override
+            public boolean hasNext() {
+                return bucketIndex < buckets.size();
+            }
+
+            @Override
+            public Model next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final List<Model> models = buckets.get(bucketIndex).models;
+                final Model model = models.get(modelIndex++);
+                if (modelIndex >= models.size()) {
+                    bucketIndex = skipHidden(bucketIndex + 1);
+                    modelIndex = 0;
+                }
+                return model;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    // Returns the index of the first bucket of a visible group from the index, or the bucket count if there's none
+    private int skipHidden(int bucketIndex) {
+        while (bucketIndex < buckets.size() && !buckets.get(bucketIndex).group.visible) {
+            bucketIndex++;
+        }
+        return bucketIndex;
+    }
+
+    private static class Group {
+        private final Object key;
+        private final Map<Material, Map<VertexArray, Bucket>> bucketsByMaterial = new IdentityHashMap<>();
+        private boolean visible = true;
+        // Number of models in the group, visible or not
+        private int size = 0;
+
+        private Group(Object key) {
+            this.key = key;
+        }
+    }
+
+    private static class Bucket {
+        private final Group group;
+        private final Material material;
+        private final VertexArray vertexArray;
+        private final List<Model> models = new ArrayList<>();
+
+        private Bucket(Group group, Material material, VertexArray vertexArray) {
+            this.group = group;
+            this.material = material;
+            this.vertexArray = vertexArray;
+        }
+    }
+
+    private static class Slot {
+        private final Bucket bucket;
+        private int index;
+
+        private Slot(Bucket bucket, int index) {
+            this.bucket = bucket;
+            this.index = index;
+        }
+    }
+}
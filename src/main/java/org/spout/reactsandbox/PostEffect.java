@@ -0,0 +1,52 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+/**
+ * The optional post processing stages of the renderer. Disabled stages are left out of the pipeline.
+ */
+public enum PostEffect {
+    SSAO("SSAO"),
+    SHADOWS("Shadows"),
+    BLUR("Blur"),
+    MOTION_BLUR("MotionBlur"),
+    ANTI_ALIASING("AntiAliasing");
+    private final String configName;
+
+    private PostEffect(String configName) {
+        this.configName = configName;
+    }
+
+    /**
+     * Returns the name of the effect in the configuration.
+     *
+     * @return The configuration name
+     */
+    public String getConfigName() {
+        return configName;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * Records named per-frame samples, such as phase times in nanoseconds or counts, into a ring buffer of the last frames. Samples are accumulated for the current frame until {@link #endFrame()}.
+ * The buffer is a single flat array, so recording doesn't allocate.
+ */
+public class Profiler {
+    private final String[] channels;
+    private final int capacity;
+    private final long[] samples;
+    private final long[] current;
+    private final long[] starts;
+    private long frames = 0;
+
+    /**
+     * Constructs a new profiler.
+     *
+     * @param capacity The number of frames to keep
+     * @param channels The names of the channels to record
+     */
+    public Profiler(int capacity, String... channels) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than zero");
+        }
+        this.channels = channels.clone();
+        this.capacity = capacity;
+        samples = new long[capacity * channels.length];
+        current = new long[channels.length];
+        starts = new long[channels.length];
+    }
+
+    /**
+     * Returns the name of the channel.
+     *
+     * @param channel The channel index
+     * @return The channel name
+     */
+    public String getChannelName(int channel) {
+        return channels[channel];
+    }
+
+    /**
+     * Returns the number of channels.
+     *
+     * @return The channel count
+     */
+    public int getChannelCount() {
+        return channels.length;
+    }
+
+    /**
+     * Starts timing the channel for the current frame.
+     *
+     * @param channel The channel index
+     */
+    public void start(int channel) {
+        starts[channel] = System.nanoTime();
+    }
+
+    /**
+     * Stops timing the channel, adding the time since {@link #start(int)} to the current frame.
+     *
+     * @param channel The channel index
+     */
+    public void stop(int channel) {
+        current[channel] += System.nanoTime() - starts[channel];
+    }
+
+    /**
+     * Adds the value to the channel for the current frame.
+     *
+     * @param channel The channel index
+     * @param value The value to add
+     */
+    public void record(int channel, long value) {
+        current[channel] += value;
+    }
+
+    /**
+     * Ends the current frame, storing its samples in the ring buffer and starting a new one.
+     */
+    public void endFrame() {
+        System.arraycopy(current, 0, samples, (int) (frames % capacity) * channels.length, channels.length);
+        Arrays.fill(current, 0);
+        frames++;
+    }
+
+    /**
+     * Returns the number of frames in the buffer, which is at most the capacity.
+     *
+     * @return The stored frame count
+     */
+    public int getFrameCount() {
+        return (int) Math.min(frames, capacity);
+    }
+
+    /**
+     * Returns the sample of the channel for a stored frame, with 0 being the oldest.
+     *
+     * @param frame The frame index
+     * @param channel The channel index
+     * @return The sample
+     */
+    public long getSample(int frame, int channel) {
+        if (frame < 0 || frame >= getFrameCount()) {
+            throw new IndexOutOfBoundsException("Frame " + frame + " of " + getFrameCount());
+        }
+        return samples[(int) ((frames - getFrameCount() + frame) % capacity) * channels.length + channel];
+    }
+
+    /**
+     * Returns the average of the channel over the stored frames.
+     *
+     * @param channel The channel index
+     * @return The average sample, or 0 if no frames were stored
+     */
+    public double getAverage(int channel) {
+        final int count = getFrameCount();
+        if (count == 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += samples[i * channels.length + channel];
+        }
+        return (double) sum / count;
+    }
+
+    /**
+     * Writes the stored frames to a CSV file, oldest first, with a header of the channel names.
+     *
+     * @param file The file to write to
+     * @throws IOException If the file couldn't be written
+     */
+    public void writeCSV(File file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+            writer.print("Frame");
+            for (String channel : channels) {
+                writer.print(',');
+                writer.print(channel);
+            }
+            writer.println();
+            final int count = getFrameCount();
+            for (int frame = 0; frame < count; frame++) {
+                writer.print(frame);
+                for (int channel = 0; channel < channels.length; channel++) {
+                    writer.print(',');
+                    writer.print(getSample(frame, channel));
+                }
+                writer.println();
+            }
+        }
+    }
+}
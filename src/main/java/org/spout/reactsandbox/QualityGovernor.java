@@ -0,0 +1,190 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+import com.flowpowered.math.GenericMath;
+
+/**
+ * Scales the effect quality to hold a frame time budget. Quality goes down a level when the average frame time over a window exceeds the budget, and back up when it is comfortably below it.
+ * The gap between the two thresholds, a cool down after each change and a growing delay for upgrades that had to be reverted keep the quality from oscillating.
+ */
+public class QualityGovernor {
+    private static final float DOWNGRADE_THRESHOLD = 1;
+    private static final float UPGRADE_THRESHOLD = 0.7f;
+    private static final int MAX_UPGRADE_DELAY_FACTOR = 8;
+    // Windows ignored after each change, their frame times still carry the cost of switching
+    private static final int COOL_DOWN_WINDOWS = 1;
+    private final QualityPreset min;
+    private final QualityPreset max;
+    private final int levels;
+    private final float frameBudget;
+    private final int window;
+    private boolean enabled = false;
+    private int level;
+    private long frameTimeSum = 0;
+    private int frameCount = 0;
+    private int upgradeDelayFactor = 1;
+    private int windowsSinceUpgrade = Integer.MAX_VALUE;
+    private int windowsBelowBudget = 0;
+    private int coolDown = 0;
+
+    /**
+     * Creates a new governor.
+     *
+     * @param min The lowest quality the governor can set
+     * @param max The highest quality the governor can set
+     * @param levels The number of quality levels between the bounds, inclusive
+     * @param frameBudget The frame time budget, in milliseconds
+     * @param window The number of frames to average before making a decision
+     */
+    public QualityGovernor(QualityPreset min, QualityPreset max, int levels, float frameBudget, int window) {
+        this.min = min;
+        this.max = max;
+        this.levels = Math.max(levels, 2);
+        this.frameBudget = frameBudget;
+        this.window = window;
+        level = this.levels - 1;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables the governor. When enabled, the governor starts at the level closest to the current quality.
+     *
+     * @param enabled Whether or not the governor should adjust the quality
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (enabled) {
+            level = closestLevel(SandboxRenderer.getQuality());
+            SandboxRenderer.setQuality(getPreset(level));
+            upgradeDelayFactor = 1;
+            windowsSinceUpgrade = Integer.MAX_VALUE;
+            windowsBelowBudget = 0;
+            coolDown = 0;
+        }
+        frameTimeSum = 0;
+        frameCount = 0;
+    }
+
+    /**
+     * Records the time taken by a frame, excluding any time spent waiting for the frame rate cap, and adjusts the quality if needed.
+     *
+     * @param frameTime The frame time, in nanoseconds
+     */
+    public void update(long frameTime) {
+        if (!enabled) {
+            return;
+        }
+        frameTimeSum += frameTime;
+        if (++frameCount < window) {
+            return;
+        }
+        final float average = frameTimeSum / (frameCount * 1e6f);
+        frameTimeSum = 0;
+        frameCount = 0;
+        if (coolDown > 0) {
+            coolDown--;
+            log(average, "cooling down at level " + level);
+            return;
+        }
+        if (windowsSinceUpgrade < Integer.MAX_VALUE) {
+            windowsSinceUpgrade++;
+        }
+        if (average > frameBudget * DOWNGRADE_THRESHOLD) {
+            windowsBelowBudget = 0;
+            if (level <= 0) {
+                log(average, "at lowest level " + level);
+                return;
+            }
+            // An upgrade that doesn't hold for a window is reverted, and the next one waits longer
+            if (windowsSinceUpgrade <= 1) {
+                upgradeDelayFactor = Math.min(upgradeDelayFactor * 2, MAX_UPGRADE_DELAY_FACTOR);
+            }
+            changeLevel(level - 1, average);
+        } else if (average < frameBudget * UPGRADE_THRESHOLD) {
+            if (level >= levels - 1) {
+                log(average, "at highest level " + level);
+                return;
+            }
+            if (++windowsBelowBudget < upgradeDelayFactor) {
+                log(average, "holding level " + level + " for " + (upgradeDelayFactor - windowsBelowBudget) + " more window(s)");
+                return;
+            }
+            windowsBelowBudget = 0;
+            windowsSinceUpgrade = 0;
+            changeLevel(level + 1, average);
+        } else {
+            windowsBelowBudget = 0;
+            // Slowly forgive reverted upgrades while the frame time is stable
+            if (windowsSinceUpgrade > upgradeDelayFactor * 4 && upgradeDelayFactor > 1) {
+                upgradeDelayFactor /= 2;
+                windowsSinceUpgrade = 0;
+                log(average, "within budget at level " + level + ", upgrade delay reduced to " + upgradeDelayFactor + " window(s)");
+            } else {
+                log(average, "within budget at level " + level);
+            }
+        }
+    }
+
+    private void changeLevel(int newLevel, float average) {
+        final QualityPreset preset = getPreset(newLevel);
+        log(average, "level " + level + " -> " + newLevel + " (SSAO kernel " + preset.getSSAOKernelSize() + ", shadow kernel " + preset.getShadowKernelSize()
+                + ", shadow map " + preset.getShadowMapSize() + ", motion blur samples " + preset.getMotionBlurSamples() + ")");
+        level = newLevel;
+        coolDown = COOL_DOWN_WINDOWS;
+        SandboxRenderer.setQuality(preset);
+    }
+
+    private void log(float average, String decision) {
+        System.out.printf("Governor: %.2f ms / %.2f ms budget, %s%n", average, frameBudget, decision);
+    }
+
+    private int closestLevel(QualityPreset preset) {
+        final int range = max.getSSAOKernelSize() - min.getSSAOKernelSize();
+        if (range == 0) {
+            return levels - 1;
+        }
+        final float percent = (preset.getSSAOKernelSize() - min.getSSAOKernelSize()) / (float) range;
+        return GenericMath.clamp(Math.round(percent * (levels - 1)), 0, levels - 1);
+    }
+
+    private QualityPreset getPreset(int level) {
+        final float percent = level / (float) (levels - 1);
+        // Shadow map sizes are kept to multiples of 256
+        final int shadowMapSize = Math.round(GenericMath.lerp(min.getShadowMapSize(), max.getShadowMapSize(), percent) / 256) * 256;
+        return new QualityPreset("Governed " + level, lerp(min.getSSAOKernelSize(), max.getSSAOKernelSize(), percent),
+                lerp(min.getShadowKernelSize(), max.getShadowKernelSize(), percent), Math.max(shadowMapSize, 256),
+                max.getBlurSize(), lerp(min.getMotionBlurSamples(), max.getMotionBlurSamples(), percent), max.getAntiAliasingMaxSpan());
+    }
+
+    private static int lerp(int a, int b, float percent) {
+        return Math.round(GenericMath.lerp(a, b, percent));
+    }
+}
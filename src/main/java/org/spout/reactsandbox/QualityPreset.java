@@ -0,0 +1,89 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+import com.flowpowered.math.vector.Vector2i;
+
+/**
+ * A set of post processing effect parameters, trading image quality for rendering time.
+ */
+public class QualityPreset {
+    private final String name;
+    private final int ssaoKernelSize;
+    private final int shadowKernelSize;
+    private final int shadowMapSize;
+    private final int blurSize;
+    private final int motionBlurSamples;
+    private final float antiAliasingMaxSpan;
+
+    public QualityPreset(String name, int ssaoKernelSize, int shadowKernelSize, int shadowMapSize, int blurSize, int motionBlurSamples, float antiAliasingMaxSpan) {
+        this.name = name;
+        this.ssaoKernelSize = ssaoKernelSize;
+        this.shadowKernelSize = shadowKernelSize;
+        this.shadowMapSize = shadowMapSize;
+        this.blurSize = blurSize;
+        this.motionBlurSamples = motionBlurSamples;
+        this.antiAliasingMaxSpan = antiAliasingMaxSpan;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSSAOKernelSize() {
+        return ssaoKernelSize;
+    }
+
+    public int getShadowKernelSize() {
+        return shadowKernelSize;
+    }
+
+    public int getShadowMapSize() {
+        return shadowMapSize;
+    }
+
+    public Vector2i getShadowMapResolution() {
+        return new Vector2i(shadowMapSize, shadowMapSize);
+    }
+
+    public int getBlurSize() {
+        return blurSize;
+    }
+
+    public int getMotionBlurSamples() {
+        return motionBlurSamples;
+    }
+
+    public float getAntiAliasingMaxSpan() {
+        return antiAliasingMaxSpan;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+import org.spout.physics.collision.RayCaster.IntersectedBody;
+import org.spout.physics.engine.DynamicsWorld;
+import org.spout.physics.math.Vector3;
+
+/**
+ * Casts batches of rays against a world, for tools and probes that need many queries per frame. The query vectors are reused between rays, so a batch doesn't allocate beyond its results.
+ * Rays must not be cast while the world is being updated.
+ */
+public class RayBatch {
+    private final Vector3 origin = new Vector3();
+    private final Vector3 direction = new Vector3();
+
+    /**
+     * Casts a single ray and returns the closest intersected body.
+     *
+     * @param world The world to cast in
+     * @param originX The x coordinate of the ray origin
+     * @param originY The y coordinate of the ray origin
+     * @param originZ The z coordinate of the ray origin
+     * @param directionX The x coordinate of the ray direction
+     * @param directionY The y coordinate of the ray direction
+     * @param directionZ The z coordinate of the ray direction
+     * @return The closest intersected body, or null if none was hit
+     */
+    public IntersectedBody cast(DynamicsWorld world, float originX, float originY, float originZ, float directionX, float directionY, float directionZ) {
+        origin.setAllValues(originX, originY, originZ);
+        direction.setAllValues(directionX, directionY, directionZ);
+        return world.findClosestIntersectingBody(origin, direction);
+    }
+
+    /**
+     * Casts a batch of rays. The origins and directions are packed as consecutive x, y, z triplets, one per ray.
+     *
+     * @param world The world to cast in
+     * @param origins The ray origins
+     * @param directions The ray directions
+     * @param results The array in which to store the closest intersected body of each ray, or null when nothing was hit. Created if null or too small
+     * @return The results
+     */
+    public IntersectedBody[] cast(DynamicsWorld world, float[] origins, float[] directions, IntersectedBody[] results) {
+        if (origins.length != directions.length || origins.length % 3 != 0) {
+            throw new IllegalArgumentException("Origins and directions must be the same length and contain x, y, z triplets");
+        }
+        final int count = origins.length / 3;
+        if (results == null || results.length < count) {
+            results = new IntersectedBody[count];
+        }
+        for (int i = 0, j = 0; i < count; i++, j += 3) {
+            results[i] = cast(world, origins[j], origins[j + 1], origins[j + 2], directions[j], directions[j + 1], directions[j + 2]);
+        }
+        return results;
+    }
+}
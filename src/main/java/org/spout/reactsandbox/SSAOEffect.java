@@ -47,6 +47,7 @@ import com.flowpowered.caustic.api.gl.Texture.InternalFormat;
 import com.flowpowered.caustic.api.util.CausticUtil;
 
 public class SSAOEffect {
+    private static final long SEED = 1;
     private final int kernelSize;
     private final Vector3f[] kernel;
     private final float radius;
@@ -63,8 +64,8 @@ public class SSAOEffect {
         this.noiseScale = resolution.toFloat().div(noiseSize);
         this.noiseTexture = context.newTexture();
         this.power = power;
-        // Generate the kernel
-        final Random random = new Random();
+        // Generate the kernel, from a fixed seed so the same settings always render the same frames
+        final Random random = new Random(SEED);
         for (int i = 0; i < kernelSize; i++) {
             float scale = (float) i / kernelSize;
             scale = GenericMath.lerp(threshold, 1, scale * scale);
@@ -100,11 +101,16 @@ public class SSAOEffect {
     }
 
     public void addUniforms(UniformHolder destination) {
-        destination.add(new IntUniform("kernelSize", kernelSize));
-        destination.add(new Vector3ArrayUniform("kernel", kernel));
-        destination.add(new FloatUniform("radius", radius));
-        destination.add(new FloatUniform("threshold", threshold));
-        destination.add(new Vector2Uniform("noiseScale", noiseScale));
-        destination.add(new FloatUniform("power", power));
+        addUniforms(destination, "");
+    }
+
+    // Prefixed names don't clash with the uniforms of another effect in the same program
+    public void addUniforms(UniformHolder destination, String prefix) {
+        destination.add(new IntUniform(SandboxUtil.prefixName(prefix, "kernelSize"), kernelSize));
+        destination.add(new Vector3ArrayUniform(SandboxUtil.prefixName(prefix, "kernel"), kernel));
+        destination.add(new FloatUniform(SandboxUtil.prefixName(prefix, "radius"), radius));
+        destination.add(new FloatUniform(SandboxUtil.prefixName(prefix, "threshold"), threshold));
+        destination.add(new Vector2Uniform(SandboxUtil.prefixName(prefix, "noiseScale"), noiseScale));
+        destination.add(new FloatUniform(SandboxUtil.prefixName(prefix, "power"), power));
     }
 }
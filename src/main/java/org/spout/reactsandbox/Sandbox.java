@@ -26,28 +26,40 @@
  */
 package org.spout.reactsandbox;
 
+import javax.imageio.ImageIO;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.FileInputStream;
-import java.util.HashMap;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import com.flowpowered.caustic.api.Camera;
 import com.flowpowered.caustic.api.GLVersioned.GLVersion;
-import com.flowpowered.caustic.api.data.Uniform.Vector4Uniform;
-import com.flowpowered.caustic.api.model.Model;
 import com.flowpowered.caustic.api.util.CausticUtil;
-import com.flowpowered.caustic.api.util.MeshGenerator;
-import com.flowpowered.caustic.api.util.ObjFileLoader;
 import com.flowpowered.caustic.lwjgl.LWJGLUtil;
 import com.flowpowered.math.TrigMath;
+import com.flowpowered.math.imaginary.Quaternionf;
 import com.flowpowered.math.vector.Vector3f;
 import com.flowpowered.math.vector.Vector4f;
 
-import gnu.trove.list.TFloatList;
-import gnu.trove.list.TIntList;
-import gnu.trove.list.array.TFloatArrayList;
-import gnu.trove.list.array.TIntArrayList;
-
 import org.lwjgl.Sys;
 import org.lwjgl.input.Keyboard;
 import org.lwjgl.input.Mouse;
@@ -59,20 +71,9 @@ import org.spout.physics.ReactDefaults.JointsPositionCorrectionTechnique;
 import org.spout.physics.body.CollisionBody;
 import org.spout.physics.body.RigidBody;
 import org.spout.physics.collision.RayCaster.IntersectedBody;
-import org.spout.physics.collision.shape.AABB;
-import org.spout.physics.collision.shape.BoxShape;
-import org.spout.physics.collision.shape.CapsuleShape;
-import org.spout.physics.collision.shape.CollisionShape;
 import org.spout.physics.collision.shape.CollisionShape.CollisionShapeType;
-import org.spout.physics.collision.shape.ConeShape;
-import org.spout.physics.collision.shape.ConvexMeshShape;
-import org.spout.physics.collision.shape.CylinderShape;
-import org.spout.physics.collision.shape.SphereShape;
-import org.spout.physics.constraint.SliderJoint.SliderJointInfo;
-import org.spout.physics.engine.DynamicsWorld;
 import org.spout.physics.engine.Material;
 import org.spout.physics.math.Quaternion;
-import org.spout.physics.math.Transform;
 import org.spout.physics.math.Vector3;
 
 
@@ -83,36 +84,94 @@ public class Sandbox {
     // Constants
     public static final int TARGET_FPS = 60;
     private static final float TIMESTEP = 1f / TARGET_FPS;
-    private static final Material PHYSICS_MATERIAL = Material.asUnmodifiableMaterial(new Material(0.2f, 0.8f));
     public static final float SPOT_CUTOFF = (float) (TrigMath.atan(100 / 50) / 2);
+    private static final DateFormat PROFILE_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd_HH.mm.ss");
+    // Profiler channels, in the order given to the profiler
+    public static final int PROFILE_PHYSICS = 0;
+    public static final int PROFILE_SELECTION = 1;
+    public static final int PROFILE_SYNC = 2;
+    public static final int PROFILE_RENDER = 3;
+    public static final int PROFILE_PAIRS = 4;
+    public static final int PROFILE_CONTACTS = 5;
+    public static final int PROFILE_COLLISION = 6;
+    public static final int PROFILE_DYNAMICS = 7;
     // Settings
     private static float mouseSensitivity = 0.08f;
     private static float cameraSpeed = 0.2f;
+    private static final List<QualityPreset> qualityPresets = new ArrayList<>();
+    private static QualityGovernor governor;
     // Physics objects
-    private static DynamicsWorld world;
-    private static final Vector3 gravity = new Vector3(0, -9.81f, 0);
-    private static final Map<CollisionBody, Model> shapes = new HashMap<>();
-    private static final Map<CollisionBody, Model> aabbs = new HashMap<>();
-    private static final TFloatList meshPositions = new TFloatArrayList();
-    private static final TIntList meshIndices = new TIntArrayList();
+    private static final List<SandboxWorld> worlds = new ArrayList<>();
+    private static WorldStepper stepper;
+    // The displayed world
+    private static SandboxWorld world;
+    private static final RayBatch rayBatch = new RayBatch();
+    // Scene persistence
+    private static File sceneFile;
+    private static int sceneLoadBatchSize;
+    private static SceneFile.Reader sceneReader = null;
+    // The reader being opened off the main thread, it's then read in batches on the main thread
+    private static Future<SceneFile.Reader> sceneOpening = null;
+    // Asset I/O, and the time budget for the uploads of the ready assets each frame, in nanoseconds
+    private static AssetService assets;
+    private static long uploadBudget;
+    // Time budget for creating the models of bulk spawned bodies each frame, in nanoseconds
+    private static long modelCreationBudget;
+    // Control endpoint, null when disabled
+    private static ControlServer controlServer = null;
+    private static int controlPort;
+    private static int maxControlCommandsPerFrame;
+    private static int maxControlSpawnCount;
+    // Profiling, the last ten seconds of frames at the target frame rate
+    private static final Profiler profiler = new Profiler(TARGET_FPS * 10, "Physics", "Selection", "Sync", "Render", "Pairs", "Contacts", "Collision", "Dynamics");
+    // Benchmark, flying the camera along the path at a fixed step
+    private static final CameraPath benchmarkPath = new CameraPath();
+    private static int benchmarkWarmupFrames;
+    private static int benchmarkFrames;
+    private static File benchmarkReport;
+    // Golden images, rendered at each pose and compared to the stored references
+    private static final Map<String, CameraPath> goldenPoses = new LinkedHashMap<>();
+    private static File goldenDirectory;
+    private static int goldenFrames;
+    private static float goldenTolerance;
+    private static float goldenMaxFailingFraction;
+    private static boolean goldenFailed = false;
     // Input
     private static boolean mouseGrabbed = true;
     private static float cameraPitch = 0;
     private static float cameraYaw = 0;
     // Selection
     private static CollisionBody selected = null;
+    private static long selectionSceneVersion = -1;
+    private static Vector3f selectionCameraPosition = null;
+    private static Quaternionf selectionCameraRotation = null;
     // Rendering
     private static GLVersion glVersion;
+    // Frame rate cap, 0 for none, independent of the physics timesteps
+    private static int frameRateCap = TARGET_FPS;
+    private static boolean vsync = false;
 
     /**
      * Entry point for the application.
      *
-     * @param args Unused
+     * @param args Empty, "--benchmark" followed by an optional scene file to run the benchmark on instead of the default scene, or "--golden" followed by "record" or "compare" and an optional
+     * scene file to check the golden images
      */
     public static void main(String[] args) {
+        final boolean benchmark = args.length > 0 && args[0].equals("--benchmark");
+        final boolean golden = args.length > 0 && args[0].equals("--golden");
+        if (golden && (args.length < 2 || !args[1].equalsIgnoreCase("record") && !args[1].equalsIgnoreCase("compare"))) {
+            System.out.println("Usage: --golden record|compare [scene file]");
+            System.exit(1);
+        }
         try {
             LWJGLUtil.deployNatives(null);
             loadConfiguration();
+            if (benchmark && args.length > 1) {
+                sceneFile = new File(args[1]);
+            } else if (golden && args.length > 2) {
+                sceneFile = new File(args[2]);
+            }
             SandboxRenderer.init();
             SandboxRenderer.addDefaultObjects();
             setupPhysics();
@@ -120,22 +179,81 @@ public class Sandbox {
             SandboxRenderer.getCamera().setPosition(new Vector3f(0, 5, 10));
             SandboxRenderer.setLightPosition(new Vector3f(0, 50, 50));
             SandboxRenderer.setLightDirection(new Vector3f(0, -TrigMath.cos(SPOT_CUTOFF), -TrigMath.sin(SPOT_CUTOFF)));
-            Mouse.setGrabbed(true);
+            Mouse.setGrabbed(!benchmark && !golden);
+            Display.setVSyncEnabled(vsync);
+            SandboxRenderer.setProfiler(profiler);
+            if (controlPort > 0) {
+                controlServer = new ControlServer(controlPort, maxControlCommandsPerFrame, new ControlHandler());
+                System.out.println("Control server listening on port " + controlPort);
+            }
             SandboxRenderer.startFPSMonitor();
-            long lastTime = System.currentTimeMillis();
-            while (!Display.isCloseRequested()) {
-                final long currentTime = System.currentTimeMillis();
-                processInput((currentTime - lastTime) / 1000f);
-                lastTime = currentTime;
-                world.update();
-                handleSelection();
-                updateBodies();
-                SandboxRenderer.render();
-                Display.sync(TARGET_FPS);
+            if (benchmark) {
+                runBenchmark(args.length > 1);
+            } else if (golden) {
+                runGoldenImages(args[1].equalsIgnoreCase("record"), args.length > 2);
+            } else {
+                long lastTime = System.currentTimeMillis();
+                while (!Display.isCloseRequested()) {
+                    final long frameStart = System.nanoTime();
+                    final long currentTime = System.currentTimeMillis();
+                    processInput((currentTime - lastTime) / 1000f);
+                    lastTime = currentTime;
+                    if (controlServer != null) {
+                        pollControlServer();
+                    }
+                    if (sceneOpening != null && sceneOpening.isDone()) {
+                        openScene();
+                    }
+                    if (sceneReader != null) {
+                        loadSceneBatch();
+                    }
+                    for (SandboxWorld sandboxWorld : worlds) {
+                        sandboxWorld.executeCommands();
+                    }
+                    profiler.start(PROFILE_PHYSICS);
+                    stepper.step();
+                    profiler.stop(PROFILE_PHYSICS);
+                    profiler.start(PROFILE_SELECTION);
+                    handleSelection();
+                    profiler.stop(PROFILE_SELECTION);
+                    profiler.start(PROFILE_SYNC);
+                    world.createPendingModels(modelCreationBudget);
+                    assets.runUploads(uploadBudget);
+                    world.updateBodies();
+                    world.drawDebug(SandboxRenderer.getDebugDraw());
+                    profiler.stop(PROFILE_SYNC);
+                    profiler.start(PROFILE_RENDER);
+                    SandboxRenderer.render();
+                    profiler.stop(PROFILE_RENDER);
+                    for (SandboxWorld sandboxWorld : worlds) {
+                        profiler.record(PROFILE_PAIRS, sandboxWorld.getPairCount());
+                        profiler.record(PROFILE_CONTACTS, sandboxWorld.getContactCount());
+                        profiler.record(PROFILE_COLLISION, sandboxWorld.getCollisionTime());
+                        profiler.record(PROFILE_DYNAMICS, sandboxWorld.getDynamicsTime());
+                    }
+                    profiler.endFrame();
+                    governor.update(System.nanoTime() - frameStart);
+                    if (frameRateCap > 0) {
+                        Display.sync(frameRateCap);
+                    }
+                }
             }
             shutdownLog();
-            world.stop();
+            if (sceneReader != null) {
+                sceneReader.close();
+            }
+            if (controlServer != null) {
+                controlServer.close();
+            }
+            for (SandboxWorld sandboxWorld : worlds) {
+                sandboxWorld.stop();
+            }
+            stepper.shutdown();
+            assets.shutdown();
             SandboxRenderer.dispose();
+            if (goldenFailed) {
+                System.exit(1);
+            }
         } catch (Exception ex) {
             ex.printStackTrace();
             final String name = ex.getClass().getSimpleName();
@@ -145,124 +263,211 @@ public class Sandbox {
         }
     }
 
-    private static RigidBody addImmobileBody(CollisionShape shape, float mass, Vector3 position, Quaternion orientation) {
-        final RigidBody body = addMobileBody(shape, mass, position, orientation);
-        body.enableMotion(false);
-        return body;
-    }
-
-    private static RigidBody addMobileBody(CollisionShape shape, float mass, Vector3 position, Quaternion orientation) {
-        final RigidBody body = world.createRigidBody(new Transform(position, orientation), mass, shape);
-        addBody(body);
-        return body;
-    }
-
-    private static CollisionBody addBody(CollisionBody body) {
-        final Transform bodyTransform = body.getTransform();
-        final Vector3 bodyPosition = bodyTransform.getPosition();
-        final Quaternion bodyOrientation = bodyTransform.getOrientation();
-        final AABB aabb = body.getAABB();
-        final Model aabbModel = SandboxRenderer.addAABB(SandboxUtil.toMathVector3(bodyPosition), SandboxUtil.toMathVector3(Vector3.subtract(aabb.getMax(), aabb.getMin())));
-        aabbs.put(body, aabbModel);
-        final CollisionShape shape = body.getCollisionShape();
-        final Model shapeModel;
-        switch (shape.getType()) {
-            case BOX:
-                final BoxShape box = (BoxShape) shape;
-                shapeModel = SandboxRenderer.addBox(SandboxUtil.toMathVector3(bodyPosition), SandboxUtil.toMathQuaternion(bodyOrientation), SandboxUtil.toMathVector3(box.getExtent()));
-                break;
-            case CONE:
-                final ConeShape cone = (ConeShape) shape;
-                shapeModel = SandboxRenderer.addCone(SandboxUtil.toMathVector3(bodyPosition), SandboxUtil.toMathQuaternion(bodyOrientation), cone.getRadius(), cone.getHeight());
-                break;
-            case CYLINDER:
-                final CylinderShape cylinder = (CylinderShape) shape;
-                shapeModel = SandboxRenderer.addCylinder(SandboxUtil.toMathVector3(bodyPosition), SandboxUtil.toMathQuaternion(bodyOrientation), cylinder.getRadius(), cylinder.getHeight());
-                break;
-            case SPHERE:
-                final SphereShape sphere = (SphereShape) shape;
-                shapeModel = SandboxRenderer.addSphere(SandboxUtil.toMathVector3(bodyPosition), SandboxUtil.toMathQuaternion(bodyOrientation), sphere.getRadius());
-                break;
-            case CAPSULE:
-                final CapsuleShape capsule = (CapsuleShape) shape;
-                shapeModel = SandboxRenderer.addCapsule(SandboxUtil.toMathVector3(bodyPosition), SandboxUtil.toMathQuaternion(bodyOrientation), capsule.getRadius(), capsule.getHeight());
-                break;
-            case CONVEX_MESH:
-                shapeModel = SandboxRenderer.addMeshShape(SandboxUtil.toMathVector3(bodyPosition), SandboxUtil.toMathQuaternion(bodyOrientation), meshPositions, meshIndices);
-                break;
-            default:
-                throw new IllegalArgumentException("Unsupported collision shape: " + shape.getType());
-        }
-        shapes.put(body, shapeModel);
-        return body;
-    }
-
-    private static void removeBody(CollisionBody body) {
-        if (body == null) {
+    /**
+     * Renders the same frames every run, for comparing the renderer between changes: the scene is fully loaded then frozen, the camera follows the path at a fixed step per frame, the quality doesn't
+     * change and the frame rate isn't capped. The CPU and GPU times of each pipeline stage are written to the report, and summarized in the log. The frames are rendered in the window, since the
+     * Caustic context always creates its context on the LWJGL display, although LWJGL 2 itself could render offscreen to a pbuffer.
+     *
+     * @param loadScene Whether or not to load the scene file instead of using the default scene
+     * @throws IOException If the scene couldn't be loaded or the report couldn't be written
+     */
+    private static void runBenchmark(boolean loadScene) throws IOException {
+        if (benchmarkPath.getPointCount() == 0) {
+            throw new IllegalStateException("The benchmark path has no points");
+        }
+        freezeScene(loadScene);
+        System.out.println("Benchmark: " + benchmarkWarmupFrames + " warm up frames, " + benchmarkFrames + " measured frames, " + world.getBodyCount() + " bodies");
+        final StageTimer timer = new StageTimer(benchmarkFrames);
+        final long[] frameTimes = new long[benchmarkFrames];
+        for (int frame = 0; frame < benchmarkWarmupFrames + benchmarkFrames && !Display.isCloseRequested(); frame++) {
+            final int measured = frame - benchmarkWarmupFrames;
+            if (measured == 0) {
+                SandboxRenderer.setStageTimer(timer);
+            }
+            // The warm up frames stay at the start of the path
+            final float t = benchmarkFrames > 1 ? Math.max(measured, 0) / (float) (benchmarkFrames - 1) : 0;
+            SandboxRenderer.getCamera().setPosition(benchmarkPath.getPosition(t));
+            cameraPitch = benchmarkPath.getPitch(t);
+            cameraYaw = benchmarkPath.getYaw(t);
+            updateCameraRotation();
+            final long start = System.nanoTime();
+            SandboxRenderer.render();
+            if (measured >= 0) {
+                frameTimes[measured] = System.nanoTime() - start;
+                timer.endFrame();
+            }
+        }
+        SandboxRenderer.setStageTimer(null);
+        final int count = timer.getFrameCount();
+        if (count == 0) {
+            System.out.println("Benchmark interrupted before any frame was measured");
+            timer.dispose();
             return;
         }
-        final Model shapeModel = shapes.remove(body);
-        SandboxRenderer.removeModel(shapeModel);
-        final Model aabbModel = aabbs.remove(body);
-        SandboxRenderer.removeModel(aabbModel);
-        if (body instanceof RigidBody) {
-            world.destroyRigidBody((RigidBody) body);
+        timer.writeCSV(benchmarkReport);
+        final long[] sortedFrameTimes = Arrays.copyOf(frameTimes, count);
+        Arrays.sort(sortedFrameTimes);
+        long frameTimeSum = 0;
+        for (long frameTime : sortedFrameTimes) {
+            frameTimeSum += frameTime;
         }
+        System.out.printf("Frame: %.3f ms average, %.3f ms 95th percentile%n", frameTimeSum / 1e6 / count, sortedFrameTimes[(int) (count * 0.95f)] / 1e6);
+        final List<String> stages = timer.getStages();
+        for (int stage = 0; stage < stages.size(); stage++) {
+            long cpuSum = 0, gpuSum = 0;
+            int gpuCount = 0;
+            for (int frame = 0; frame < count; frame++) {
+                cpuSum += timer.getCPUTime(frame, stage);
+                final long gpuTime = timer.getGPUTime(frame, stage);
+                if (gpuTime >= 0) {
+                    gpuSum += gpuTime;
+                    gpuCount++;
+                }
+            }
+            System.out.printf("%s: CPU %.3f ms, GPU %s%n", stages.get(stage), cpuSum / 1e6 / count, gpuCount > 0 ? String.format("%.3f ms", gpuSum / 1e6 / gpuCount) : "unmeasured");
+        }
+        System.out.println("Benchmark report written to " + benchmarkReport);
+        timer.dispose();
     }
 
-    private static void spawnBody(CollisionShapeType type) {
-        final CollisionShape shape;
-        switch (type) {
-            case BOX:
-                shape = new BoxShape(1, 1, 1);
-                break;
-            case CONE:
-                shape = new ConeShape(1, 2);
-                break;
-            case CYLINDER:
-                shape = new CylinderShape(1, 2);
-                break;
-            case SPHERE:
-                shape = new SphereShape(1);
-                break;
-            case CAPSULE:
-                shape = new CapsuleShape(1, 1);
-                break;
-            case CONVEX_MESH:
-                final TFloatList positions = new TFloatArrayList(meshPositions);
-                final TIntList indices = new TIntArrayList(meshIndices);
-                MeshGenerator.toWireframe(positions, indices, false);
-                final ConvexMeshShape meshShape = new ConvexMeshShape(positions.toArray(), positions.size() / 3, 12);
-                for (int i = 0; i < indices.size(); i += 2) {
-                    meshShape.addEdge(indices.get(i), indices.get(i + 1));
+    /**
+     * Renders each pose of the golden images and reads back the render targets, to either store them as the references or compare them to the stored ones. The results, heat maps of the differences
+     * and the frame times of each pose are written to the directory, and the sandbox exits with an error code if any target failed.
+     *
+     * @param record Whether to store the references instead of comparing to them
+     * @param loadScene Whether or not to load the scene file instead of using the default scene
+     * @throws IOException If the scene couldn't be loaded or the images couldn't be read or written
+     */
+    private static void runGoldenImages(boolean record, boolean loadScene) throws IOException {
+        if (goldenFrames < 1) {
+            throw new IllegalStateException("At least one frame must be rendered per pose");
+        }
+        final int timedFrames = Math.max(goldenFrames / 2, 1);
+        freezeScene(loadScene);
+        if (!goldenDirectory.isDirectory() && !goldenDirectory.mkdirs()) {
+            throw new IOException("Couldn't create " + goldenDirectory);
+        }
+        try (PrintWriter report = new PrintWriter(new FileWriter(new File(goldenDirectory, record ? "record.csv" : "report.csv")))) {
+            report.println("Pose,Target,MeanDeltaE,MaxDeltaE,FailingFraction,Result,FrameCPU,FrameGPU");
+            for (Entry<String, CameraPath> entry : goldenPoses.entrySet()) {
+                final String pose = entry.getKey();
+                final CameraPath path = entry.getValue();
+                SandboxRenderer.getCamera().setPosition(path.getPosition(0));
+                cameraPitch = path.getPitch(0);
+                cameraYaw = path.getYaw(0);
+                updateCameraRotation();
+                // A new timer rebuilds the pipeline, which also restarts the temporal history
+                final StageTimer timer = new StageTimer(timedFrames);
+                SandboxRenderer.setStageTimer(timer);
+                long frameTime = 0;
+                for (int frame = 0; frame < goldenFrames; frame++) {
+                    final long start = System.nanoTime();
+                    SandboxRenderer.render();
+                    if (frame >= goldenFrames - timedFrames) {
+                        frameTime += System.nanoTime() - start;
+                        timer.endFrame();
+                    }
+                }
+                SandboxRenderer.setStageTimer(null);
+                final double frameCPU = frameTime / 1e6 / timedFrames;
+                final String frameGPU = formatGPUTime(timer);
+                timer.dispose();
+                for (Entry<String, BufferedImage> target : SandboxRenderer.readRenderTargets().entrySet()) {
+                    final File referenceFile = new File(goldenDirectory, pose + "-" + target.getKey() + ".png");
+                    if (record) {
+                        ImageIO.write(target.getValue(), "PNG", referenceFile);
+                        report.printf("%s,%s,,,,recorded,%.3f,%s%n", pose, target.getKey(), frameCPU, frameGPU);
+                        continue;
+                    }
+                    if (!referenceFile.isFile()) {
+                        System.out.println("Golden " + pose + " " + target.getKey() + ": no reference");
+                        report.printf("%s,%s,,,,missing,%.3f,%s%n", pose, target.getKey(), frameCPU, frameGPU);
+                        goldenFailed = true;
+                        continue;
+                    }
+                    final ImageDiff diff = new ImageDiff(ImageIO.read(referenceFile), target.getValue(), goldenTolerance);
+                    final boolean passed = diff.getFailingFraction() <= goldenMaxFailingFraction;
+                    if (!passed) {
+                        ImageIO.write(target.getValue(), "PNG", new File(goldenDirectory, pose + "-" + target.getKey() + "-actual.png"));
+                        ImageIO.write(diff.getHeatMap(), "PNG", new File(goldenDirectory, pose + "-" + target.getKey() + "-diff.png"));
+                        goldenFailed = true;
+                    }
+                    System.out.printf("Golden %s %s: %s, mean delta E %.3f, max %.1f, %.3f%% failing%n", pose, target.getKey(), passed ? "passed" : "FAILED",
+                            diff.getMeanDeltaE(), diff.getMaxDeltaE(), diff.getFailingFraction() * 100);
+                    report.printf("%s,%s,%.4f,%.2f,%.5f,%s,%.3f,%s%n", pose, target.getKey(), diff.getMeanDeltaE(), diff.getMaxDeltaE(), diff.getFailingFraction(),
+                            passed ? "passed" : "failed", frameCPU, frameGPU);
+                }
+            }
+        }
+        System.out.println(record ? "Golden images recorded to " + goldenDirectory : "Golden images " + (goldenFailed ? "FAILED" : "passed") + ", report written to " + goldenDirectory);
+    }
+
+    private static String formatGPUTime(StageTimer timer) {
+        long sum = 0;
+        for (int frame = 0; frame < timer.getFrameCount(); frame++) {
+            for (int stage = 0; stage < timer.getStages().size(); stage++) {
+                final long time = timer.getGPUTime(frame, stage);
+                if (time < 0) {
+                    return "";
                 }
-                meshShape.setIsEdgesInformationUsed(true);
-                shape = meshShape;
-                break;
-            default:
-                throw new IllegalArgumentException("Unsupported collision shape type: " + type);
+                sum += time;
+            }
         }
+        return timer.getFrameCount() == 0 ? "" : String.format("%.3f", sum / 1e6 / timer.getFrameCount());
+    }
+
+    /**
+     * Prepares the scene for rendering the same frames every run: loads the scene file completely if asked, creates all the models, stops the physics and the animations, and disables the quality
+     * governor, vsync and the frame rate cap.
+     *
+     * @param loadScene Whether or not to load the scene file instead of using the default scene
+     */
+    private static void freezeScene(boolean loadScene) {
+        governor.setEnabled(false);
+        Display.setVSyncEnabled(false);
+        SandboxRenderer.setAnimationFrozen(true);
+        if (loadScene) {
+            loadScene();
+            if (sceneOpening != null) {
+                openScene();
+            }
+            while (sceneReader != null) {
+                loadSceneBatch();
+            }
+        }
+        for (SandboxWorld sandboxWorld : worlds) {
+            sandboxWorld.executeCommands();
+            sandboxWorld.setPaused(true);
+        }
+        while (world.getPendingModelCount() > 0) {
+            world.createPendingModels(Long.MAX_VALUE);
+        }
+        world.updateBodies();
+    }
+
+    private static void spawnBody(CollisionShapeType type) {
         final Camera camera = SandboxRenderer.getCamera();
-        addMobileBody(shape, 10,
+        submit(new WorldCommand.SpawnBodies(1).add(SandboxWorld.createShape(type), 10,
                 SandboxUtil.toReactVector3(camera.getPosition().add(camera.getForward().mul(5))),
-                SandboxUtil.toReactQuaternion(camera.getRotation()));
+                SandboxUtil.toReactQuaternion(camera.getRotation())));
     }
 
-    private static void updateBodies() {
-        for (Entry<CollisionBody, Model> entry : shapes.entrySet()) {
-            final CollisionBody body = entry.getKey();
-            final Model shape = entry.getValue();
-            final Model aabbModel = aabbs.get(body);
-            final AABB aabb = body.getAABB();
-            final Transform transform = body.getInterpolatedTransform();
-            final Vector3 position = transform.getPosition();
-            aabbModel.setPosition(SandboxUtil.toMathVector3(position));
-            aabbModel.setScale(SandboxUtil.toMathVector3(Vector3.subtract(aabb.getMax(), aabb.getMin())));
-            shape.setPosition(SandboxUtil.toMathVector3(position));
-            shape.setRotation(SandboxUtil.toMathQuaternion(transform.getOrientation()));
+    private static void submit(WorldCommand command) {
+        if (!world.submit(command)) {
+            System.out.println("Command queue of " + world + " is full, dropped " + command.getClass().getSimpleName());
         }
     }
 
+    /**
+     * Returns the simulated worlds. The list doesn't change once the sandbox is started, so it can be read from any thread. Scene changes from other threads must go through
+     * {@link SandboxWorld#submit(WorldCommand)}.
+     *
+     * @return An unmodifiable view of the worlds
+     */
+    public static List<SandboxWorld> getWorlds() {
+        return Collections.unmodifiableList(worlds);
+    }
+
     private static void processInput(float dt) {
         dt /= TIMESTEP;
         final boolean mouseGrabbedBefore = mouseGrabbed;
@@ -274,6 +479,57 @@ public class Sandbox {
                         break;
                     case Keyboard.KEY_F2:
                         SandboxRenderer.saveScreenshot();
+                        break;
+                    case Keyboard.KEY_F3:
+                        cycleQuality();
+                        break;
+                    case Keyboard.KEY_F4:
+                        toggleEffect(PostEffect.SSAO);
+                        break;
+                    case Keyboard.KEY_F5:
+                        toggleEffect(PostEffect.SHADOWS);
+                        break;
+                    case Keyboard.KEY_F6:
+                        toggleEffect(PostEffect.BLUR);
+                        break;
+                    case Keyboard.KEY_F7:
+                        toggleEffect(PostEffect.MOTION_BLUR);
+                        break;
+                    case Keyboard.KEY_F8:
+                        toggleEffect(PostEffect.ANTI_ALIASING);
+                        break;
+                    case Keyboard.KEY_G:
+                        governor.setEnabled(!governor.isEnabled());
+                        System.out.println("Quality governor: " + (governor.isEnabled() ? "on" : "off"));
+                        break;
+                    case Keyboard.KEY_L:
+                        SandboxRenderer.setTiledLighting(!SandboxRenderer.isTiledLighting());
+                        System.out.println("Tiled lighting: " + (SandboxRenderer.isTiledLighting() ? "on" : "off"));
+                        break;
+                    case Keyboard.KEY_T:
+                        SandboxRenderer.setTemporalAccumulation(!SandboxRenderer.isTemporalAccumulation());
+                        System.out.println("Temporal accumulation: " + (SandboxRenderer.isTemporalAccumulation() ? "on" : "off"));
+                        break;
+                    case Keyboard.KEY_TAB:
+                        cycleWorld();
+                        break;
+                    case Keyboard.KEY_P:
+                        saveProfile();
+                        break;
+                    case Keyboard.KEY_F9:
+                        saveScene();
+                        break;
+                    case Keyboard.KEY_F10:
+                        loadScene();
+                        break;
+                    case Keyboard.KEY_1:
+                        toggleDebugDraw(DebugDraw.Category.CONTACTS);
+                        break;
+                    case Keyboard.KEY_2:
+                        toggleDebugDraw(DebugDraw.Category.PAIRS);
+                        break;
+                    case Keyboard.KEY_3:
+                        toggleDebugDraw(DebugDraw.Category.JOINTS);
                 }
             }
         }
@@ -284,8 +540,10 @@ public class Sandbox {
                         spawnBody(CollisionShapeType.CONVEX_MESH);
                         break;
                     case 1: // Right Button
-                        removeBody(selected);
-                        selected = null;
+                        if (selected != null) {
+                            submit(new WorldCommand.RemoveBodies(Collections.singletonList(selected)));
+                            selected = null;
+                        }
                 }
             }
         }
@@ -298,11 +556,9 @@ public class Sandbox {
                 final float sensitivity = mouseSensitivity * dt;
                 cameraPitch -= Mouse.getDX() * sensitivity;
                 cameraPitch %= 360;
-                final Quaternion pitch = SandboxUtil.angleAxisToQuaternion(cameraPitch, 0, 1, 0);
                 cameraYaw += Mouse.getDY() * sensitivity;
                 cameraYaw %= 360;
-                final Quaternion yaw = SandboxUtil.angleAxisToQuaternion(cameraYaw, 1, 0, 0);
-                camera.setRotation(SandboxUtil.toMathQuaternion(Quaternion.multiply(pitch, yaw)));
+                updateCameraRotation();
             }
         }
         final Vector3 right = SandboxUtil.toReactVector3(camera.getRight());
@@ -331,25 +587,215 @@ public class Sandbox {
         camera.setPosition(SandboxUtil.toMathVector3(position));
     }
 
-    private static void handleSelection() {
-        if (selected != null) {
-            aabbs.get(selected).getUniforms().<Vector4Uniform>get("modelColor").set(SandboxRenderer.getAABBColor());
-            selected = null;
+    private static void updateCameraRotation() {
+        final Quaternion pitch = SandboxUtil.angleAxisToQuaternion(cameraPitch, 0, 1, 0);
+        final Quaternion yaw = SandboxUtil.angleAxisToQuaternion(cameraYaw, 1, 0, 0);
+        SandboxRenderer.getCamera().setRotation(SandboxUtil.toMathQuaternion(Quaternion.multiply(pitch, yaw)));
+    }
+
+    private static void cycleQuality() {
+        if (governor.isEnabled()) {
+            governor.setEnabled(false);
+            System.out.println("Quality governor: off");
+        }
+        if (qualityPresets.isEmpty()) {
+            return;
+        }
+        final int index = qualityPresets.indexOf(SandboxRenderer.getQuality());
+        final QualityPreset preset = qualityPresets.get((index + 1) % qualityPresets.size());
+        SandboxRenderer.setQuality(preset);
+        System.out.println("Quality: " + preset);
+    }
+
+    private static void cycleWorld() {
+        displayWorld(worlds.get((worlds.indexOf(world) + 1) % worlds.size()));
+    }
+
+    private static void displayWorld(SandboxWorld next) {
+        if (next == world) {
+            return;
+        }
+        // The hidden world keeps its models, so the selection highlight is cleared first
+        world.setSelected(selected, false);
+        world.setDisplayed(false);
+        world = next;
+        world.setDisplayed(true);
+        selected = null;
+        selectionSceneVersion = -1;
+        System.out.println("World: " + world);
+    }
+
+    private static void pollControlServer() {
+        try {
+            controlServer.poll();
+        } catch (IOException ex) {
+            // The clients are handled one by one, only the selector failing lands here, so the server is shut down rather than the sandbox
+            System.out.println("Control server failed, closing it: " + ex.getMessage());
+            try {
+                controlServer.close();
+            } catch (IOException closeEx) {
+                closeEx.printStackTrace();
+            }
+            controlServer = null;
         }
+    }
+
+    private static void saveScene() {
+        if (sceneReader != null || sceneOpening != null) {
+            System.out.println("Can't save while a scene is loading");
+            return;
+        }
+        try {
+            final long start = System.nanoTime();
+            final int count = SceneFile.write(world, sceneFile);
+            System.out.printf("Saved %d bodies to %s in %.1f ms%n", count, sceneFile, (System.nanoTime() - start) / 1e6);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private static void loadScene() {
+        if (sceneReader != null || sceneOpening != null) {
+            return;
+        }
+        final SandboxWorld loadingWorld = world;
+        final File file = sceneFile;
+        sceneOpening = assets.submit(new Callable<SceneFile.Reader>() {
+            @Override
+            public SceneFile.Reader call() throws IOException {
+                return SceneFile.read(loadingWorld, new FileInputStream(file), file.toString());
+            }
+        });
+    }
+
+    private static void openScene() {
+        try {
+            sceneReader = sceneOpening.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException ex) {
+            ex.getCause().printStackTrace();
+            return;
+        } finally {
+            sceneOpening = null;
+        }
+        // The world is paused until the whole scene is in, so the bodies don't fall through missing ones
+        final SandboxWorld loadingWorld = sceneReader.getWorld();
+        loadingWorld.clear();
+        loadingWorld.setPaused(true);
+        selected = null;
+        selectionSceneVersion = -1;
+        System.out.println("Loading scene: " + sceneFile);
+    }
+
+    private static void loadSceneBatch() {
+        final SandboxWorld loadingWorld = sceneReader.getWorld();
+        boolean done;
+        boolean failed = false;
+        try {
+            done = sceneReader.read(sceneLoadBatchSize);
+        } catch (IOException ex) {
+            // Take out what was read of the broken scene, rather than leave it as if it had loaded
+            System.out.println("Failed to load the scene, removing the " + sceneReader.getBodyCount() + " bodies read: " + ex.getMessage());
+            sceneReader.discard();
+            done = true;
+            failed = true;
+        }
+        if (done) {
+            try {
+                sceneReader.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+            if (!failed) {
+                System.out.println("Loaded " + sceneReader.getBodyCount() + " bodies");
+            }
+            sceneReader = null;
+            loadingWorld.setPaused(false);
+        }
+    }
+
+    private static void toggleDebugDraw(DebugDraw.Category category) {
+        final DebugDraw debugDraw = SandboxRenderer.getDebugDraw();
+        final boolean enabled = !debugDraw.isEnabled(category);
+        debugDraw.setEnabled(category, enabled);
+        System.out.println("Debug " + category.getConfigName() + ": " + (enabled ? "on" : "off"));
+    }
+
+    /**
+     * Replaces the point lights with randomly colored ones scattered above the floor of the default scene. The seed is fixed, so the same count gives the same lights.
+     *
+     * @param count The number of lights
+     */
+    private static void scatterPointLights(int count) {
+        final Random random = new Random(1);
+        SandboxRenderer.clearPointLights();
+        for (int i = 0; i < count; i++) {
+            final Vector3f position = new Vector3f(random.nextFloat() * 50 - 25, 3 + random.nextFloat() * 5, random.nextFloat() * 50 - 25);
+            final Color color = Color.getHSBColor(random.nextFloat(), 0.8f, 1);
+            SandboxRenderer.addPointLight(position, 3 + random.nextFloat() * 5, new Vector3f(color.getRed(), color.getGreen(), color.getBlue()).div(255));
+        }
+    }
+
+    private static void saveProfile() {
+        final File directory = new File("profiles");
+        directory.mkdirs();
+        final File file = new File(directory, PROFILE_DATE_FORMAT.format(Calendar.getInstance().getTime()) + ".csv");
+        try {
+            profiler.writeCSV(file);
+            System.out.println("Saved profile: " + file);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private static void toggleEffect(PostEffect effect) {
+        final boolean enabled = !SandboxRenderer.isEffectEnabled(effect);
+        SandboxRenderer.setEffectEnabled(effect, enabled);
+        System.out.println(effect.getConfigName() + ": " + (enabled ? "on" : "off"));
+    }
+
+    /**
+     * Casts a batch of rays in the displayed world. The origins and directions are packed as consecutive x, y, z triplets, one per ray.
+     *
+     * @param origins The ray origins
+     * @param directions The ray directions
+     * @return The closest intersected body for each ray, or null when nothing was hit
+     */
+    public static IntersectedBody[] castRays(float[] origins, float[] directions) {
+        return rayBatch.cast(world.getDynamicsWorld(), origins, directions, null);
+    }
+
+    private static void handleSelection() {
+        // The selection can only change if the camera or the scene did
         final Camera camera = SandboxRenderer.getCamera();
-        final IntersectedBody targeted = world.findClosestIntersectingBody(
-                SandboxUtil.toReactVector3(camera.getPosition()),
-                SandboxUtil.toReactVector3(camera.getForward()));
-        if (targeted != null && targeted.getBody() instanceof RigidBody) {
-            selected = targeted.getBody();
-            aabbs.get(selected).getUniforms().<Vector4Uniform>get("modelColor").set(CausticUtil.BLUE);
+        final Vector3f position = camera.getPosition();
+        final Quaternionf rotation = camera.getRotation();
+        if (selectionSceneVersion == world.getVersion() && position.equals(selectionCameraPosition) && rotation.equals(selectionCameraRotation)) {
+            return;
+        }
+        selectionSceneVersion = world.getVersion();
+        selectionCameraPosition = position;
+        selectionCameraRotation = rotation;
+        final Vector3f forward = camera.getForward();
+        final IntersectedBody targeted = rayBatch.cast(world.getDynamicsWorld(), position.getX(), position.getY(), position.getZ(), forward.getX(), forward.getY(), forward.getZ());
+        final CollisionBody target = targeted != null && targeted.getBody() instanceof RigidBody ? targeted.getBody() : null;
+        if (target == selected) {
+            return;
         }
+        world.setSelected(selected, false);
+        selected = target;
+        world.setSelected(selected, true);
     }
 
     private static void startupLog() {
         System.out.println("Starting up");
         System.out.println("Render Mode: " + glVersion);
         System.out.println("OpenGL Version: " + GL11.glGetString(GL11.GL_VERSION));
+        System.out.println("Quality: " + SandboxRenderer.getQuality());
+        System.out.println("Worlds: " + worlds);
+        System.out.println("Asset threads: " + (assets.isVirtual() ? "virtual" : "platform"));
     }
 
     private static void shutdownLog() {
@@ -357,24 +803,12 @@ public class Sandbox {
     }
 
     private static void setupPhysics() {
-        ObjFileLoader.load(Sandbox.class.getResourceAsStream("/models/diamond.obj"), meshPositions, null, null, meshIndices);
-        world = new DynamicsWorld(gravity, TIMESTEP);
-        final RigidBody box = addImmobileBody(new BoxShape(new Vector3(1, 1, 1)), 1, new Vector3(0, 6, 0), SandboxUtil.angleAxisToQuaternion(45, 1, 1, 1));
-        box.setMaterial(PHYSICS_MATERIAL);
-        addMobileBody(new BoxShape(new Vector3(0.28f, 0.28f, 0.28f)), 1, new Vector3(0, 6, 0), SandboxUtil.angleAxisToQuaternion(45, 1, 1, 1)).setMaterial(PHYSICS_MATERIAL);
-        addMobileBody(new ConeShape(1, 2), 1, new Vector3(0, 9, 0), SandboxUtil.angleAxisToQuaternion(89, -1, -1, -1)).setMaterial(PHYSICS_MATERIAL);
-        addMobileBody(new CylinderShape(1, 2), 1, new Vector3(0, 12, 0), SandboxUtil.angleAxisToQuaternion(-15, 1, -1, 1)).setMaterial(PHYSICS_MATERIAL);
-        addMobileBody(new CapsuleShape(1, 1), 1, new Vector3(4, 9, 0), SandboxUtil.angleAxisToQuaternion(-15, 1, -1, -1)).setMaterial(PHYSICS_MATERIAL);
-        final RigidBody sphere = addMobileBody(new SphereShape(1), 1, new Vector3(0, 6, 7), SandboxUtil.angleAxisToQuaternion(32, -1, -1, 1));
-        sphere.setMaterial(PHYSICS_MATERIAL);
-        addImmobileBody(new BoxShape(new Vector3(25, 1, 25)), 100, new Vector3(0, 1.8f, 0), Quaternion.identity()).setMaterial(PHYSICS_MATERIAL);
-        addImmobileBody(new BoxShape(new Vector3(50, 1, 50)), 100, new Vector3(0, 0, 0), Quaternion.identity()).setMaterial(PHYSICS_MATERIAL);
-        final Vector3 boxPosition = box.getTransform().getPosition();
-        final Vector3 spherePosition = sphere.getTransform().getPosition();
-        final SliderJointInfo info = new SliderJointInfo(box, sphere, Vector3.add(boxPosition, spherePosition).divide(2), Vector3.subtract(spherePosition, boxPosition), 0, 10, 1, 1);
-        info.setPositionCorrectionTechnique(JointsPositionCorrectionTechnique.BAUMGARTE_JOINTS);
-        world.createJoint(info);
-        world.start();
+        world = worlds.get(0);
+        world.setDisplayed(true);
+        for (SandboxWorld sandboxWorld : worlds) {
+            sandboxWorld.createDefaultScene();
+            sandboxWorld.start();
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -398,11 +832,111 @@ public class Sandbox {
             SandboxRenderer.setMeshShapeModelColor(parseVector4f(((String) appearanceConfig.get("MeshShapeColor")), 1));
             SandboxRenderer.setLightAttenuation(((Number) appearanceConfig.get("LightAttenuation")).floatValue());
             SandboxRenderer.setCullBackFaces((Boolean) appearanceConfig.get("CullingEnabled"));
+            frameRateCap = ((Number) appearanceConfig.get("FrameRateCap")).intValue();
+            vsync = (Boolean) appearanceConfig.get("VSync");
+            final Map<String, Object> effectsConfig = (Map<String, Object>) config.get("Effects");
+            for (PostEffect effect : PostEffect.values()) {
+                SandboxRenderer.setEffectEnabled(effect, (Boolean) effectsConfig.get(effect.getConfigName()));
+            }
+            SandboxRenderer.setFitShadowFrustum((Boolean) effectsConfig.get("FitShadowFrustum"));
+            SandboxRenderer.setCacheStaticShadows((Boolean) effectsConfig.get("CacheStaticShadows"));
+            SandboxRenderer.setLevelOfDetail((Boolean) effectsConfig.get("LevelOfDetail"));
+            SandboxRenderer.setOcclusionCulling((Boolean) effectsConfig.get("OcclusionCulling"));
+            SandboxRenderer.setPackedGBuffer((Boolean) effectsConfig.get("PackedGBuffer"));
+            SandboxRenderer.setMergeOcclusionShadow((Boolean) effectsConfig.get("MergeSSAOAndShadows"));
+            SandboxRenderer.setTiledLighting((Boolean) effectsConfig.get("TiledLighting"));
+            SandboxRenderer.setTemporalAccumulation((Boolean) effectsConfig.get("TemporalAccumulation"));
+            scatterPointLights(((Number) effectsConfig.get("PointLights")).intValue());
+            final Map<String, Object> presetsConfig = (Map<String, Object>) effectsConfig.get("Presets");
+            for (Entry<String, Object> entry : presetsConfig.entrySet()) {
+                qualityPresets.add(parseQualityPreset(entry.getKey(), (Map<String, Object>) entry.getValue()));
+            }
+            if (qualityPresets.isEmpty()) {
+                throw new IllegalArgumentException("At least one quality preset is required");
+            }
+            SandboxRenderer.setQuality(findQualityPreset((String) effectsConfig.get("Quality")));
+            final Map<String, Object> governorConfig = (Map<String, Object>) config.get("Governor");
+            governor = new QualityGovernor(
+                    findQualityPreset((String) governorConfig.get("MinQuality")),
+                    findQualityPreset((String) governorConfig.get("MaxQuality")),
+                    ((Number) governorConfig.get("Levels")).intValue(),
+                    ((Number) governorConfig.get("FrameBudget")).floatValue(),
+                    ((Number) governorConfig.get("Window")).intValue());
+            governor.setEnabled((Boolean) governorConfig.get("Enabled"));
+            final Map<String, Object> debugDrawConfig = (Map<String, Object>) config.get("DebugDraw");
+            for (DebugDraw.Category category : DebugDraw.Category.values()) {
+                SandboxRenderer.getDebugDraw().setEnabled(category, (Boolean) debugDrawConfig.get(category.getConfigName()));
+            }
+            final Map<String, Object> simulationConfig = (Map<String, Object>) config.get("Simulation");
+            final int commandQueueSize = ((Number) simulationConfig.get("CommandQueueSize")).intValue();
+            for (Map<String, Object> worldConfig : (List<Map<String, Object>>) simulationConfig.get("Worlds")) {
+                worlds.add(parseWorld(worldConfig, commandQueueSize));
+            }
+            stepper = new WorldStepper(worlds, ((Number) simulationConfig.get("WorkerThreads")).intValue());
+            final Map<String, Object> assetsConfig = (Map<String, Object>) config.get("Assets");
+            assets = new AssetService(((Number) assetsConfig.get("Threads")).intValue());
+            SandboxRenderer.setAssetService(assets);
+            uploadBudget = (long) (((Number) assetsConfig.get("UploadBudget")).floatValue() * 1e6);
+            sceneFile = new File((String) simulationConfig.get("SceneFile"));
+            final Map<String, Object> controlConfig = (Map<String, Object>) config.get("Control");
+            controlPort = (Boolean) controlConfig.get("Enabled") ? ((Number) controlConfig.get("Port")).intValue() : 0;
+            maxControlCommandsPerFrame = ((Number) controlConfig.get("MaxCommandsPerFrame")).intValue();
+            maxControlSpawnCount = ((Number) controlConfig.get("MaxSpawnCount")).intValue();
+            sceneLoadBatchSize = ((Number) simulationConfig.get("LoadBatchSize")).intValue();
+            final Map<String, Object> benchmarkConfig = (Map<String, Object>) config.get("Benchmark");
+            benchmarkWarmupFrames = ((Number) benchmarkConfig.get("WarmupFrames")).intValue();
+            benchmarkFrames = ((Number) benchmarkConfig.get("Frames")).intValue();
+            benchmarkReport = new File((String) benchmarkConfig.get("Report"));
+            for (String point : (List<String>) benchmarkConfig.get("Path")) {
+                addCameraPoint(benchmarkPath, point);
+            }
+            final Map<String, Object> goldenConfig = (Map<String, Object>) config.get("GoldenImages");
+            goldenDirectory = new File((String) goldenConfig.get("Directory"));
+            goldenFrames = ((Number) goldenConfig.get("Frames")).intValue();
+            goldenTolerance = ((Number) goldenConfig.get("Tolerance")).floatValue();
+            goldenMaxFailingFraction = ((Number) goldenConfig.get("MaxFailingFraction")).floatValue();
+            for (Entry<String, Object> entry : ((Map<String, Object>) goldenConfig.get("Poses")).entrySet()) {
+                goldenPoses.put(entry.getKey(), addCameraPoint(new CameraPath(), (String) entry.getValue()));
+            }
+            modelCreationBudget = (long) (((Number) simulationConfig.get("ModelCreationBudget")).floatValue() * 1e6);
         } catch (Exception ex) {
             throw new IllegalStateException("Malformed config.yml: \"" + ex.getMessage() + "\".", ex);
         }
     }
 
+    private static QualityPreset findQualityPreset(String name) {
+        for (QualityPreset preset : qualityPresets) {
+            if (preset.getName().equalsIgnoreCase(name)) {
+                return preset;
+            }
+        }
+        throw new IllegalArgumentException("Unknown quality preset: " + name);
+    }
+
+    private static QualityPreset parseQualityPreset(String name, Map<String, Object> presetConfig) {
+        return new QualityPreset(name,
+                ((Number) presetConfig.get("SSAOKernelSize")).intValue(),
+                ((Number) presetConfig.get("ShadowKernelSize")).intValue(),
+                ((Number) presetConfig.get("ShadowMapSize")).intValue(),
+                ((Number) presetConfig.get("BlurSize")).intValue(),
+                ((Number) presetConfig.get("MotionBlurSamples")).intValue(),
+                ((Number) presetConfig.get("AntiAliasingMaxSpan")).floatValue());
+    }
+
+    private static SandboxWorld parseWorld(Map<String, Object> worldConfig, int commandQueueSize) {
+        return new SandboxWorld((String) worldConfig.get("Name"),
+                ((Number) worldConfig.get("Timestep")).floatValue(),
+                new Material(((Number) worldConfig.get("Bounciness")).floatValue(), ((Number) worldConfig.get("Friction")).floatValue()),
+                JointsPositionCorrectionTechnique.valueOf(((String) worldConfig.get("JointsPositionCorrection")).toUpperCase()),
+                commandQueueSize);
+    }
+
+    private static CameraPath addCameraPoint(CameraPath path, String point) {
+        final String[] components = point.split(",");
+        return path.add(new Vector3f(Float.parseFloat(components[0].trim()), Float.parseFloat(components[1].trim()), Float.parseFloat(components[2].trim())),
+                Float.parseFloat(components[3].trim()), Float.parseFloat(components[4].trim()));
+    }
+
     private static Vector4f parseVector4f(String s, float alpha) {
         final String[] ss = s.split(",");
         return new Vector4f(
@@ -411,4 +945,142 @@ public class Sandbox {
                 Float.parseFloat(ss[2].trim()),
                 alpha);
     }
+
+    /**
+     * Handles the commands of the control server, on the render thread. Scene changes go through the command queue of the displayed world, everything else is applied immediately.
+     * <p>
+     * Commands:
+     * <ul>
+     * <li>spawn &lt;shape&gt; &lt;count&gt; &lt;x&gt; &lt;y&gt; &lt;z&gt; [spacing]: spawns a cube grid of bodies centered on the position, as one batch</li>
+     * <li>remove &lt;count|all&gt;: removes mobile bodies, as one batch</li>
+     * <li>camera &lt;x&gt; &lt;y&gt; &lt;z&gt; [pitch yaw]: moves the camera</li>
+     * <li>effect &lt;name&gt; &lt;on|off&gt;, quality &lt;name&gt;, governor &lt;on|off&gt;, debug &lt;category&gt; &lt;on|off&gt;: changes the settings</li>
+     * <li>world &lt;name&gt;: displays a world</li>
+     * <li>lights &lt;count&gt;: replaces the point lights of the tiled lighting</li>
+     * <li>stats: returns the frame rate, body and contact counts, and the profiler averages in milliseconds</li>
+     * </ul>
+     * Responses start with "ok" or "error".
+     */
+    private static class ControlHandler implements ControlServer.Handler {
+        @Override
+        public String handle(String command) {
+            final String[] args = command.split("\\s+");
+            try {
+                switch (args[0].toLowerCase()) {
+                    case "spawn":
+                        return spawn(args);
+                    case "remove":
+                        return remove(args);
+                    case "camera":
+                        SandboxRenderer.getCamera().setPosition(new Vector3f(Float.parseFloat(args[1]), Float.parseFloat(args[2]), Float.parseFloat(args[3])));
+                        if (args.length > 5) {
+                            cameraPitch = Float.parseFloat(args[4]) % 360;
+                            cameraYaw = Float.parseFloat(args[5]) % 360;
+                            updateCameraRotation();
+                        }
+                        return "ok";
+                    case "effect":
+                        SandboxRenderer.setEffectEnabled(findEffect(args[1]), parseToggle(args[2]));
+                        return "ok";
+                    case "quality":
+                        governor.setEnabled(false);
+                        SandboxRenderer.setQuality(findQualityPreset(args[1]));
+                        return "ok";
+                    case "governor":
+                        governor.setEnabled(parseToggle(args[1]));
+                        return "ok";
+                    case "debug":
+                        SandboxRenderer.getDebugDraw().setEnabled(DebugDraw.Category.valueOf(args[1].toUpperCase()), parseToggle(args[2]));
+                        return "ok";
+                    case "world":
+                        displayWorld(findWorld(args[1]));
+                        return "ok";
+                    case "lights":
+                        scatterPointLights(Integer.parseInt(args[1]));
+                        return "ok " + SandboxRenderer.getPointLightCount();
+                    case "stats":
+                        return stats();
+                    default:
+                        return "error Unknown command: " + args[0];
+                }
+            } catch (ArrayIndexOutOfBoundsException ex) {
+                return "error Missing arguments";
+            } catch (RuntimeException ex) {
+                return "error " + ex.getMessage();
+            }
+        }
+
+        private static String spawn(String[] args) {
+            final CollisionShapeType type = CollisionShapeType.valueOf(args[1].toUpperCase());
+            final int count = Integer.parseInt(args[2]);
+            if (count <= 0 || count > maxControlSpawnCount) {
+                return "error Spawn count must be from 1 to " + maxControlSpawnCount;
+            }
+            final float x = Float.parseFloat(args[3]), y = Float.parseFloat(args[4]), z = Float.parseFloat(args[5]);
+            final float spacing = args.length > 6 ? Float.parseFloat(args[6]) : 2.5f;
+            final int side = (int) Math.ceil(Math.cbrt(count));
+            final float offset = (side - 1) * spacing / 2;
+            final WorldCommand.SpawnBodies batch = new WorldCommand.SpawnBodies(count);
+            for (int i = 0; i < count; i++) {
+                final Vector3 position = new Vector3(
+                        x + (i % side) * spacing - offset,
+                        y + (i / side / side) * spacing,
+                        z + (i / side % side) * spacing - offset);
+                batch.add(SandboxWorld.createShape(type), 10, position, Quaternion.identity());
+            }
+            return world.submit(batch) ? "ok " + count : "error Command queue full";
+        }
+
+        private static String remove(String[] args) {
+            final int count = args[1].equalsIgnoreCase("all") ? Integer.MAX_VALUE : Integer.parseInt(args[1]);
+            final List<CollisionBody> bodies = new ArrayList<>();
+            for (CollisionBody body : world.getBodies()) {
+                if (bodies.size() >= count) {
+                    break;
+                }
+                if (body instanceof RigidBody && ((RigidBody) body).isMotionEnabled()) {
+                    bodies.add(body);
+                }
+            }
+            return world.submit(new WorldCommand.RemoveBodies(bodies)) ? "ok " + bodies.size() : "error Command queue full";
+        }
+
+        private static String stats() {
+            return String.format(Locale.ROOT, "ok fps=%d world=%s bodies=%d pending=%d occluded=%d targets=%d lights=%d pairs=%d contacts=%d physics=%.3f collision=%.3f dynamics=%.3f sync=%.3f render=%.3f",
+                    SandboxRenderer.getFPS(), world, world.getBodyCount(), world.getPendingModelCount(), SandboxRenderer.getOccludedModelCount(), SandboxRenderer.getFrameBufferBinds(), SandboxRenderer.getVisiblePointLightCount(), world.getPairCount(), world.getContactCount(),
+                    profiler.getAverage(PROFILE_PHYSICS) / 1e6, profiler.getAverage(PROFILE_COLLISION) / 1e6, profiler.getAverage(PROFILE_DYNAMICS) / 1e6, profiler.getAverage(PROFILE_SYNC) / 1e6,
+                    profiler.getAverage(PROFILE_RENDER) / 1e6);
+        }
+
+        private static PostEffect findEffect(String name) {
+            for (PostEffect effect : PostEffect.values()) {
+                if (effect.getConfigName().equalsIgnoreCase(name)) {
+                    return effect;
+                }
+            }
+            throw new IllegalArgumentException("Unknown effect: " + name);
+        }
+
+        private static SandboxWorld findWorld(String name) {
+            for (SandboxWorld sandboxWorld : worlds) {
+                if (sandboxWorld.getName().equalsIgnoreCase(name)) {
+                    return sandboxWorld;
+                }
+            }
+            throw new IllegalArgumentException("Unknown world: " + name);
+        }
+
+        private static boolean parseToggle(String toggle) {
+            switch (toggle.toLowerCase()) {
+                case "on":
+                case "true":
+                    return true;
+                case "off":
+                case "false":
+                    return false;
+                default:
+                    throw new IllegalArgumentException("Expected on or off: " + toggle);
+            }
+        }
+    }
 }
@@ -35,15 +35,25 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.EnumSet;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
+import com.flowpowered.caustic.api.Action;
 import com.flowpowered.caustic.api.Action.RenderModelsAction;
 import com.flowpowered.caustic.api.Camera;
 import com.flowpowered.caustic.api.GLImplementation;
@@ -98,23 +108,36 @@ import gnu.trove.list.TIntList;
 import gnu.trove.list.array.TFloatArrayList;
 import gnu.trove.list.array.TIntArrayList;
 
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL21;
 import org.lwjgl.opengl.GLContext;
 
 public class SandboxRenderer {
     // CONSTANTS
     private static final String WINDOW_TITLE = "Sandbox";
     private static final Vector2i WINDOW_SIZE = new Vector2i(1200, 800);
-    private static final Vector2i SHADOW_SIZE = new Vector2i(2048, 2048);
     private static final float ASPECT_RATIO = WINDOW_SIZE.getX() / (float) WINDOW_SIZE.getY();
     private static final float FIELD_OF_VIEW = 60;
     private static final float TAN_HALF_FOV = (float) Math.tan(Math.toRadians(FIELD_OF_VIEW) / 2);
     private static final float NEAR_PLANE = 0.1f;
     private static final float FAR_PLANE = 1000;
+    private static final float LIGHT_NEAR_PLANE = 0.1f;
+    private static final float LIGHT_FAR_PLANE = new Vector2f(50, 100).length();
+    private static final float LIGHT_FIELD_OF_VIEW = (float) TrigMath.RAD_TO_DEG * Sandbox.SPOT_CUTOFF * 2;
     private static final Vector2f PROJECTION = new Vector2f(FAR_PLANE / (FAR_PLANE - NEAR_PLANE), (-FAR_PLANE * NEAR_PLANE) / (FAR_PLANE - NEAR_PLANE));
     private static final DateFormat SCREENSHOT_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd_HH.mm.ss");
     // SETTINGS
     private static Vector4f backgroundColor = CausticUtil.DARK_GRAY;
     private static boolean cullBackFaces = true;
+    private static final Set<PostEffect> enabledEffects = EnumSet.allOf(PostEffect.class);
+    private static QualityPreset quality = new QualityPreset("High", 8, 8, 2048, 2, 8, 8);
+    private static boolean fitShadowFrustum = true;
+    private static boolean cacheStaticShadows = true;
+    private static boolean useLevelOfDetail = true;
+    private static boolean occlusionCulling = false;
+    private static boolean packedGBuffer = false;
+    private static boolean mergeOcclusionShadow = false;
     // EFFECT UNIFORMS
     private static final Vector3Uniform lightPositionUniform = new Vector3Uniform("lightPosition", Vector3f.ZERO);
     private static final Vector3Uniform spotDirectionUniform = new Vector3Uniform("spotDirection", new Vector3f(0, 0, -1));
@@ -125,15 +148,67 @@ public class SandboxRenderer {
     private static final Matrix4Uniform previousViewMatrixUniform = new Matrix4Uniform("previousViewMatrix", new Matrix4f());
     private static final Matrix4Uniform previousProjectionMatrixUniform = new Matrix4Uniform("previousProjectionMatrix", new Matrix4f());
     private static final FloatUniform blurStrengthUniform = new FloatUniform("blurStrength", 1);
+    private static final IntUniform motionBlurSampleCountUniform = new IntUniform("sampleCount", 8);
+    private static final FloatUniform antiAliasingMaxSpanUniform = new FloatUniform("maxSpan", 8);
+    private static final Vector2Uniform shadowChannelUniform = new Vector2Uniform("shadowChannel", new Vector2f(1, 0));
+    private static final IntUniform tiledLightsUniform = new IntUniform("tiledLights", 0);
+    private static final Vector2Uniform noiseOffsetUniform = new Vector2Uniform("noiseOffset", Vector2f.ZERO);
+    private static final Vector2Uniform temporalShadowChannelUniform = new Vector2Uniform("shadowChannel", new Vector2f(1, 0));
+    private static final FloatUniform historyWeightUniform = new FloatUniform("historyWeight", 0);
     // CAMERAS
     private static final Camera modelCamera = Camera.createPerspective(FIELD_OF_VIEW, WINDOW_SIZE.getX(), WINDOW_SIZE.getY(), NEAR_PLANE, FAR_PLANE);
-    private static final Camera lightCamera = Camera.createPerspective((float) TrigMath.RAD_TO_DEG * Sandbox.SPOT_CUTOFF * 2, 1, 1, 0.1f, new Vector2f(50, 100).length());
+    private static final Camera lightCamera = Camera.createPerspective(LIGHT_FIELD_OF_VIEW, 1, 1, LIGHT_NEAR_PLANE, LIGHT_FAR_PLANE);
     private static final Camera guiCamera = Camera.createOrthographic(1, 0, 1 / ASPECT_RATIO, 0, NEAR_PLANE, FAR_PLANE);
     // CONTEXT
     private static Context context;
+    // ASSETS
+    private static AssetService assets;
     // RENDER LISTS
-    private static final List<Model> modelRenderList = new ArrayList<>();
+    // Bucketed by material and vertex array, so the state changes once per bucket
+    private static final ModelRenderList modelRenderList = new ModelRenderList();
+    private static final List<Model> staticLightModelRenderList = new ArrayList<>();
+    private static final List<Model> dynamicLightModelRenderList = new ArrayList<>();
     private static final List<Model> guiRenderList = new ArrayList<>();
+    private static final List<Model> debugRenderList = new ArrayList<>();
+    // CULLING
+    private static final Map<Model, Float> modelBoundingRadii = new IdentityHashMap<>();
+    private static final Frustum modelFrustum = new Frustum();
+    private static Vector3f lightFrustum = new Vector3f(LIGHT_FIELD_OF_VIEW, LIGHT_NEAR_PLANE, LIGHT_FAR_PLANE);
+    // STATIC SHADOWS
+    private static final Set<Model> staticModels = Collections.newSetFromMap(new IdentityHashMap<Model, Boolean>());
+    private static boolean staticShadowsDirty = true;
+    // OCCLUSION CULLING, against the depths of the previous frame read back through a pixel buffer
+    private static final HiZBuffer hiZBuffer = new HiZBuffer();
+    private static final List<Model> visibleModelRenderList = new ArrayList<>();
+    private static int depthReadbackBuffer = 0;
+    private static boolean depthReadbackPending = false;
+    private static Matrix4f depthReadbackViewProjection;
+    private static int occludedModelCount = 0;
+    // TILED LIGHTING, the point lights binned to screen tiles on the CPU
+    private static final LightBinner lightBinner = new LightBinner();
+    private static boolean tiledLighting = false;
+    // TEMPORAL ACCUMULATION, of the SSAO and shadows into a pair of history textures used in turn
+    private static final float TEMPORAL_HISTORY_WEIGHT = 0.85f;
+    private static final float TEMPORAL_DEPTH_TOLERANCE = 0.05f;
+    // Seeded so the same frames get the same offsets, for the golden images
+    private static final Random noiseOffsetRandom = new Random(1);
+    private static boolean temporalAccumulation = false;
+    private static boolean temporalHistoryValid = false;
+    private static int temporalHistoryIndex = 0;
+    // STAGE TIMING, for the benchmarks
+    private static StageTimer stageTimer = null;
+    // RENDER TARGETS, read back for the golden images, null when the stage is disabled
+    private static Texture occlusionTarget;
+    private static Texture shadowTarget;
+    private static Texture finalTarget;
+    private static boolean animationFrozen = false;
+    // LEVEL OF DETAIL, with a coarser bias for the shadow pass
+    private static final int LOD_MODEL_PASS = 0;
+    private static final int LOD_LIGHT_PASS = 1;
+    private static final float LOD_LIGHT_BIAS = 0.5f;
+    private static final LevelOfDetail levelOfDetail = new LevelOfDetail(2);
+    // MOVED MODELS
+    private static final Set<Model> movedModels = Collections.newSetFromMap(new IdentityHashMap<Model, Boolean>());
     // PIPELINE
     private static Pipeline pipeline;
     // SHADERS
@@ -152,10 +227,18 @@ public class SandboxRenderer {
     private static Texture velocitiesTexture;
     private static Texture depthsTexture;
     private static Texture lightDepthsTexture;
+    private static Texture staticLightDepthsTexture;
     private static Texture ssaoTexture;
     private static Texture shadowTexture;
     private static Texture auxRTexture;
     private static Texture auxRGBATexture;
+    private static Texture occlusionShadowTexture;
+    private static Texture auxRGTexture;
+    private static Texture whiteTexture;
+    private static Texture lightsTexture;
+    private static Texture lightTilesTexture;
+    private static Texture lightIndicesTexture;
+    private static final Texture[] temporalHistoryTextures = new Texture[2];
     // MATERIALS
     private static Material solidMaterial;
     private static Material wireframeMaterial;
@@ -168,18 +251,36 @@ public class SandboxRenderer {
     private static Material motionBlurMaterial;
     private static Material antiAliasingMaterial;
     private static Material screenMaterial;
+    private static Material depthCopyMaterial;
+    private static Material debugMaterial;
+    private static Material occlusionShadowMaterial;
+    private static Material temporalMaterial;
+    private static Material blurHorizontalMaterial;
+    private static Material blurVerticalMaterial;
     // FRAME BUFFERS
     private static FrameBuffer modelFrameBuffer;
     private static FrameBuffer lightModelFrameBuffer;
+    private static FrameBuffer staticLightModelFrameBuffer;
     private static FrameBuffer ssaoFrameBuffer;
     private static FrameBuffer blurFrameBuffer;
     private static FrameBuffer shadowFrameBuffer;
     private static FrameBuffer lightingFrameBuffer;
     private static FrameBuffer motionBlurFrameBuffer;
     private static FrameBuffer antiAliasingFrameBuffer;
+    private static FrameBuffer occlusionShadowFrameBuffer;
+    private static FrameBuffer blurHorizontalFrameBuffer;
+    private static final FrameBuffer[] temporalFrameBuffers = new FrameBuffer[2];
+    // Frame buffer binds of the pipeline itself, and of all the stages during the last frame
+    private static int pipelineFrameBufferBinds = 0;
+    private static int frameBufferBinds = 0;
     // VERTEX ARRAYS
     private static VertexArray unitCubeWireVertexArray;
     private static VertexArray deferredStageScreenVertexArray;
+    private static VertexArray debugVertexArray;
+    // Shape geometry shared by all the models of the same shape and size
+    private static final Map<String, VertexArray> sharedVertexArrays = new HashMap<>();
+    // Level of detail chains of the round shapes, by the key of their full detail geometry
+    private static final Map<String, VertexArray[]> levelOfDetailChains = new HashMap<>();
     // EFFECTS
     private static SSAOEffect ssaoEffect;
     private static ShadowMappingEffect shadowMappingEffect;
@@ -196,9 +297,30 @@ public class SandboxRenderer {
     // FPS MONITOR
     private static final FPSMonitor fpsMonitor = new FPSMonitor();
     private static StringModel fpsMonitorModel;
+    // DEBUG DRAW
+    private static final DebugDraw debugDraw = new DebugDraw();
+    private static Model debugModel;
+    // PROFILER
+    private static final int PROFILER_TEXT_INTERVAL = 30;
+    private static Profiler profiler;
+    private static String profilerText = "";
+    private static int profilerTextAge = 0;
 
     public static void init() {
         initContext();
+        // The packed layout relies on explicit output locations
+        if (packedGBuffer && context.getGLVersion().getGLSLFull() < 150) {
+            System.out.println("The packed G-buffer needs GL32, it will be disabled");
+            packedGBuffer = false;
+        }
+        if (mergeOcclusionShadow && context.getGLVersion().getGLSLFull() < 150) {
+            System.out.println("Merging the SSAO and shadows needs GL32, it will be disabled");
+            mergeOcclusionShadow = false;
+        }
+        if (temporalAccumulation && context.getGLVersion().getGLSLFull() < 150) {
+            System.out.println("Temporal accumulation needs GL32, it will be disabled");
+            temporalAccumulation = false;
+        }
         initEffects();
         initPrograms();
         initTextures();
@@ -206,6 +328,8 @@ public class SandboxRenderer {
         initFrameBuffers();
         initVertexArrays();
         initPipeline();
+        // The startup images were decoded in parallel with the rest of the init, they're all in before the first frame
+        assets.finishUploads();
     }
 
     private static void initContext() {
@@ -229,72 +353,233 @@ public class SandboxRenderer {
     }
 
     private static void initEffects() {
-        final int blurSize = 2;
+        final int blurSize = quality.getBlurSize();
         // SSAO
-        ssaoEffect = new SSAOEffect(context, WINDOW_SIZE, 8, blurSize, 0.5f, 0.15f, 2);
+        ssaoEffect = new SSAOEffect(context, WINDOW_SIZE, getKernelSize(quality.getSSAOKernelSize()), blurSize, 0.5f, 0.15f, 2);
         // SHADOW MAPPING
-        shadowMappingEffect = new ShadowMappingEffect(context, WINDOW_SIZE, 8, blurSize, 0.000006f, 0.0004f);
+        shadowMappingEffect = new ShadowMappingEffect(context, WINDOW_SIZE, getKernelSize(quality.getShadowKernelSize()), blurSize, 0.000006f, 0.0004f);
         // BLUR
         blurEffect = new BlurEffect(WINDOW_SIZE, blurSize);
+        // MOTION BLUR
+        motionBlurSampleCountUniform.set(quality.getMotionBlurSamples());
+        // ANTI ALIASING
+        antiAliasingMaxSpanUniform.set(quality.getAntiAliasingMaxSpan());
+    }
+
+    private static int getKernelSize(int size) {
+        // The accumulation averages the samples of several frames, so each needs fewer
+        return temporalAccumulation ? Math.max(size / 2, 2) : size;
     }
 
     private static void initPipeline() {
         final GLVersion glVersion = context.getGLVersion();
+        final boolean ssao = enabledEffects.contains(PostEffect.SSAO);
+        final boolean shadows = enabledEffects.contains(PostEffect.SHADOWS);
+        final boolean blur = enabledEffects.contains(PostEffect.BLUR) && (ssao || shadows);
+        // With both effects, they can be computed in one pass to the two channels of one target
+        final boolean merged = mergeOcclusionShadow && ssao && shadows;
+        if (merged) {
+            lightingMaterial.addTexture(4, occlusionShadowTexture);
+            lightingMaterial.addTexture(5, occlusionShadowTexture);
+            shadowChannelUniform.set(new Vector2f(0, 1));
+        } else {
+            // Without the blur, the SSAO and shadow stages write straight to the lighting inputs
+            ssaoFrameBuffer.attach(AttachmentPoint.COLOR0, blur ? auxRTexture : ssaoTexture);
+            shadowFrameBuffer.attach(AttachmentPoint.COLOR0, blur ? auxRGBATexture : shadowTexture);
+            // The lighting samples a white texture in place of a disabled effect, which is neutral
+            lightingMaterial.addTexture(4, ssao ? ssaoTexture : whiteTexture);
+            lightingMaterial.addTexture(5, shadows ? shadowTexture : whiteTexture);
+            shadowChannelUniform.set(new Vector2f(1, 0));
+        }
+        if (occlusionCulling && !GLContext.getCapabilities().OpenGL21) {
+            System.out.println("Occlusion culling needs OpenGL 2.1, it will be disabled");
+            occlusionCulling = false;
+        }
+        occlusionTarget = merged ? occlusionShadowTexture : ssao ? ssaoTexture : null;
+        shadowTarget = merged ? occlusionShadowTexture : shadows ? shadowTexture : null;
+        // The accumulated SSAO and shadows are in the first and second channels of the history
+        final boolean temporal = temporalAccumulation && (ssao || shadows);
+        if (temporal) {
+            temporalMaterial.addTexture(0, merged ? occlusionShadowTexture : ssao ? ssaoTexture : whiteTexture);
+            temporalMaterial.addTexture(1, merged ? occlusionShadowTexture : shadows ? shadowTexture : whiteTexture);
+            temporalShadowChannelUniform.set(merged ? new Vector2f(0, 1) : new Vector2f(1, 0));
+            shadowChannelUniform.set(new Vector2f(0, 1));
+            temporalHistoryValid = false;
+        } else {
+            noiseOffsetUniform.set(Vector2f.ZERO);
+        }
+        if (tiledLighting && glVersion.getGLSLFull() < 150) {
+            System.out.println("Tiled lighting needs GL32, it will be disabled");
+            tiledLighting = false;
+        }
+        tiledLightsUniform.set(tiledLighting ? 1 : 0);
+        if (stageTimer != null) {
+            stageTimer.clearStages();
+        }
         PipelineBuilder pipelineBuilder = new PipelineBuilder();
+        pipelineFrameBufferBinds = 1;
         // MODEL
-        pipelineBuilder = pipelineBuilder.bindFrameBuffer(modelFrameBuffer).clearBuffer().renderModels(modelRenderList).unbindFrameBuffer(modelFrameBuffer);
+        pipelineBuilder = beginStage(pipelineBuilder, "Model");
+        if (useLevelOfDetail) {
+            pipelineBuilder = pipelineBuilder.doAction(new SelectLevelOfDetailAction(LOD_MODEL_PASS, modelCamera, 1));
+        }
+        if (occlusionCulling) {
+            pipelineBuilder = pipelineBuilder.bindFrameBuffer(modelFrameBuffer).clearBuffer().renderModels(visibleModelRenderList).doAction(new ReadDepthsAction())
+                    .unbindFrameBuffer(modelFrameBuffer);
+        } else {
+            pipelineBuilder = pipelineBuilder.bindFrameBuffer(modelFrameBuffer).clearBuffer().renderModels(modelRenderList).unbindFrameBuffer(modelFrameBuffer);
+        }
+        pipelineBuilder = endStage(pipelineBuilder);
         // LIGHT MODEL
-        pipelineBuilder = pipelineBuilder.useViewPort(new Rectangle(Vector2i.ZERO, SHADOW_SIZE)).useCamera(lightCamera).bindFrameBuffer(lightModelFrameBuffer).clearBuffer()
-                .renderModels(modelRenderList).unbindFrameBuffer(lightModelFrameBuffer).useViewPort(new Rectangle(Vector2i.ZERO, WINDOW_SIZE)).useCamera(modelCamera);
+        if (shadows) {
+            pipelineBuilder = beginStage(pipelineBuilder, "Light model");
+            pipelineBuilder = pipelineBuilder.useViewPort(new Rectangle(Vector2i.ZERO, quality.getShadowMapResolution())).useCamera(lightCamera);
+            pipelineFrameBufferBinds++;
+            if (useLevelOfDetail) {
+                pipelineBuilder = pipelineBuilder.doAction(new SelectLevelOfDetailAction(LOD_LIGHT_PASS, lightCamera, LOD_LIGHT_BIAS));
+            }
+            if (cacheStaticShadows) {
+                // The static casters are only rendered when they or the light changed, then their depths are copied under the dynamic ones
+                staticShadowsDirty = true;
+                pipelineBuilder = pipelineBuilder.doAction(new RenderStaticShadowsAction()).bindFrameBuffer(lightModelFrameBuffer).clearBuffer()
+                        .renderModels(Arrays.asList(new Model(deferredStageScreenVertexArray, depthCopyMaterial)));
+            } else {
+                pipelineBuilder = pipelineBuilder.bindFrameBuffer(lightModelFrameBuffer).clearBuffer().renderModels(staticLightModelRenderList);
+            }
+            pipelineBuilder = pipelineBuilder.renderModels(dynamicLightModelRenderList).unbindFrameBuffer(lightModelFrameBuffer)
+                    .useViewPort(new Rectangle(Vector2i.ZERO, WINDOW_SIZE)).useCamera(modelCamera);
+            pipelineBuilder = endStage(pipelineBuilder);
+        }
         // SSAO
         if (glVersion == GLVersion.GL32 || GLContext.getCapabilities().GL_ARB_depth_clamp) {
             pipelineBuilder = pipelineBuilder.disableCapabilities(Capability.DEPTH_CLAMP);
         }
-        pipelineBuilder = pipelineBuilder.disableCapabilities(Capability.DEPTH_TEST).doAction(new DoDeferredStageAction(ssaoFrameBuffer, deferredStageScreenVertexArray, ssaoMaterial));
-        // SHADOW
-        pipelineBuilder = pipelineBuilder.doAction(new DoDeferredStageAction(shadowFrameBuffer, deferredStageScreenVertexArray, shadowMaterial));
-        // BLUR
-        pipelineBuilder = pipelineBuilder.doAction(new DoDeferredStageAction(blurFrameBuffer, deferredStageScreenVertexArray, blurMaterial));
+        pipelineBuilder = pipelineBuilder.disableCapabilities(Capability.DEPTH_TEST);
+        if (merged) {
+            // SSAO AND SHADOW
+            pipelineBuilder = timeStage(pipelineBuilder, "SSAO and shadow",
+                    new DoDeferredStageAction(occlusionShadowFrameBuffer, deferredStageScreenVertexArray, occlusionShadowMaterial));
+            // BLUR, as a horizontal then a vertical pass, for 2n samples instead of n squared
+            if (blur) {
+                pipelineBuilder = beginStage(pipelineBuilder, "Blur")
+                        .doAction(new DoDeferredStageAction(blurHorizontalFrameBuffer, deferredStageScreenVertexArray, blurHorizontalMaterial))
+                        .doAction(new DoDeferredStageAction(occlusionShadowFrameBuffer, deferredStageScreenVertexArray, blurVerticalMaterial));
+                pipelineBuilder = endStage(pipelineBuilder);
+            }
+        } else {
+            if (ssao) {
+                pipelineBuilder = timeStage(pipelineBuilder, "SSAO", new DoDeferredStageAction(ssaoFrameBuffer, deferredStageScreenVertexArray, ssaoMaterial));
+            }
+            // SHADOW
+            if (shadows) {
+                pipelineBuilder = timeStage(pipelineBuilder, "Shadow", new DoDeferredStageAction(shadowFrameBuffer, deferredStageScreenVertexArray, shadowMaterial));
+            }
+            // BLUR
+            if (blur) {
+                pipelineBuilder = timeStage(pipelineBuilder, "Blur", new DoDeferredStageAction(blurFrameBuffer, deferredStageScreenVertexArray, blurMaterial));
+            }
+        }
+        // TEMPORAL ACCUMULATION
+        if (temporal) {
+            pipelineBuilder = timeStage(pipelineBuilder, "Temporal", new TemporalAccumulationAction(deferredStageScreenVertexArray));
+        }
         // LIGHTING
+        pipelineBuilder = beginStage(pipelineBuilder, "Lighting");
+        if (tiledLighting) {
+            pipelineBuilder = pipelineBuilder.doAction(new BinLightsAction());
+        }
         pipelineBuilder = pipelineBuilder.doAction(new DoDeferredStageAction(lightingFrameBuffer, deferredStageScreenVertexArray, lightingMaterial));
+        pipelineBuilder = endStage(pipelineBuilder);
+        // The post effects ping-pong between the aux RGBA and colors textures, the latter being free once lit
+        Texture color = auxRGBATexture;
+        FrameBuffer lastFrameBuffer = lightingFrameBuffer;
         // MOTION BLUR
-        pipelineBuilder = pipelineBuilder.doAction(new DoDeferredStageAction(motionBlurFrameBuffer, deferredStageScreenVertexArray, motionBlurMaterial));
+        if (enabledEffects.contains(PostEffect.MOTION_BLUR)) {
+            motionBlurMaterial.addTexture(0, color);
+            color = color == auxRGBATexture ? colorsTexture : auxRGBATexture;
+            motionBlurFrameBuffer.attach(AttachmentPoint.COLOR0, color);
+            pipelineBuilder = timeStage(pipelineBuilder, "Motion blur", new DoDeferredStageAction(motionBlurFrameBuffer, deferredStageScreenVertexArray, motionBlurMaterial));
+            lastFrameBuffer = motionBlurFrameBuffer;
+        }
         // ANTI ALIASING
-        pipelineBuilder = pipelineBuilder.doAction(new DoDeferredStageAction(antiAliasingFrameBuffer, deferredStageScreenVertexArray, antiAliasingMaterial))
-                .unbindFrameBuffer(antiAliasingFrameBuffer).enableCapabilities(Capability.DEPTH_TEST);
+        if (enabledEffects.contains(PostEffect.ANTI_ALIASING)) {
+            antiAliasingMaterial.addTexture(0, color);
+            color = color == auxRGBATexture ? colorsTexture : auxRGBATexture;
+            antiAliasingFrameBuffer.attach(AttachmentPoint.COLOR0, color);
+            pipelineBuilder = timeStage(pipelineBuilder, "Anti aliasing", new DoDeferredStageAction(antiAliasingFrameBuffer, deferredStageScreenVertexArray, antiAliasingMaterial));
+            lastFrameBuffer = antiAliasingFrameBuffer;
+        }
+        screenMaterial.addTexture(0, color);
+        finalTarget = color;
+        pipelineBuilder = pipelineBuilder.unbindFrameBuffer(lastFrameBuffer).enableCapabilities(Capability.DEPTH_TEST);
         if (glVersion == GLVersion.GL32 || GLContext.getCapabilities().GL_ARB_depth_clamp) {
             pipelineBuilder = pipelineBuilder.enableCapabilities(Capability.DEPTH_CLAMP);
         }
         // GUI
+        pipelineBuilder = beginStage(pipelineBuilder, "Screen");
         pipelineBuilder = pipelineBuilder.useCamera(guiCamera).enableCapabilities(Capability.BLEND).clearBuffer().renderModels(guiRenderList).disableCapabilities(Capability.BLEND)
-                .useCamera(modelCamera).updateDisplay();
+                .useCamera(modelCamera);
+        // DEBUG, drawn over everything
+        pipelineBuilder = pipelineBuilder.disableCapabilities(Capability.DEPTH_TEST).renderModels(debugRenderList).enableCapabilities(Capability.DEPTH_TEST);
+        pipelineBuilder = endStage(pipelineBuilder).updateDisplay();
         pipeline = pipelineBuilder.build();
     }
 
+    private static PipelineBuilder beginStage(PipelineBuilder pipelineBuilder, String name) {
+        return stageTimer == null ? pipelineBuilder : pipelineBuilder.doAction(stageTimer.begin(name));
+    }
+
+    private static PipelineBuilder endStage(PipelineBuilder pipelineBuilder) {
+        return stageTimer == null ? pipelineBuilder : pipelineBuilder.doAction(stageTimer.end());
+    }
+
+    private static PipelineBuilder timeStage(PipelineBuilder pipelineBuilder, String name, Action stage) {
+        return endStage(beginStage(pipelineBuilder, name).doAction(stage));
+    }
+
     private static void initPrograms() {
+        // The stages reading the G-buffer have a variant for the packed layout
+        final String layout = packedGBuffer ? "Packed" : "";
         // SOLID
-        loadProgram("solid");
+        loadProgram("solid", layout);
         // TEXTURED
-        loadProgram("textured");
+        loadProgram("textured", layout);
         /// FONT
         loadProgram("font");
         // SSAO
-        loadProgram("ssao");
+        loadProgram("ssao", layout);
         // SHADOW
-        loadProgram("shadow");
+        loadProgram("shadow", layout);
         // BLUR
         loadProgram("blur");
         // LIGHTING
-        loadProgram("lighting");
+        loadProgram("lighting", layout);
         // MOTION BLUR
         loadProgram("motionBlur");
         // ANTI ALIASING
-        loadProgram("edaa");
+        loadProgram("edaa", layout);
         // SCREEN
         loadProgram("screen");
+        // DEPTH COPY
+        loadProgram("depthCopy");
+        // DEBUG
+        loadProgram("debug");
+        // SSAO AND SHADOW
+        if (mergeOcclusionShadow) {
+            loadProgram("occlusionShadow", layout);
+            loadProgram("separableBlur");
+        }
+        // TEMPORAL ACCUMULATION
+        if (context.getGLVersion().getGLSLFull() >= 150) {
+            loadProgram("temporal");
+        }
     }
 
     private static void loadProgram(String name) {
+        loadProgram(name, "");
+    }
+
+    private static void loadProgram(String name, String fragmentVariant) {
         final String shaderPath = "/shaders/glsl" + (context.getGLVersion().getGLSLFull() >= 150 ? 330 : 120) + "/" + name;
         // SHADERS
         final Shader vert = context.newShader();
@@ -303,7 +588,7 @@ public class SandboxRenderer {
         vert.compile();
         final Shader frag = context.newShader();
         frag.create();
-        frag.setSource(new ShaderSource(Sandbox.class.getResourceAsStream(shaderPath + ".frag")));
+        frag.setSource(new ShaderSource(Sandbox.class.getResourceAsStream(shaderPath + fragmentVariant + ".frag")));
         frag.compile();
         // PROGRAM
         final Program program = context.newProgram();
@@ -315,48 +600,40 @@ public class SandboxRenderer {
     }
 
     private static void initTextures() {
-        ByteBuffer data;
-        final Rectangle size = new Rectangle();
         // CREEPER DIFFUSE
         creeperDiffuseTexture = context.newTexture();
         creeperDiffuseTexture.create();
         creeperDiffuseTexture.setFilters(FilterMode.NEAREST, FilterMode.NEAREST);
-        data = CausticUtil.getImageData(Sandbox.class.getResourceAsStream("/textures/creeper_diffuse.png"), Format.RGB, size);
-        creeperDiffuseTexture.setImageData(data, size.getWidth(), size.getHeight());
+        uploadImage(creeperDiffuseTexture, "/textures/creeper_diffuse.png", Format.RGB);
         // CREEPER NORMALS
         creeperNormalsTexture = context.newTexture();
         creeperNormalsTexture.create();
         creeperNormalsTexture.setFilters(FilterMode.LINEAR, FilterMode.LINEAR);
-        data = CausticUtil.getImageData(Sandbox.class.getResourceAsStream("/textures/creeper_normals.png"), Format.RGB, size);
-        creeperNormalsTexture.setImageData(data, size.getWidth(), size.getHeight());
+        uploadImage(creeperNormalsTexture, "/textures/creeper_normals.png", Format.RGB);
         // CREEPER SPECULAR
         creeperSpecularTexture = context.newTexture();
         creeperSpecularTexture.create();
         creeperSpecularTexture.setFilters(FilterMode.LINEAR, FilterMode.LINEAR);
         creeperSpecularTexture.setFormat(Format.RED, InternalFormat.R8);
-        data = CausticUtil.getImageData(Sandbox.class.getResourceAsStream("/textures/creeper_specular.png"), Format.RED, size);
-        creeperSpecularTexture.setImageData(data, size.getWidth(), size.getHeight());
+        uploadImage(creeperSpecularTexture, "/textures/creeper_specular.png", Format.RED);
         // WOOD DIFFUSE
         woodDiffuseTexture = context.newTexture();
         woodDiffuseTexture.create();
         woodDiffuseTexture.setFilters(FilterMode.LINEAR_MIPMAP_LINEAR, FilterMode.LINEAR);
-        data = CausticUtil.getImageData(Sandbox.class.getResourceAsStream("/textures/wood_diffuse.png"), Format.RGB, size);
-        woodDiffuseTexture.setImageData(data, size.getWidth(), size.getHeight());
+        uploadImage(woodDiffuseTexture, "/textures/wood_diffuse.png", Format.RGB);
         woodDiffuseTexture.setAnisotropicFiltering(16);
         // WOOD NORMALS
         woodNormalsTexture = context.newTexture();
         woodNormalsTexture.create();
         woodNormalsTexture.setFilters(FilterMode.LINEAR_MIPMAP_LINEAR, FilterMode.LINEAR);
-        data = CausticUtil.getImageData(Sandbox.class.getResourceAsStream("/textures/wood_normals.png"), Format.RGB, size);
-        woodNormalsTexture.setImageData(data, size.getWidth(), size.getHeight());
+        uploadImage(woodNormalsTexture, "/textures/wood_normals.png", Format.RGB);
         woodNormalsTexture.setAnisotropicFiltering(16);
         // WOOD SPECULAR
         woodSpecularTexture = context.newTexture();
         woodSpecularTexture.create();
         woodSpecularTexture.setFormat(Format.RED, InternalFormat.R8);
         woodSpecularTexture.setFilters(FilterMode.LINEAR_MIPMAP_LINEAR, FilterMode.LINEAR);
-        data = CausticUtil.getImageData(Sandbox.class.getResourceAsStream("/textures/wood_specular.png"), Format.RED, size);
-        woodSpecularTexture.setImageData(data, size.getWidth(), size.getHeight());
+        uploadImage(woodSpecularTexture, "/textures/wood_specular.png", Format.RED);
         woodSpecularTexture.setAnisotropicFiltering(16);
         // COLORS
         colorsTexture = context.newTexture();
@@ -364,23 +641,35 @@ public class SandboxRenderer {
         colorsTexture.setFormat(Format.RGBA, InternalFormat.RGBA8);
         colorsTexture.setFilters(FilterMode.LINEAR, FilterMode.LINEAR);
         colorsTexture.setImageData(null, WINDOW_SIZE.getX(), WINDOW_SIZE.getY());
-        // NORMALS
+        // NORMALS, octahedral encoded when packed. The packed normals can't be filtered, they don't interpolate linearly
         normalsTexture = context.newTexture();
         normalsTexture.create();
-        normalsTexture.setFormat(Format.RGBA, InternalFormat.RGBA8);
-        normalsTexture.setFilters(FilterMode.LINEAR, FilterMode.LINEAR);
+        if (packedGBuffer) {
+            normalsTexture.setFormat(Format.RG, InternalFormat.RG16);
+            normalsTexture.setFilters(FilterMode.NEAREST, FilterMode.NEAREST);
+        } else {
+            normalsTexture.setFormat(Format.RGBA, InternalFormat.RGBA8);
+            normalsTexture.setFilters(FilterMode.LINEAR, FilterMode.LINEAR);
+        }
         normalsTexture.setImageData(null, WINDOW_SIZE.getX(), WINDOW_SIZE.getY());
-        // VERTEX NORMALS
+        // VERTEX NORMALS, only used for biasing and edge detection, so 8 bits are enough when packed
         vertexNormals = context.newTexture();
         vertexNormals.create();
-        vertexNormals.setFormat(Format.RGBA, InternalFormat.RGBA8);
-        vertexNormals.setFilters(FilterMode.LINEAR, FilterMode.LINEAR);
+        if (packedGBuffer) {
+            vertexNormals.setFormat(Format.RG, InternalFormat.RG8);
+            vertexNormals.setFilters(FilterMode.NEAREST, FilterMode.NEAREST);
+        } else {
+            vertexNormals.setFormat(Format.RGBA, InternalFormat.RGBA8);
+            vertexNormals.setFilters(FilterMode.LINEAR, FilterMode.LINEAR);
+        }
         vertexNormals.setImageData(null, WINDOW_SIZE.getX(), WINDOW_SIZE.getY());
-        // MATERIALS
-        materialsTexture = context.newTexture();
-        materialsTexture.create();
-        materialsTexture.setFilters(FilterMode.LINEAR, FilterMode.LINEAR);
-        materialsTexture.setImageData(null, WINDOW_SIZE.getX(), WINDOW_SIZE.getY());
+        // MATERIALS, in the alpha of the colors when packed
+        if (!packedGBuffer) {
+            materialsTexture = context.newTexture();
+            materialsTexture.create();
+            materialsTexture.setFilters(FilterMode.LINEAR, FilterMode.LINEAR);
+            materialsTexture.setImageData(null, WINDOW_SIZE.getX(), WINDOW_SIZE.getY());
+        }
         // VELOCITIES
         velocitiesTexture = context.newTexture();
         velocitiesTexture.create();
@@ -399,9 +688,16 @@ public class SandboxRenderer {
         lightDepthsTexture.create();
         lightDepthsTexture.setFormat(Format.DEPTH, InternalFormat.DEPTH_COMPONENT32);
         lightDepthsTexture.setFilters(FilterMode.LINEAR, FilterMode.LINEAR);
-        lightDepthsTexture.setImageData(null, SHADOW_SIZE.getX(), SHADOW_SIZE.getY());
+        lightDepthsTexture.setImageData(null, quality.getShadowMapSize(), quality.getShadowMapSize());
         lightDepthsTexture.setWraps(WrapMode.CLAMP_TO_BORDER, WrapMode.CLAMP_TO_BORDER);
         lightDepthsTexture.setCompareMode(CompareMode.LESS);
+        // STATIC LIGHT DEPTHS
+        staticLightDepthsTexture = context.newTexture();
+        staticLightDepthsTexture.create();
+        staticLightDepthsTexture.setFormat(Format.DEPTH, InternalFormat.DEPTH_COMPONENT32);
+        staticLightDepthsTexture.setFilters(FilterMode.NEAREST, FilterMode.NEAREST);
+        staticLightDepthsTexture.setImageData(null, quality.getShadowMapSize(), quality.getShadowMapSize());
+        staticLightDepthsTexture.setWraps(WrapMode.CLAMP_TO_EDGE, WrapMode.CLAMP_TO_EDGE);
         // SSAO
         ssaoTexture = context.newTexture();
         ssaoTexture.create();
@@ -427,6 +723,67 @@ public class SandboxRenderer {
         auxRGBATexture.setFilters(FilterMode.LINEAR, FilterMode.LINEAR);
         auxRGBATexture.setImageData(null, WINDOW_SIZE.getX(), WINDOW_SIZE.getY());
         auxRGBATexture.setWraps(WrapMode.CLAMP_TO_EDGE, WrapMode.CLAMP_TO_EDGE);
+        // SSAO AND SHADOW, AUX RG
+        if (mergeOcclusionShadow) {
+            occlusionShadowTexture = context.newTexture();
+            occlusionShadowTexture.create();
+            occlusionShadowTexture.setFormat(Format.RG, InternalFormat.RG8);
+            occlusionShadowTexture.setFilters(FilterMode.LINEAR, FilterMode.LINEAR);
+            occlusionShadowTexture.setImageData(null, WINDOW_SIZE.getX(), WINDOW_SIZE.getY());
+            occlusionShadowTexture.setWraps(WrapMode.CLAMP_TO_EDGE, WrapMode.CLAMP_TO_EDGE);
+            auxRGTexture = context.newTexture();
+            auxRGTexture.create();
+            auxRGTexture.setFormat(Format.RG, InternalFormat.RG8);
+            auxRGTexture.setFilters(FilterMode.LINEAR, FilterMode.LINEAR);
+            auxRGTexture.setImageData(null, WINDOW_SIZE.getX(), WINDOW_SIZE.getY());
+            auxRGTexture.setWraps(WrapMode.CLAMP_TO_EDGE, WrapMode.CLAMP_TO_EDGE);
+        }
+        // WHITE
+        whiteTexture = context.newTexture();
+        whiteTexture.create();
+        whiteTexture.setFormat(Format.RED, InternalFormat.R8);
+        whiteTexture.setFilters(FilterMode.NEAREST, FilterMode.NEAREST);
+        final ByteBuffer white = CausticUtil.createByteBuffer(1);
+        white.put((byte) 0xff);
+        white.flip();
+        whiteTexture.setImageData(white, 1, 1);
+        // TILED LIGHTING, only read through texel fetches
+        if (context.getGLVersion().getGLSLFull() >= 150) {
+            lightsTexture = context.newTexture();
+            lightsTexture.create();
+            lightsTexture.setFormat(Format.RGBA, InternalFormat.RGBA32F);
+            lightsTexture.setFilters(FilterMode.NEAREST, FilterMode.NEAREST);
+            lightsTexture.setImageData(null, 2, LightBinner.MAX_LIGHTS);
+            lightTilesTexture = context.newTexture();
+            lightTilesTexture.create();
+            lightTilesTexture.setFormat(Format.RG, InternalFormat.RG32F);
+            lightTilesTexture.setFilters(FilterMode.NEAREST, FilterMode.NEAREST);
+            lightTilesTexture.setImageData(null, 1, 1);
+            lightIndicesTexture = context.newTexture();
+            lightIndicesTexture.create();
+            lightIndicesTexture.setFormat(Format.RED, InternalFormat.R32F);
+            lightIndicesTexture.setFilters(FilterMode.NEAREST, FilterMode.NEAREST);
+            lightIndicesTexture.setImageData(null, LightBinner.INDEX_ROW_LENGTH, 1);
+            // TEMPORAL HISTORY, the view depth in the third channel rejects the uncovered surfaces
+            for (int i = 0; i < temporalHistoryTextures.length; i++) {
+                final Texture history = context.newTexture();
+                history.create();
+                history.setFormat(Format.RGBA, InternalFormat.RGBA16F);
+                history.setFilters(FilterMode.LINEAR, FilterMode.LINEAR);
+                history.setImageData(null, WINDOW_SIZE.getX(), WINDOW_SIZE.getY());
+                history.setWraps(WrapMode.CLAMP_TO_EDGE, WrapMode.CLAMP_TO_EDGE);
+                temporalHistoryTextures[i] = history;
+            }
+        }
+    }
+
+    private static void uploadImage(final Texture texture, String path, Format format) {
+        assets.upload(assets.loadImage(path, format), new AssetService.Upload<AssetService.ImageData>() {
+            @Override
+            public void upload(AssetService.ImageData image) {
+                texture.setImageData(image.getData(), image.getWidth(), image.getHeight());
+            }
+        });
     }
 
     private static void initMaterials() {
@@ -463,18 +820,15 @@ public class SandboxRenderer {
         ssaoMaterial = createMaterial("ssao");
         ssaoMaterial.addTexture(0, normalsTexture);
         ssaoMaterial.addTexture(1, depthsTexture);
-        ssaoMaterial.addTexture(2, ssaoEffect.getNoiseTexture());
         uniforms = ssaoMaterial.getUniforms();
         uniforms.add(new Vector2Uniform("projection", PROJECTION));
         uniforms.add(new FloatUniform("tanHalfFOV", TAN_HALF_FOV));
         uniforms.add(new FloatUniform("aspectRatio", ASPECT_RATIO));
-        ssaoEffect.addUniforms(uniforms);
         // SHADOW
         shadowMaterial = createMaterial("shadow");
         shadowMaterial.addTexture(0, vertexNormals);
         shadowMaterial.addTexture(1, depthsTexture);
         shadowMaterial.addTexture(2, lightDepthsTexture);
-        shadowMaterial.addTexture(3, shadowMappingEffect.getNoiseTexture());
         uniforms = shadowMaterial.getUniforms();
         uniforms.add(new Vector2Uniform("projection", PROJECTION));
         uniforms.add(new FloatUniform("tanHalfFOV", TAN_HALF_FOV));
@@ -483,19 +837,23 @@ public class SandboxRenderer {
         uniforms.add(inverseViewMatrixUniform);
         uniforms.add(lightViewMatrixUniform);
         uniforms.add(lightProjectionMatrixUniform);
-        shadowMappingEffect.addUniforms(uniforms);
+        // Only the GLSL 330 SSAO and shadows are offset each frame for the temporal accumulation
+        if (context.getGLVersion().getGLSLFull() >= 150) {
+            ssaoMaterial.getUniforms().add(noiseOffsetUniform);
+            uniforms.add(noiseOffsetUniform);
+        }
         // BLUR
         blurMaterial = createMaterial("blur");
         blurMaterial.addTexture(0, auxRTexture);
         blurMaterial.addTexture(1, auxRGBATexture);
-        uniforms = blurMaterial.getUniforms();
-        blurEffect.addUniforms(uniforms);
         // LIGHTING
         lightingMaterial = createMaterial("lighting");
         lightingMaterial.addTexture(0, colorsTexture);
         lightingMaterial.addTexture(1, normalsTexture);
         lightingMaterial.addTexture(2, depthsTexture);
-        lightingMaterial.addTexture(3, materialsTexture);
+        if (!packedGBuffer) {
+            lightingMaterial.addTexture(3, materialsTexture);
+        }
         lightingMaterial.addTexture(4, ssaoTexture);
         lightingMaterial.addTexture(5, shadowTexture);
         uniforms = lightingMaterial.getUniforms();
@@ -506,13 +864,23 @@ public class SandboxRenderer {
         uniforms.add(lightAttenuationUniform);
         uniforms.add(new FloatUniform("spotCutoff", TrigMath.cos(Sandbox.SPOT_CUTOFF)));
         uniforms.add(spotDirectionUniform);
+        // Only the GLSL 330 lighting can read the shadows from a merged target and loop over the tiled lights
+        if (context.getGLVersion().getGLSLFull() >= 150) {
+            lightingMaterial.addTexture(6, lightsTexture);
+            lightingMaterial.addTexture(7, lightTilesTexture);
+            lightingMaterial.addTexture(8, lightIndicesTexture);
+            uniforms.add(shadowChannelUniform);
+            uniforms.add(tiledLightsUniform);
+            uniforms.add(new IntUniform("lightTileSize", LightBinner.TILE_SIZE));
+            uniforms.add(new IntUniform("lightIndexRowLength", LightBinner.INDEX_ROW_LENGTH));
+        }
         // MOTION BLUR
         motionBlurMaterial = createMaterial("motionBlur");
         motionBlurMaterial.addTexture(0, auxRGBATexture);
         motionBlurMaterial.addTexture(1, velocitiesTexture);
         uniforms = motionBlurMaterial.getUniforms();
         uniforms.add(new Vector2Uniform("resolution", WINDOW_SIZE.toFloat()));
-        uniforms.add(new IntUniform("sampleCount", 8));
+        uniforms.add(motionBlurSampleCountUniform);
         uniforms.add(blurStrengthUniform);
         // ANTI ALIASING
         antiAliasingMaterial = createMaterial("edaa");
@@ -522,13 +890,78 @@ public class SandboxRenderer {
         uniforms = antiAliasingMaterial.getUniforms();
         uniforms.add(new Vector2Uniform("projection", PROJECTION));
         uniforms.add(new Vector2Uniform("resolution", WINDOW_SIZE.toFloat()));
-        uniforms.add(new FloatUniform("maxSpan", 8));
+        uniforms.add(antiAliasingMaxSpanUniform);
         uniforms.add(new Vector2Uniform("barriers", new Vector2f(0.8f, 0.5f)));
         uniforms.add(new Vector2Uniform("weights", new Vector2f(0.25f, 0.6f)));
         uniforms.add(new FloatUniform("kernel", 0.75f));
         // SCREEN
         screenMaterial = createMaterial("screen");
         screenMaterial.addTexture(0, auxRGBATexture);
+        // DEPTH COPY
+        depthCopyMaterial = createMaterial("depthCopy");
+        depthCopyMaterial.addTexture(0, staticLightDepthsTexture);
+        // DEBUG
+        debugMaterial = createMaterial("debug");
+        // SSAO AND SHADOW
+        if (mergeOcclusionShadow) {
+            occlusionShadowMaterial = createMaterial("occlusionShadow");
+            occlusionShadowMaterial.addTexture(0, normalsTexture);
+            occlusionShadowMaterial.addTexture(1, depthsTexture);
+            occlusionShadowMaterial.addTexture(2, lightDepthsTexture);
+            occlusionShadowMaterial.addTexture(5, vertexNormals);
+            uniforms = occlusionShadowMaterial.getUniforms();
+            uniforms.add(new Vector2Uniform("projection", PROJECTION));
+            uniforms.add(new FloatUniform("tanHalfFOV", TAN_HALF_FOV));
+            uniforms.add(new FloatUniform("aspectRatio", ASPECT_RATIO));
+            uniforms.add(lightPositionUniform);
+            uniforms.add(inverseViewMatrixUniform);
+            uniforms.add(lightViewMatrixUniform);
+            uniforms.add(lightProjectionMatrixUniform);
+            uniforms.add(noiseOffsetUniform);
+            // BLUR
+            blurHorizontalMaterial = createMaterial("separableBlur");
+            blurHorizontalMaterial.addTexture(0, occlusionShadowTexture);
+            blurHorizontalMaterial.getUniforms().add(new Vector2Uniform("direction", new Vector2f(1, 0)));
+            blurVerticalMaterial = createMaterial("separableBlur");
+            blurVerticalMaterial.addTexture(0, auxRGTexture);
+            blurVerticalMaterial.getUniforms().add(new Vector2Uniform("direction", new Vector2f(0, 1)));
+        }
+        // TEMPORAL ACCUMULATION
+        if (context.getGLVersion().getGLSLFull() >= 150) {
+            temporalMaterial = createMaterial("temporal");
+            temporalMaterial.addTexture(3, velocitiesTexture);
+            temporalMaterial.addTexture(4, depthsTexture);
+            uniforms = temporalMaterial.getUniforms();
+            uniforms.add(new Vector2Uniform("projection", PROJECTION));
+            uniforms.add(new FloatUniform("tanHalfFOV", TAN_HALF_FOV));
+            uniforms.add(new FloatUniform("aspectRatio", ASPECT_RATIO));
+            uniforms.add(inverseViewMatrixUniform);
+            uniforms.add(temporalShadowChannelUniform);
+            uniforms.add(historyWeightUniform);
+            uniforms.add(new FloatUniform("depthTolerance", TEMPORAL_DEPTH_TOLERANCE));
+        }
+        // EFFECTS
+        attachEffects();
+    }
+
+    private static void attachEffects() {
+        // SSAO
+        ssaoMaterial.addTexture(2, ssaoEffect.getNoiseTexture());
+        ssaoEffect.addUniforms(ssaoMaterial.getUniforms());
+        // SHADOW MAPPING
+        shadowMaterial.addTexture(3, shadowMappingEffect.getNoiseTexture());
+        shadowMappingEffect.addUniforms(shadowMaterial.getUniforms());
+        // BLUR
+        blurEffect.addUniforms(blurMaterial.getUniforms());
+        // SSAO AND SHADOW
+        if (mergeOcclusionShadow) {
+            occlusionShadowMaterial.addTexture(3, ssaoEffect.getNoiseTexture());
+            occlusionShadowMaterial.addTexture(4, shadowMappingEffect.getNoiseTexture());
+            ssaoEffect.addUniforms(occlusionShadowMaterial.getUniforms(), "ssao");
+            shadowMappingEffect.addUniforms(occlusionShadowMaterial.getUniforms(), "shadow");
+            blurEffect.addUniforms(blurHorizontalMaterial.getUniforms());
+            blurEffect.addUniforms(blurVerticalMaterial.getUniforms());
+        }
     }
 
     private static Material createMaterial(String program) {
@@ -542,13 +975,21 @@ public class SandboxRenderer {
         modelFrameBuffer.attach(AttachmentPoint.COLOR0, colorsTexture);
         modelFrameBuffer.attach(AttachmentPoint.COLOR1, normalsTexture);
         modelFrameBuffer.attach(AttachmentPoint.COLOR2, vertexNormals);
-        modelFrameBuffer.attach(AttachmentPoint.COLOR3, materialsTexture);
-        modelFrameBuffer.attach(AttachmentPoint.COLOR4, velocitiesTexture);
+        if (packedGBuffer) {
+            modelFrameBuffer.attach(AttachmentPoint.COLOR3, velocitiesTexture);
+        } else {
+            modelFrameBuffer.attach(AttachmentPoint.COLOR3, materialsTexture);
+            modelFrameBuffer.attach(AttachmentPoint.COLOR4, velocitiesTexture);
+        }
         modelFrameBuffer.attach(AttachmentPoint.DEPTH, depthsTexture);
         // LIGHT MODEL
         lightModelFrameBuffer = context.newFrameBuffer();
         lightModelFrameBuffer.create();
         lightModelFrameBuffer.attach(AttachmentPoint.DEPTH, lightDepthsTexture);
+        // STATIC LIGHT MODEL
+        staticLightModelFrameBuffer = context.newFrameBuffer();
+        staticLightModelFrameBuffer.create();
+        staticLightModelFrameBuffer.attach(AttachmentPoint.DEPTH, staticLightDepthsTexture);
         // SSAO
         ssaoFrameBuffer = context.newFrameBuffer();
         ssaoFrameBuffer.create();
@@ -574,6 +1015,24 @@ public class SandboxRenderer {
         antiAliasingFrameBuffer = context.newFrameBuffer();
         antiAliasingFrameBuffer.create();
         antiAliasingFrameBuffer.attach(AttachmentPoint.COLOR0, auxRGBATexture);
+        // SSAO AND SHADOW
+        if (mergeOcclusionShadow) {
+            occlusionShadowFrameBuffer = context.newFrameBuffer();
+            occlusionShadowFrameBuffer.create();
+            occlusionShadowFrameBuffer.attach(AttachmentPoint.COLOR0, occlusionShadowTexture);
+            blurHorizontalFrameBuffer = context.newFrameBuffer();
+            blurHorizontalFrameBuffer.create();
+            blurHorizontalFrameBuffer.attach(AttachmentPoint.COLOR0, auxRGTexture);
+        }
+        // TEMPORAL ACCUMULATION
+        if (temporalHistoryTextures[0] != null) {
+            for (int i = 0; i < temporalFrameBuffers.length; i++) {
+                final FrameBuffer frameBuffer = context.newFrameBuffer();
+                frameBuffer.create();
+                frameBuffer.attach(AttachmentPoint.COLOR0, temporalHistoryTextures[i]);
+                temporalFrameBuffers[i] = frameBuffer;
+            }
+        }
     }
 
     private static void initVertexArrays() {
@@ -586,6 +1045,11 @@ public class SandboxRenderer {
         deferredStageScreenVertexArray = context.newVertexArray();
         deferredStageScreenVertexArray.create();
         deferredStageScreenVertexArray.setData(MeshGenerator.generatePlane(new Vector2f(2, 2)));
+        // DEBUG
+        debugVertexArray = context.newVertexArray();
+        debugVertexArray.create();
+        debugVertexArray.setDrawingMode(DrawingMode.LINES);
+        debugModel = new Model(debugVertexArray, debugMaterial);
     }
 
     public static void dispose() {
@@ -594,9 +1058,18 @@ public class SandboxRenderer {
         disposeTextures();
         disposeFrameBuffers();
         disposeVertexArrays();
+        disposeDepthReadback();
         disposeContext();
     }
 
+    private static void disposeDepthReadback() {
+        if (depthReadbackBuffer != 0) {
+            GL15.glDeleteBuffers(depthReadbackBuffer);
+            depthReadbackBuffer = 0;
+        }
+        depthReadbackPending = false;
+    }
+
     private static void disposeContext() {
         // CONTEXT
         context.destroy();
@@ -642,13 +1115,18 @@ public class SandboxRenderer {
         // VERTEX NORMALS
         vertexNormals.destroy();
         // MATERIALS
-        materialsTexture.destroy();
+        if (materialsTexture != null) {
+            materialsTexture.destroy();
+            materialsTexture = null;
+        }
         // VELOCITIES
         velocitiesTexture.destroy();
         // DEPTHS
         depthsTexture.destroy();
         // LIGHT DEPTHS
         lightDepthsTexture.destroy();
+        // STATIC LIGHT DEPTHS
+        staticLightDepthsTexture.destroy();
         // SSAO
         ssaoTexture.destroy();
         // SHADOW
@@ -657,6 +1135,31 @@ public class SandboxRenderer {
         auxRTexture.destroy();
         // AUX RGB
         auxRGBATexture.destroy();
+        // WHITE
+        whiteTexture.destroy();
+        // SSAO AND SHADOW, AUX RG
+        if (occlusionShadowTexture != null) {
+            occlusionShadowTexture.destroy();
+            auxRGTexture.destroy();
+            occlusionShadowTexture = null;
+            auxRGTexture = null;
+        }
+        // TILED LIGHTING
+        if (lightsTexture != null) {
+            lightsTexture.destroy();
+            lightTilesTexture.destroy();
+            lightIndicesTexture.destroy();
+            lightsTexture = null;
+            lightTilesTexture = null;
+            lightIndicesTexture = null;
+        }
+        // TEMPORAL HISTORY
+        for (int i = 0; i < temporalHistoryTextures.length; i++) {
+            if (temporalHistoryTextures[i] != null) {
+                temporalHistoryTextures[i].destroy();
+                temporalHistoryTextures[i] = null;
+            }
+        }
     }
 
     private static void disposeFrameBuffers() {
@@ -664,6 +1167,8 @@ public class SandboxRenderer {
         modelFrameBuffer.destroy();
         // SHADOW
         lightModelFrameBuffer.destroy();
+        // STATIC SHADOW
+        staticLightModelFrameBuffer.destroy();
         // SSAO
         ssaoFrameBuffer.destroy();
         // SHADOW
@@ -676,6 +1181,20 @@ public class SandboxRenderer {
         motionBlurFrameBuffer.destroy();
         // ANTI ALIASING
         antiAliasingFrameBuffer.destroy();
+        // SSAO AND SHADOW
+        if (occlusionShadowFrameBuffer != null) {
+            occlusionShadowFrameBuffer.destroy();
+            blurHorizontalFrameBuffer.destroy();
+            occlusionShadowFrameBuffer = null;
+            blurHorizontalFrameBuffer = null;
+        }
+        // TEMPORAL ACCUMULATION
+        for (int i = 0; i < temporalFrameBuffers.length; i++) {
+            if (temporalFrameBuffers[i] != null) {
+                temporalFrameBuffers[i].destroy();
+                temporalFrameBuffers[i] = null;
+            }
+        }
     }
 
     private static void disposeVertexArrays() {
@@ -683,6 +1202,14 @@ public class SandboxRenderer {
         unitCubeWireVertexArray.destroy();
         // DEFERRED STAGE SCREEN
         deferredStageScreenVertexArray.destroy();
+        // DEBUG
+        debugVertexArray.destroy();
+        // SHARED SHAPES
+        for (VertexArray vertexArray : sharedVertexArrays.values()) {
+            vertexArray.destroy();
+        }
+        sharedVertexArrays.clear();
+        levelOfDetailChains.clear();
     }
 
     public static void setGLVersion(GLVersion version) {
@@ -702,10 +1229,226 @@ public class SandboxRenderer {
         }
     }
 
+    /**
+     * Sets the service the assets are loaded and the screenshots written with. Must be set before the init.
+     *
+     * @param service The asset service
+     */
+    public static void setAssetService(AssetService service) {
+        assets = service;
+    }
+
     public static void setCullBackFaces(boolean cull) {
         cullBackFaces = cull;
     }
 
+    public static boolean isEffectEnabled(PostEffect effect) {
+        return enabledEffects.contains(effect);
+    }
+
+    public static void setEffectEnabled(PostEffect effect, boolean enabled) {
+        if (enabled == enabledEffects.contains(effect)) {
+            return;
+        }
+        if (enabled) {
+            enabledEffects.add(effect);
+        } else {
+            enabledEffects.remove(effect);
+        }
+        if (pipeline != null) {
+            initPipeline();
+        }
+    }
+
+    public static QualityPreset getQuality() {
+        return quality;
+    }
+
+    public static void setQuality(QualityPreset preset) {
+        final QualityPreset previous = quality;
+        quality = preset;
+        if (pipeline == null) {
+            return;
+        }
+        disposeEffects();
+        initEffects();
+        attachEffects();
+        if (preset.getShadowMapSize() != previous.getShadowMapSize()) {
+            lightDepthsTexture.setImageData(null, preset.getShadowMapSize(), preset.getShadowMapSize());
+            staticLightDepthsTexture.setImageData(null, preset.getShadowMapSize(), preset.getShadowMapSize());
+        }
+        initPipeline();
+    }
+
+    /**
+     * Enables or disables the coarser meshes for the round shapes that are small on screen.
+     *
+     * @param use Whether or not to use the level of detail chains
+     */
+    public static void setLevelOfDetail(boolean use) {
+        useLevelOfDetail = use;
+        if (!use) {
+            levelOfDetail.reset(modelRenderList);
+        }
+        staticShadowsDirty = true;
+        if (pipeline != null) {
+            initPipeline();
+        }
+    }
+
+    /**
+     * Enables or disables skipping the models hidden behind the depths of the previous frame. Needs OpenGL 2.1 for the pixel buffers.
+     *
+     * @param cull Whether or not to cull the occluded models
+     */
+    public static void setOcclusionCulling(boolean cull) {
+        occlusionCulling = cull;
+        if (!cull) {
+            disposeDepthReadback();
+            occludedModelCount = 0;
+        }
+        if (pipeline != null) {
+            initPipeline();
+        }
+    }
+
+    /**
+     * Enables or disables the accumulation of the SSAO and shadows over the frames, reprojected through the velocities and rejected where the surface was uncovered. Halves the kernel sizes of the
+     * quality presets, since the samples of several frames are averaged. Needs GL32.
+     *
+     * @param accumulate Whether or not to accumulate the SSAO and shadows
+     */
+    public static void setTemporalAccumulation(boolean accumulate) {
+        if (pipeline != null && accumulate && context.getGLVersion().getGLSLFull() < 150) {
+            System.out.println("Temporal accumulation needs GL32, it will stay disabled");
+            return;
+        }
+        temporalAccumulation = accumulate;
+        if (pipeline == null) {
+            return;
+        }
+        disposeEffects();
+        initEffects();
+        attachEffects();
+        initPipeline();
+    }
+
+    public static boolean isTemporalAccumulation() {
+        return temporalAccumulation;
+    }
+
+    /**
+     * Sets the timer of the pipeline stages, or null to stop timing them. The pipeline is rebuilt with the timing actions, which clears the stages of the timer.
+     *
+     * @param timer The stage timer
+     */
+    public static void setStageTimer(StageTimer timer) {
+        stageTimer = timer;
+        if (pipeline != null) {
+            initPipeline();
+        }
+    }
+
+    public static int getOccludedModelCount() {
+        return occludedModelCount;
+    }
+
+    /**
+     * Enables or disables the point lights, binned to screen tiles so each pixel only loops over the lights touching its tile. Needs GL32.
+     *
+     * @param tiled Whether or not to light with the point lights
+     */
+    public static void setTiledLighting(boolean tiled) {
+        tiledLighting = tiled;
+        if (pipeline != null) {
+            initPipeline();
+        }
+    }
+
+    public static boolean isTiledLighting() {
+        return tiledLighting;
+    }
+
+    /**
+     * Adds a point light for the tiled lighting. Lights past {@link LightBinner#MAX_LIGHTS} are ignored.
+     *
+     * @param position The position
+     * @param radius The distance past which the light has no effect
+     * @param color The color, which can be brighter than one
+     */
+    public static void addPointLight(Vector3f position, float radius, Vector3f color) {
+        lightBinner.addLight(position, radius, color);
+    }
+
+    public static void clearPointLights() {
+        lightBinner.clear();
+    }
+
+    public static int getPointLightCount() {
+        return lightBinner.getLightCount();
+    }
+
+    public static int getVisiblePointLightCount() {
+        return lightBinner.getVisibleLightCount();
+    }
+
+    /**
+     * Sets whether to use the packed G-buffer layout, with the normals octahedral encoded in two channels and the material in the alpha of the colors. Only takes effect before {@link #init()},
+     * and only with GL32.
+     *
+     * @param packed Whether or not to pack the G-buffer
+     */
+    public static void setPackedGBuffer(boolean packed) {
+        packedGBuffer = packed;
+    }
+
+    /**
+     * Sets whether to compute the SSAO and shadows in a single pass when both are enabled, with a separable blur. Only takes effect before {@link #init()}, and only with GL32.
+     *
+     * @param merge Whether or not to merge the SSAO and shadow passes
+     */
+    public static void setMergeOcclusionShadow(boolean merge) {
+        mergeOcclusionShadow = merge;
+    }
+
+    /**
+     * Returns the number of frame buffers bound while rendering the last frame, one per render target round trip.
+     *
+     * @return The frame buffer bind count
+     */
+    public static int getFrameBufferBinds() {
+        return frameBufferBinds;
+    }
+
+    public static void setFitShadowFrustum(boolean fit) {
+        fitShadowFrustum = fit;
+        if (!fit) {
+            setLightFrustum(new Vector3f(LIGHT_FIELD_OF_VIEW, LIGHT_NEAR_PLANE, LIGHT_FAR_PLANE));
+        }
+        if (pipeline != null) {
+            initPipeline();
+        }
+    }
+
+    public static void setCacheStaticShadows(boolean cache) {
+        cacheStaticShadows = cache;
+        if (pipeline != null) {
+            initPipeline();
+        }
+    }
+
+    /**
+     * Marks a model as static or not. Static models are rendered to a cached shadow map, which is only updated when the light or the static models change.
+     *
+     * @param model The model
+     * @param isStatic Whether or not the model is static
+     */
+    public static void setModelStatic(Model model, boolean isStatic) {
+        if (isStatic ? staticModels.add(model) : staticModels.remove(model)) {
+            staticShadowsDirty = true;
+        }
+    }
+
     public static void setBackgroundColor(Vector4f color) {
         backgroundColor = color;
     }
@@ -749,106 +1492,226 @@ public class SandboxRenderer {
     public static void setLightPosition(Vector3f position) {
         lightPositionUniform.set(position);
         lightCamera.setPosition(position);
+        staticShadowsDirty = true;
     }
 
     public static void setLightDirection(Vector3f direction) {
         direction = direction.normalize();
         spotDirectionUniform.set(direction);
         lightCamera.setRotation(Quaternionf.fromRotationTo(Vector3f.FORWARD.negate(), direction));
+        staticShadowsDirty = true;
     }
 
-    public static Model addAABB(Vector3f position, Vector3f size) {
+    public static Model addAABB(Vector3f position, Vector3f size, Object group) {
         final Model model = new Model(unitCubeWireVertexArray, wireframeMaterial);
         model.setPosition(position);
         model.setScale(size);
         model.getUniforms().add(new Vector4Uniform("modelColor", aabbModelColor));
-        addModel(model);
+        addModel(model, (float) Math.sqrt(3) / 2, group);
         return model;
     }
 
-    public static Model addBox(Vector3f position, Quaternionf orientation, Vector3f size) {
-        final VertexArray vertexArray = context.newVertexArray();
-        vertexArray.create();
-        final TFloatList positions = new TFloatArrayList();
-        final TFloatList normals = new TFloatArrayList();
-        final TFloatList textureCoords = new TFloatArrayList();
-        final TIntList indices = new TIntArrayList();
-        MeshGenerator.generateCuboid(positions, normals, textureCoords, indices, size.mul(2));
-        vertexArray.setData(MeshGenerator.buildMesh(new Vector4i(3, 3, 2, 4), positions, normals, textureCoords, indices));
+    public static Model addBox(Vector3f position, Quaternionf orientation, Vector3f size, Object group) {
+        final String key = "box " + size;
+        VertexArray vertexArray = sharedVertexArrays.get(key);
+        if (vertexArray == null) {
+            final TFloatList positions = new TFloatArrayList();
+            final TFloatList normals = new TFloatArrayList();
+            final TFloatList textureCoords = new TFloatArrayList();
+            final TIntList indices = new TIntArrayList();
+            MeshGenerator.generateCuboid(positions, normals, textureCoords, indices, size.mul(2));
+            vertexArray = createSharedVertexArray(key, MeshGenerator.buildMesh(new Vector4i(3, 3, 2, 4), positions, normals, textureCoords, indices));
+        }
         final Model model = new Model(vertexArray, woodMaterial);
         model.setPosition(position);
         model.setRotation(orientation);
-        addModel(model);
+        addModel(model, size.length(), group);
         return model;
     }
 
-    public static Model addCone(Vector3f position, Quaternionf orientation, float radius, float height) {
-        final VertexArray vertexArray = context.newVertexArray();
-        vertexArray.create();
-        vertexArray.setData(MeshGenerator.generateCone(radius, height));
-        final Model model = new Model(vertexArray, solidMaterial);
+    public static Model addCone(Vector3f position, Quaternionf orientation, float radius, float height, Object group) {
+        final String key = "cone " + radius + " " + height;
+        VertexArray[] levels = levelOfDetailChains.get(key);
+        if (levels == null) {
+            levels = new VertexArray[LevelOfDetail.LEVEL_COUNT];
+            levels[0] = createSharedVertexArray(key, MeshGenerator.generateCone(radius, height));
+            for (int i = 1; i < levels.length; i++) {
+                levels[i] = createSharedVertexArray(key + " " + i, LevelOfDetail.generateCone(radius, height, i));
+            }
+            levelOfDetailChains.put(key, levels);
+        }
+        final Model model = new Model(levels[0], solidMaterial);
         model.setPosition(position);
         model.setRotation(orientation);
         model.getUniforms().add(new Vector4Uniform("modelColor", coneModelColor));
-        addModel(model);
+        addModel(model, (float) Math.sqrt(radius * radius + height * height), group);
+        levelOfDetail.add(model, levels, (float) Math.sqrt(radius * radius + height * height));
         return model;
     }
 
-    public static Model addCylinder(Vector3f position, Quaternionf orientation, float radius, float height) {
-        final VertexArray vertexArray = context.newVertexArray();
-        vertexArray.create();
-        vertexArray.setData(MeshGenerator.generateCylinder(radius, height));
-        final Model model = new Model(vertexArray, solidMaterial);
+    public static Model addCylinder(Vector3f position, Quaternionf orientation, float radius, float height, Object group) {
+        final String key = "cylinder " + radius + " " + height;
+        VertexArray[] levels = levelOfDetailChains.get(key);
+        if (levels == null) {
+            levels = new VertexArray[LevelOfDetail.LEVEL_COUNT];
+            levels[0] = createSharedVertexArray(key, MeshGenerator.generateCylinder(radius, height));
+            for (int i = 1; i < levels.length; i++) {
+                levels[i] = createSharedVertexArray(key + " " + i, LevelOfDetail.generateCylinder(radius, height, i));
+            }
+            levelOfDetailChains.put(key, levels);
+        }
+        final Model model = new Model(levels[0], solidMaterial);
         model.setPosition(position);
         model.setRotation(orientation);
         model.getUniforms().add(new Vector4Uniform("modelColor", cylinderModelColor));
-        addModel(model);
+        addModel(model, (float) Math.sqrt(radius * radius + height * height), group);
+        levelOfDetail.add(model, levels, (float) Math.sqrt(radius * radius + height * height));
         return model;
     }
 
-    public static Model addSphere(Vector3f position, Quaternionf orientation, float radius) {
-        final VertexArray vertexArray = context.newVertexArray();
-        vertexArray.create();
-        vertexArray.setData(MeshGenerator.generateSphere(radius));
-        final Model model = new Model(vertexArray, solidMaterial);
+    public static Model addSphere(Vector3f position, Quaternionf orientation, float radius, Object group) {
+        final String key = "sphere " + radius;
+        VertexArray[] levels = levelOfDetailChains.get(key);
+        if (levels == null) {
+            levels = new VertexArray[LevelOfDetail.LEVEL_COUNT];
+            levels[0] = createSharedVertexArray(key, MeshGenerator.generateSphere(radius));
+            for (int i = 1; i < levels.length; i++) {
+                levels[i] = createSharedVertexArray(key + " " + i, LevelOfDetail.generateSphere(radius, i));
+            }
+            levelOfDetailChains.put(key, levels);
+        }
+        final Model model = new Model(levels[0], solidMaterial);
         model.setPosition(position);
         model.setRotation(orientation);
         model.getUniforms().add(new Vector4Uniform("modelColor", sphereModelColor));
-        addModel(model);
+        addModel(model, radius, group);
+        levelOfDetail.add(model, levels, radius);
         return model;
     }
 
-    public static Model addCapsule(Vector3f position, Quaternionf orientation, float radius, float height) {
-        final VertexArray vertexArray = context.newVertexArray();
-        vertexArray.create();
-        vertexArray.setData(MeshGenerator.generateCapsule(radius, height));
-        final Model model = new Model(vertexArray, solidMaterial);
+    public static Model addCapsule(Vector3f position, Quaternionf orientation, float radius, float height, Object group) {
+        final String key = "capsule " + radius + " " + height;
+        VertexArray[] levels = levelOfDetailChains.get(key);
+        if (levels == null) {
+            levels = new VertexArray[LevelOfDetail.LEVEL_COUNT];
+            levels[0] = createSharedVertexArray(key, MeshGenerator.generateCapsule(radius, height));
+            for (int i = 1; i < levels.length; i++) {
+                levels[i] = createSharedVertexArray(key + " " + i, LevelOfDetail.generateCapsule(radius, height, i));
+            }
+            levelOfDetailChains.put(key, levels);
+        }
+        final Model model = new Model(levels[0], solidMaterial);
         model.setPosition(position);
         model.setRotation(orientation);
         model.getUniforms().add(new Vector4Uniform("modelColor", capsuleModelColor));
-        addModel(model);
+        addModel(model, radius + height, group);
+        levelOfDetail.add(model, levels, radius + height);
         return model;
     }
 
-    public static Model addMeshShape(Vector3f position, Quaternionf orientation, TFloatList positions, TIntList indices) {
-        final VertexArray vertexArray = context.newVertexArray();
-        vertexArray.create();
-        vertexArray.setData(MeshGenerator.buildMesh(new Vector4i(3, 3, 0, 0), positions, null, null, indices));
+    public static Model addMeshShape(Vector3f position, Quaternionf orientation, String name, TFloatList positions, TIntList indices, Object group) {
+        final String key = "mesh " + name;
+        VertexArray vertexArray = sharedVertexArrays.get(key);
+        if (vertexArray == null) {
+            vertexArray = createSharedVertexArray(key, MeshGenerator.buildMesh(new Vector4i(3, 3, 0, 0), positions, null, null, indices));
+        }
         final Model model = new Model(vertexArray, solidMaterial);
         model.setPosition(position);
         model.setRotation(orientation);
         model.getUniforms().add(new Vector4Uniform("modelColor", meshShapeModelColor));
-        addModel(model);
+        addModel(model, getBoundingRadius(positions), group);
         return model;
     }
 
+    private static VertexArray createSharedVertexArray(String key, VertexData data) {
+        final VertexArray vertexArray = context.newVertexArray();
+        vertexArray.create();
+        vertexArray.setData(data);
+        sharedVertexArrays.put(key, vertexArray);
+        return vertexArray;
+    }
+
+    /**
+     * Makes room for the given number of additional models, to avoid growing the render list repeatedly when adding many.
+     *
+     * @param count The number of models about to be added
+     */
+    public static void ensureModelCapacity(int count) {
+        modelRenderList.ensureCapacity(count);
+    }
+
+    /**
+     * Adds a model to render, with an unknown size. It will never be culled.
+     *
+     * @param model The model to add
+     */
     public static void addModel(Model model) {
+        addModel(model, Float.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Adds a model to render.
+     *
+     * @param model The model to add
+     * @param boundingRadius The radius of a sphere around the model origin enclosing the unscaled model
+     */
+    public static void addModel(Model model, float boundingRadius) {
+        addModel(model, boundingRadius, null);
+    }
+
+    /**
+     * Adds a model to render in a group, whose models are shown or hidden together by {@link #setModelGroupVisible(Object, boolean)}.
+     *
+     * @param model The model to add
+     * @param boundingRadius The radius of a sphere around the model origin enclosing the unscaled model
+     * @param group The group of the model, compared by identity, or null for none
+     */
+    public static void addModel(Model model, float boundingRadius, Object group) {
         model.getUniforms().add(new Matrix4Uniform("previousModelMatrix", model.getMatrix()));
-        modelRenderList.add(model);
+        modelRenderList.addModel(model, group);
+        modelBoundingRadii.put(model, boundingRadius);
+    }
+
+    /**
+     * Shows or hides all the models of a group at once, without removing them.
+     *
+     * @param group The group, compared by identity
+     * @param visible Whether or not to render the models of the group
+     */
+    public static void setModelGroupVisible(Object group, boolean visible) {
+        modelRenderList.setGroupVisible(group, visible);
+        // The cached shadows might include models of the group
+        staticShadowsDirty = true;
     }
 
     public static void removeModel(Model model) {
-        modelRenderList.remove(model);
+        modelRenderList.removeModel(model);
+        levelOfDetail.remove(model);
+        modelBoundingRadii.remove(model);
+        movedModels.remove(model);
+        setModelStatic(model, false);
+    }
+
+    /**
+     * Marks a model as moved during this frame, so that its previous model matrix is updated after rendering. Models that aren't marked are assumed to be still.
+     *
+     * @param model The model that moved
+     */
+    public static void markModelMoved(Model model) {
+        movedModels.add(model);
+    }
+
+    private static float getBoundingRadius(Model model) {
+        return modelBoundingRadii.get(model) * model.getScale().max();
+    }
+
+    private static float getBoundingRadius(TFloatList positions) {
+        float radiusSquared = 0;
+        for (int i = 0; i < positions.size(); i += 3) {
+            final float x = positions.get(i), y = positions.get(i + 1), z = positions.get(i + 2);
+            radiusSquared = Math.max(radiusSquared, x * x + y * y + z * z);
+        }
+        return (float) Math.sqrt(radiusSquared);
     }
 
     public static void addDefaultObjects() {
@@ -882,7 +1745,7 @@ public class SandboxRenderer {
             System.out.println(e);
             return;
         }
-        final StringModel sandboxModel = new StringModel(context, programs.get("font"), "SandboxPweryCusticRF0123456789,&: ", ubuntu.deriveFont(Font.PLAIN, 16), AntiAliasing.ON, WINDOW_SIZE.getX());
+        final StringModel sandboxModel = new StringModel(context, programs.get("font"), "SandboxPweryCusticRF0123456789,&: hml.g", ubuntu.deriveFont(Font.PLAIN, 16), AntiAliasing.ON, WINDOW_SIZE.getX());
         final float aspect = 1 / ASPECT_RATIO;
         sandboxModel.setPosition(new Vector3f(0.005, aspect / 2 + 0.315, -0.1));
         final String white = "#ffffffff", brown = "#ffC19953", green = "#ff00ff00", cyan = "#ff4fB5ff";
@@ -898,24 +1761,53 @@ public class SandboxRenderer {
     private static void addCreeper() {
         final VertexArray vertexArray = context.newVertexArray();
         vertexArray.create();
-        vertexArray.setData(loadOBJ(Sandbox.class.getResourceAsStream("/models/creeper.obj")));
+        final TFloatList positions = new TFloatArrayList();
+        vertexArray.setData(loadOBJ(Sandbox.class.getResourceAsStream("/models/creeper.obj"), positions));
         final Model mobModel = new Model(vertexArray, creeperMaterial);
         mobModel.setPosition(new Vector3f(10, 10, 0));
         mobModel.setRotation(Quaternionf.fromAngleDegAxis(-90, 0, 1, 0));
-        addModel(mobModel);
+        final float radius = getBoundingRadius(positions);
+        addModel(mobModel, radius);
+        setModelStatic(mobModel, true);
         // Add a second mob, instanced from the first one
         movingMobModel = mobModel.getInstance();
-        addModel(movingMobModel);
+        addModel(movingMobModel, radius);
     }
 
     private static void addSuzanne() {
         final VertexArray vertexArray = context.newVertexArray();
         vertexArray.create();
-        vertexArray.setData(loadCollada(Sandbox.class.getResourceAsStream("/models/suzanne.dae")));
+        final TFloatList positions = new TFloatArrayList();
+        vertexArray.setData(loadCollada(Sandbox.class.getResourceAsStream("/models/suzanne.dae"), positions));
         final Model model = new Model(vertexArray, solidMaterial);
         model.setPosition(new Vector3f(0, 10, -10));
         model.getUniforms().add(new Vector4Uniform("modelColor", sphereModelColor));
-        addModel(model);
+        addModel(model, getBoundingRadius(positions));
+        setModelStatic(model, true);
+    }
+
+    /**
+     * Sets the profiler whose averages are shown under the FPS. Expects the channels of the Sandbox.PROFILE_* indices.
+     *
+     * @param profiler The profiler, or null to show only the FPS
+     */
+    public static void setProfiler(Profiler profiler) {
+        SandboxRenderer.profiler = profiler;
+        profilerText = "";
+        profilerTextAge = PROFILER_TEXT_INTERVAL;
+    }
+
+    /**
+     * Returns the debug draw whose lines are drawn over the next frame. It's cleared after each frame.
+     *
+     * @return The debug draw
+     */
+    public static DebugDraw getDebugDraw() {
+        return debugDraw;
+    }
+
+    public static int getFPS() {
+        return fpsMonitor.getFPS();
     }
 
     public static void startFPSMonitor() {
@@ -927,13 +1819,35 @@ public class SandboxRenderer {
         inverseViewMatrixUniform.set(modelCamera.getViewMatrix().invert());
         lightViewMatrixUniform.set(lightCamera.getViewMatrix());
         lightProjectionMatrixUniform.set(lightCamera.getProjectionMatrix());
-        blurStrengthUniform.set((float) fpsMonitor.getFPS() / Sandbox.TARGET_FPS);
+        // Frozen frames are a fixed step apart, the strength can't depend on the measured frame rate
+        blurStrengthUniform.set(animationFrozen ? 1 : (float) fpsMonitor.getFPS() / Sandbox.TARGET_FPS);
+        if (temporalAccumulation) {
+            // A new rotation of the sample kernels each frame, so the history averages different samples
+            noiseOffsetUniform.set(new Vector2f(noiseOffsetRandom.nextFloat(), noiseOffsetRandom.nextFloat()));
+        }
         // ANIMATE MOVING MOB
-        final float time = (System.currentTimeMillis() % 1000) / 1000f;
+        final float time = animationFrozen ? 0 : (System.currentTimeMillis() % 1000) / 1000f;
         movingMobModel.setPosition(new Vector3f(2 * TrigMath.sin(2 * (float) TrigMath.PI * time), 0, 0).add(-10, 10, 0));
         movingMobModel.setRotation(Quaternionf.fromAngleDegAxis(time * 360, 1, 1, 1));
+        markModelMoved(movingMobModel);
+        // CULL THE OCCLUDED MODELS
+        if (occlusionCulling) {
+            updateVisibleModels();
+        }
+        // FIND THE SHADOW CASTERS
+        if (enabledEffects.contains(PostEffect.SHADOWS)) {
+            updateLightModelRenderLists();
+        }
+        // STREAM THE DEBUG LINES
+        debugRenderList.clear();
+        if (!debugDraw.isEmpty()) {
+            debugDraw.upload(debugVertexArray);
+            debugRenderList.add(debugModel);
+        }
         // RENDER
+        frameBufferBinds = pipelineFrameBufferBinds;
         pipeline.run(context);
+        debugDraw.clear();
         // UPDATE PREVIOUS FRAME UNIFORMS
         setPreviousModelMatrices();
         previousViewMatrixUniform.set(modelCamera.getViewMatrix());
@@ -942,37 +1856,233 @@ public class SandboxRenderer {
         updateFPSMonitor();
     }
 
-    private static void setPreviousModelMatrices() {
+    private static void updateVisibleModels() {
+        if (depthReadbackPending) {
+            // The read was queued during the last frame, so it should be done by now and the mapping won't stall
+            GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, depthReadbackBuffer);
+            final ByteBuffer depths = GL15.glMapBuffer(GL21.GL_PIXEL_PACK_BUFFER, GL15.GL_READ_ONLY, null);
+            if (depths != null) {
+                hiZBuffer.update(depths.order(ByteOrder.nativeOrder()).asFloatBuffer(), WINDOW_SIZE.getX(), WINDOW_SIZE.getY(), depthReadbackViewProjection);
+                GL15.glUnmapBuffer(GL21.GL_PIXEL_PACK_BUFFER);
+            }
+            GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, 0);
+            depthReadbackPending = false;
+        }
+        visibleModelRenderList.clear();
+        occludedModelCount = 0;
+        // Keeps the order of the buckets
         for (Model model : modelRenderList) {
+            final float radius = getBoundingRadius(model);
+            if (!Float.isInfinite(radius) && hiZBuffer.isOccluded(model.getPosition(), radius)) {
+                occludedModelCount++;
+                continue;
+            }
+            visibleModelRenderList.add(model);
+        }
+    }
+
+    private static void updateLightModelRenderLists() {
+        staticLightModelRenderList.clear();
+        dynamicLightModelRenderList.clear();
+        if (fitShadowFrustum) {
+            fitLightFrustum();
+            return;
+        }
+        for (Model model : modelRenderList) {
+            addLightModel(model);
+        }
+    }
+
+    private static void addLightModel(Model model) {
+        if (staticModels.contains(model)) {
+            staticLightModelRenderList.add(model);
+        } else {
+            dynamicLightModelRenderList.add(model);
+        }
+    }
+
+    private static void fitLightFrustum() {
+        modelFrustum.update(modelCamera.getProjectionMatrix().mul(modelCamera.getViewMatrix()));
+        final Matrix4f lightView = lightCamera.getViewMatrix();
+        final float maxTan = (float) Math.tan(Sandbox.SPOT_CUTOFF);
+        // Find the extent of the visible receivers inside the spot light cone, in light view space
+        float receiverTan = 0;
+        float far = 0;
+        for (Model model : modelRenderList) {
+            final float radius = getBoundingRadius(model);
+            final Vector3f position = model.getPosition();
+            if (Float.isInfinite(radius) || !modelFrustum.intersectsSphere(position, radius)) {
+                continue;
+            }
+            final float depth = -transformZ(lightView, position);
+            final float lateral = (float) Math.hypot(transformX(lightView, position), transformY(lightView, position));
+            if (depth + radius <= LIGHT_NEAR_PLANE || lateral - radius > maxTan * (depth + radius)) {
+                continue;
+            }
+            final float tan = depth - radius > LIGHT_NEAR_PLANE ? (lateral + radius) / (depth - radius) : maxTan;
+            receiverTan = Math.max(receiverTan, tan);
+            far = Math.max(far, depth + radius);
+        }
+        if (far <= 0) {
+            return;
+        }
+        receiverTan = Math.min(receiverTan, maxTan);
+        // Find the nearest caster inside the cone and in front of the farthest receiver
+        float near = far;
+        for (Model model : modelRenderList) {
+            final float radius = getBoundingRadius(model);
+            if (Float.isInfinite(radius)) {
+                continue;
+            }
+            final Vector3f position = model.getPosition();
+            final float depth = -transformZ(lightView, position);
+            final float lateral = (float) Math.hypot(transformX(lightView, position), transformY(lightView, position));
+            if (depth + radius <= LIGHT_NEAR_PLANE || depth - radius >= far || lateral - radius > receiverTan * (depth + radius)) {
+                continue;
+            }
+            near = Math.min(near, depth - radius);
+        }
+        // Snap the frustum to coarse steps so that it doesn't change every frame
+        final float fieldOfView = Math.min((float) Math.ceil(2 * Math.toDegrees(Math.atan(receiverTan))), LIGHT_FIELD_OF_VIEW);
+        near = Math.max((float) Math.floor(near * 2) / 2, LIGHT_NEAR_PLANE);
+        far = Math.max((float) Math.ceil(far / 4) * 4, near + 4);
+        setLightFrustum(new Vector3f(fieldOfView, near, far));
+        // Only render the casters inside the snapped frustum, the one keying the static shadow cache, so the cached casters match it until it changes
+        final float snappedTan = (float) Math.tan(Math.toRadians(fieldOfView / 2));
+        for (Model model : modelRenderList) {
+            final float radius = getBoundingRadius(model);
+            if (Float.isInfinite(radius)) {
+                addLightModel(model);
+                continue;
+            }
+            final Vector3f position = model.getPosition();
+            final float depth = -transformZ(lightView, position);
+            final float lateral = (float) Math.hypot(transformX(lightView, position), transformY(lightView, position));
+            if (depth + radius <= LIGHT_NEAR_PLANE || depth - radius >= far || lateral - radius > snappedTan * (depth + radius)) {
+                continue;
+            }
+            addLightModel(model);
+        }
+    }
+
+    private static void setLightFrustum(Vector3f frustum) {
+        if (frustum.equals(lightFrustum)) {
+            return;
+        }
+        lightFrustum = frustum;
+        lightCamera.setProjection(Matrix4f.createPerspective(frustum.getX(), 1, frustum.getY(), frustum.getZ()));
+        staticShadowsDirty = true;
+    }
+
+    private static float transformX(Matrix4f m, Vector3f v) {
+        return m.get(0, 0) * v.getX() + m.get(0, 1) * v.getY() + m.get(0, 2) * v.getZ() + m.get(0, 3);
+    }
+
+    private static float transformY(Matrix4f m, Vector3f v) {
+        return m.get(1, 0) * v.getX() + m.get(1, 1) * v.getY() + m.get(1, 2) * v.getZ() + m.get(1, 3);
+    }
+
+    private static float transformZ(Matrix4f m, Vector3f v) {
+        return m.get(2, 0) * v.getX() + m.get(2, 1) * v.getY() + m.get(2, 2) * v.getZ() + m.get(2, 3);
+    }
+
+    private static void setPreviousModelMatrices() {
+        for (Model model : movedModels) {
             model.getUniforms().<Matrix4Uniform>get("previousModelMatrix").set(model.getMatrix());
         }
+        movedModels.clear();
     }
 
     private static void updateFPSMonitor() {
         fpsMonitor.update();
-        fpsMonitorModel.setString("FPS: " + fpsMonitor.getFPS());
+        // Only reformat the profiler averages every few frames
+        if (profiler != null && ++profilerTextAge >= PROFILER_TEXT_INTERVAL) {
+            profilerTextAge = 0;
+            profilerText = String.format("\nPhysics: %.2fms (collision: %.2fms, dynamics: %.2fms), Sync: %.2fms, Render: %.2fms\nPairs: %.0f, Contacts: %.0f, Render targets: %d",
+                    profiler.getAverage(Sandbox.PROFILE_PHYSICS) / 1e6,
+                    profiler.getAverage(Sandbox.PROFILE_COLLISION) / 1e6,
+                    profiler.getAverage(Sandbox.PROFILE_DYNAMICS) / 1e6,
+                    profiler.getAverage(Sandbox.PROFILE_SYNC) / 1e6,
+                    profiler.getAverage(Sandbox.PROFILE_RENDER) / 1e6,
+                    profiler.getAverage(Sandbox.PROFILE_PAIRS),
+                    profiler.getAverage(Sandbox.PROFILE_CONTACTS), frameBufferBinds);
+        }
+        fpsMonitorModel.setString("FPS: " + fpsMonitor.getFPS() + profilerText);
     }
 
-    private static VertexData loadOBJ(InputStream in) {
-        final TFloatList positions = new TFloatArrayList();
+    private static VertexData loadOBJ(InputStream in, TFloatList positions) {
         final TFloatList normals = new TFloatArrayList();
         final TFloatList textureCoords = new TFloatArrayList();
         final TIntList indices = new TIntArrayList();
         return MeshGenerator.buildMesh(ObjFileLoader.load(in, positions, normals, textureCoords, indices).toVector4(0), positions, normals, textureCoords, indices);
     }
 
-    private static VertexData loadCollada(InputStream in) {
-        final TFloatList positions = new TFloatArrayList();
+    private static VertexData loadCollada(InputStream in, TFloatList positions) {
         final TFloatList normals = new TFloatArrayList();
         final TFloatList textureCoords = new TFloatArrayList();
         final TIntList indices = new TIntArrayList();
         return MeshGenerator.buildMesh(ColladaFileLoader.load(in, positions, normals, textureCoords, indices).toVector4(0), positions, normals, textureCoords, indices);
     }
 
+    /**
+     * Reads the frame and queues the screenshot. The image is converted and written off the context thread.
+     */
     public static void saveScreenshot() {
         final ByteBuffer buffer = context.readFrame(new Rectangle(Vector2i.ZERO, WINDOW_SIZE), InternalFormat.RGB8);
         final int width = context.getWindowWidth();
         final int height = context.getWindowHeight();
+        final File file = new File("screenshots" + File.separator + SCREENSHOT_DATE_FORMAT.format(Calendar.getInstance().getTime()) + ".png");
+        final Future<File> written = assets.submit(new Callable<File>() {
+            @Override
+            public File call() throws IOException {
+                ImageIO.write(toImage(buffer, width, height), "PNG", file);
+                return file;
+            }
+        });
+        assets.upload(written, new AssetService.Upload<File>() {
+            @Override
+            public void upload(File saved) {
+                System.out.println("Saved screenshot: " + saved);
+            }
+        });
+    }
+
+    /**
+     * Reads back the render targets of the last frame: the final colors, the G-buffer normals, and the SSAO and shadows as read by the lighting, when enabled. When the SSAO and shadows share a target, it's read once. Missing channels read as 0.
+     *
+     * @return The images by target name, in pipeline order
+     */
+    public static Map<String, BufferedImage> readRenderTargets() {
+        final Map<String, BufferedImage> images = new LinkedHashMap<>();
+        images.put("Normals", readTexture(normalsTexture));
+        if (occlusionTarget != null && occlusionTarget == shadowTarget) {
+            // Merged or accumulated, both are channels of the same target
+            images.put("OcclusionShadows", readTexture(occlusionTarget));
+        } else {
+            if (occlusionTarget != null) {
+                images.put("Occlusion", readTexture(occlusionTarget));
+            }
+            if (shadowTarget != null) {
+                images.put("Shadows", readTexture(shadowTarget));
+            }
+        }
+        images.put("Final", readTexture(finalTarget));
+        return images;
+    }
+
+    private static BufferedImage readTexture(Texture texture) {
+        final int width = WINDOW_SIZE.getX();
+        final int height = WINDOW_SIZE.getY();
+        final ByteBuffer buffer = CausticUtil.createByteBuffer(width * height * 3);
+        texture.bind(0);
+        GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 1);
+        GL11.glGetTexImage(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGB, GL11.GL_UNSIGNED_BYTE, buffer);
+        texture.unbind();
+        return toImage(buffer, width, height);
+    }
+
+    private static BufferedImage toImage(ByteBuffer buffer, int width, int height) {
+        // From RGB rows starting at the bottom to BGR rows starting at the top
         final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
         final byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
         for (int x = 0; x < width; x++) {
@@ -984,10 +2094,106 @@ public class SandboxRenderer {
                 data[destIndex] = buffer.get(srcIndex + 2);
             }
         }
-        try {
-            ImageIO.write(image, "PNG", new File("screenshots" + File.separator + SCREENSHOT_DATE_FORMAT.format(Calendar.getInstance().getTime()) + ".png"));
-        } catch (IOException e) {
-            e.printStackTrace();
+        return image;
+    }
+
+    /**
+     * Freezes the animated models at their starting pose and the motion blur strength at that of the target frame rate, so the frames only depend on the scene and camera.
+     *
+     * @param frozen Whether or not to freeze the animations
+     */
+    public static void setAnimationFrozen(boolean frozen) {
+        animationFrozen = frozen;
+    }
+
+    private static class RenderStaticShadowsAction extends RenderModelsAction {
+        private RenderStaticShadowsAction() {
+            super(staticLightModelRenderList);
+        }
+
+        @Override
+        public void execute(Context context) {
+            if (!staticShadowsDirty) {
+                return;
+            }
+            staticLightModelFrameBuffer.bind();
+            frameBufferBinds++;
+            context.clearCurrentBuffer();
+            super.execute(context);
+            staticLightModelFrameBuffer.unbind();
+            staticShadowsDirty = false;
+        }
+    }
+
+    private static class ReadDepthsAction extends Action {
+        @Override
+        public void execute(Context context) {
+            final int width = WINDOW_SIZE.getX();
+            final int height = WINDOW_SIZE.getY();
+            if (depthReadbackBuffer == 0) {
+                depthReadbackBuffer = GL15.glGenBuffers();
+                GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, depthReadbackBuffer);
+                GL15.glBufferData(GL21.GL_PIXEL_PACK_BUFFER, width * height * 4, GL15.GL_STREAM_READ);
+            } else {
+                GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, depthReadbackBuffer);
+            }
+            // Asynchronous with a pixel buffer bound, the depths are mapped at the start of the next frame
+            GL11.glReadPixels(0, 0, width, height, GL11.GL_DEPTH_COMPONENT, GL11.GL_FLOAT, 0L);
+            GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, 0);
+            depthReadbackViewProjection = modelCamera.getProjectionMatrix().mul(modelCamera.getViewMatrix());
+            depthReadbackPending = true;
+        }
+    }
+
+    private static class BinLightsAction extends Action {
+        @Override
+        public void execute(Context context) {
+            lightBinner.bin(modelCamera.getViewMatrix(), TAN_HALF_FOV, ASPECT_RATIO, WINDOW_SIZE.getX(), WINDOW_SIZE.getY());
+            lightsTexture.setImageData(lightBinner.getLightData(), 2, LightBinner.MAX_LIGHTS);
+            lightTilesTexture.setImageData(lightBinner.getTileData(), lightBinner.getTileCountX(), lightBinner.getTileCountY());
+            lightIndicesTexture.setImageData(lightBinner.getIndexData(), LightBinner.INDEX_ROW_LENGTH, lightBinner.getIndexRowCount());
+        }
+    }
+
+    private static class TemporalAccumulationAction extends RenderModelsAction {
+        private TemporalAccumulationAction(VertexArray screen) {
+            super(Arrays.asList(new Model(screen, temporalMaterial)));
+        }
+
+        @Override
+        public void execute(Context context) {
+            // Last frame's accumulation is read while this frame's is written to the other texture, which the lighting then reads
+            final Texture history = temporalHistoryTextures[temporalHistoryIndex];
+            temporalHistoryIndex ^= 1;
+            final Texture accumulated = temporalHistoryTextures[temporalHistoryIndex];
+            temporalMaterial.addTexture(2, history);
+            lightingMaterial.addTexture(4, accumulated);
+            lightingMaterial.addTexture(5, accumulated);
+            occlusionTarget = accumulated;
+            shadowTarget = accumulated;
+            historyWeightUniform.set(temporalHistoryValid ? TEMPORAL_HISTORY_WEIGHT : 0);
+            temporalHistoryValid = true;
+            temporalFrameBuffers[temporalHistoryIndex].bind();
+            frameBufferBinds++;
+            super.execute(context);
+        }
+    }
+
+    private static class SelectLevelOfDetailAction extends Action {
+        private final int pass;
+        private final Camera camera;
+        private final float bias;
+
+        private SelectLevelOfDetailAction(int pass, Camera camera, float bias) {
+            this.pass = pass;
+            this.camera = camera;
+            this.bias = bias;
+        }
+
+        @Override
+        public void execute(Context context) {
+            // Only the model pass draws in the order of the buckets, the light pass renders its own lists
+            levelOfDetail.select(pass, camera, bias, modelRenderList, pass == LOD_MODEL_PASS);
         }
     }
 
@@ -1002,6 +2208,7 @@ public class SandboxRenderer {
         @Override
         public void execute(Context context) {
             frameBuffer.bind();
+            frameBufferBinds++;
             super.execute(context);
         }
     }
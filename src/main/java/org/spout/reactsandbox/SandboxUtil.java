@@ -90,4 +90,18 @@ public class SandboxUtil {
         final float q = (float) (Math.sin(halfAngle) / Math.sqrt(x * x + y * y + z * z));
         return new Quaternion(x * q, y * q, z * q, (float) Math.cos(halfAngle));
     }
+
+    /**
+     * Prefixes a uniform name, capitalizing its first letter, as in "ssaoKernelSize".
+     *
+     * @param prefix The prefix, returns the name unchanged if empty
+     * @param name The name
+     * @return The prefixed name
+     */
+    public static String prefixName(String prefix, String name) {
+        if (prefix.isEmpty()) {
+            return name;
+        }
+        return prefix + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
 }
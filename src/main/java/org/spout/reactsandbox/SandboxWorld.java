@@ -0,0 +1,876 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import com.flowpowered.caustic.api.data.Uniform.Vector4Uniform;
+import com.flowpowered.caustic.api.model.Model;
+import com.flowpowered.caustic.api.util.CausticUtil;
+import com.flowpowered.caustic.api.util.MeshGenerator;
+import com.flowpowered.caustic.api.util.ObjFileLoader;
+import com.flowpowered.math.imaginary.Quaternionf;
+import com.flowpowered.math.vector.Vector3f;
+
+import gnu.trove.list.TFloatList;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TFloatArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+import org.spout.physics.ReactDefaults.JointsPositionCorrectionTechnique;
+import org.spout.physics.body.CollisionBody;
+import org.spout.physics.body.RigidBody;
+import org.spout.physics.collision.BroadPhasePair;
+import org.spout.physics.collision.shape.AABB;
+import org.spout.physics.collision.shape.BoxShape;
+import org.spout.physics.collision.shape.CapsuleShape;
+import org.spout.physics.collision.shape.CollisionShape;
+import org.spout.physics.collision.shape.CollisionShape.CollisionShapeType;
+import org.spout.physics.collision.shape.ConeShape;
+import org.spout.physics.collision.shape.ConvexMeshShape;
+import org.spout.physics.collision.shape.CylinderShape;
+import org.spout.physics.collision.shape.SphereShape;
+import org.spout.physics.constraint.ContactPoint.ContactPointInfo;
+import org.spout.physics.constraint.SliderJoint.SliderJointInfo;
+import org.spout.physics.engine.DynamicsWorld;
+import org.spout.physics.engine.Material;
+import org.spout.physics.math.Quaternion;
+import org.spout.physics.math.Transform;
+import org.spout.physics.math.Vector3;
+
+/**
+ * A physics world of the sandbox and the bookkeeping of its bodies. Each world is independent of the others, so they can be updated in parallel. A world gets its render models when it's first
+ * displayed, and keeps them in its own hidden model group while another world is displayed, so switching worlds doesn't rebuild them. Worlds never displayed run headless.
+ */
+public class SandboxWorld {
+    private static final TFloatList meshPositions = new TFloatArrayList();
+    private static final TIntList meshIndices = new TIntArrayList();
+    private static final String MESH_NAME = "diamond";
+    // Shared by all the convex mesh bodies, the world copies the shapes of the bodies it creates
+    private static final ConvexMeshShape meshShape;
+    private final String name;
+    private final float timestep;
+    private final Material material;
+    private final JointsPositionCorrectionTechnique jointsPositionCorrection;
+    private final DynamicsWorld world;
+    private final BodyRegistry registry = new BodyRegistry();
+    // Handles of the bodies waiting for their models, in addition order, read from pendingStart. Entries whose body was removed or already has its models are skipped
+    private final TIntList pendingHandles = new TIntArrayList();
+    private int pendingStart = 0;
+    private int pendingCount = 0;
+    private boolean displayed = false;
+    // Whether or not the bodies have models, from the first time the world is displayed
+    private boolean hasModels = false;
+    // Whether or not the models of the resting bodies are stale, from the world running while hidden
+    private boolean refreshModels = false;
+    // Incremented when bodies are added, removed or moved
+    private long version = 0;
+    // Tracked by the world callbacks, on the thread updating the world
+    private final Set<BroadPhasePair> pairs = Collections.newSetFromMap(new IdentityHashMap<BroadPhasePair, Boolean>());
+    private int contactCount = 0;
+    // Time of the last collision callback, which ends the collision detection part of the update
+    private long lastCollisionEvent = 0;
+    private long collisionTime = 0;
+    private long dynamicsTime = 0;
+    // Contact points and normals of the last update, as x, y, z, normal x, normal y, normal z, when recording
+    private final TFloatList contacts = new TFloatArrayList();
+    private boolean recordingContacts = false;
+    private final List<SliderJointRecord> sliderJoints = new ArrayList<>();
+    private boolean paused = false;
+    private final CommandQueue<WorldCommand> commands;
+
+    static {
+        ObjFileLoader.load(SandboxWorld.class.getResourceAsStream("/models/" + MESH_NAME + ".obj"), meshPositions, null, null, meshIndices);
+        final TFloatList positions = new TFloatArrayList(meshPositions);
+        final TIntList indices = new TIntArrayList(meshIndices);
+        MeshGenerator.toWireframe(positions, indices, false);
+        meshShape = new ConvexMeshShape(positions.toArray(), positions.size() / 3, 12);
+        for (int i = 0; i < indices.size(); i += 2) {
+            meshShape.addEdge(indices.get(i), indices.get(i + 1));
+        }
+        meshShape.setIsEdgesInformationUsed(true);
+    }
+
+    /**
+     * Constructs a new world.
+     *
+     * @param name The name of the world
+     * @param timestep The physics timestep, in seconds
+     * @param material The material of the bodies in the default scene
+     * @param jointsPositionCorrection The position correction technique of the joints in the default scene
+     * @param commandQueueSize The maximum number of pending commands
+     */
+    public SandboxWorld(String name, float timestep, Material material, JointsPositionCorrectionTechnique jointsPositionCorrection, int commandQueueSize) {
+        this.name = name;
+        this.timestep = timestep;
+        this.material = Material.asUnmodifiableMaterial(material);
+        this.jointsPositionCorrection = jointsPositionCorrection;
+        commands = new CommandQueue<>(commandQueueSize);
+        world = new DynamicsWorld(new Vector3(0, -9.81f, 0), timestep) {
+            @Override
+            public void notifyAddedOverlappingPair(BroadPhasePair addedPair) {
+                super.notifyAddedOverlappingPair(addedPair);
+                pairs.add(addedPair);
+                lastCollisionEvent = System.nanoTime();
+            }
+
+            @Override
+            public void notifyRemovedOverlappingPair(BroadPhasePair removedPair) {
+                super.notifyRemovedOverlappingPair(removedPair);
+                pairs.remove(removedPair);
+                lastCollisionEvent = System.nanoTime();
+            }
+
+            @Override
+            public void notifyNewContact(BroadPhasePair pair, ContactPointInfo contactInfo) {
+                super.notifyNewContact(pair, contactInfo);
+                contactCount++;
+                lastCollisionEvent = System.nanoTime();
+                if (recordingContacts) {
+                    final Vector3f point = toWorld(pair.getFirstBody(), SandboxUtil.toMathVector3(contactInfo.localPoint1));
+                    contacts.add(point.getX());
+                    contacts.add(point.getY());
+                    contacts.add(point.getZ());
+                    contacts.add(contactInfo.normal.getX());
+                    contacts.add(contactInfo.normal.getY());
+                    contacts.add(contactInfo.normal.getZ());
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the name of the world.
+     *
+     * @return The name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the physics timestep of the world, in seconds.
+     *
+     * @return The timestep
+     */
+    public float getTimestep() {
+        return timestep;
+    }
+
+    /**
+     * Returns the physics world.
+     *
+     * @return The dynamics world
+     */
+    public DynamicsWorld getDynamicsWorld() {
+        return world;
+    }
+
+    /**
+     * Returns the number of bodies in the world.
+     *
+     * @return The body count
+     */
+    public int getBodyCount() {
+        return registry.size();
+    }
+
+    /**
+     * Returns the version of the world, which changes when bodies are added, removed or moved in the renderer.
+     *
+     * @return The version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the number of overlapping pairs found by the broad phase.
+     *
+     * @return The pair count
+     */
+    public int getPairCount() {
+        return pairs.size();
+    }
+
+    /**
+     * Returns the number of contacts found by the narrow phase during the last update.
+     *
+     * @return The contact count
+     */
+    public int getContactCount() {
+        return contactCount;
+    }
+
+    /**
+     * Returns the time spent in the collision detection of the last update, in nanoseconds. This is measured up to the last broad or narrow phase callback of the world, so collision
+     * detection that found no pair change nor contact counts as dynamics.
+     *
+     * @return The collision detection time
+     */
+    public long getCollisionTime() {
+        return collisionTime;
+    }
+
+    /**
+     * Returns the time spent in the rest of the last update, solving the constraints and integrating the bodies, in nanoseconds.
+     *
+     * @return The dynamics time
+     */
+    public long getDynamicsTime() {
+        return dynamicsTime;
+    }
+
+    /**
+     * Returns the AABB model of the body, if the world was displayed.
+     *
+     * @param body The body
+     * @return The AABB model, or null if the world was never displayed or the model is still pending
+     */
+    public Model getAABBModel(CollisionBody body) {
+        final int handle = registry.getHandle(body);
+        return handle >= 0 ? registry.getAABBModelAt(registry.getIndex(handle)) : null;
+    }
+
+    /**
+     * Selects or deselects a body, highlighting its AABB. Bodies without models yet are highlighted when they get them.
+     *
+     * @param body The body, ignored if null or not in the world
+     * @param selected Whether or not the body is selected
+     */
+    public void setSelected(CollisionBody body, boolean selected) {
+        final int handle = body != null ? registry.getHandle(body) : -1;
+        if (handle < 0) {
+            return;
+        }
+        final int index = registry.getIndex(handle);
+        registry.setFlagsAt(index, BodyRegistry.SELECTED, selected);
+        final Model aabbModel = registry.getAABBModelAt(index);
+        if (aabbModel != null) {
+            aabbModel.getUniforms().<Vector4Uniform>get("modelColor").set(selected ? CausticUtil.BLUE : SandboxRenderer.getAABBColor());
+        }
+    }
+
+    /**
+     * Returns true if the world is displayed in the renderer.
+     *
+     * @return Whether or not the world is displayed
+     */
+    public boolean isDisplayed() {
+        return displayed;
+    }
+
+    /**
+     * Displays the world in the renderer or hides it. The models of the bodies are created the first time the world is displayed, then only shown or hidden.
+     *
+     * @param displayed Whether or not to display the world
+     */
+    public void setDisplayed(boolean displayed) {
+        if (this.displayed == displayed) {
+            return;
+        }
+        this.displayed = displayed;
+        SandboxRenderer.setModelGroupVisible(this, displayed);
+        if (displayed) {
+            if (hasModels) {
+                refreshModels = true;
+            } else {
+                hasModels = true;
+                // Spread over the next frames by createPendingModels
+                SandboxRenderer.ensureModelCapacity(registry.size() * 2);
+                for (int i = 0; i < registry.size(); i++) {
+                    queueModels(i);
+                }
+            }
+        } else {
+            recordingContacts = false;
+        }
+        version++;
+    }
+
+    /**
+     * Creates the default scene of the sandbox in the world, using the world's material and joint correction technique.
+     */
+    public void createDefaultScene() {
+        final RigidBody box = addImmobileBody(new BoxShape(new Vector3(1, 1, 1)), 1, new Vector3(0, 6, 0), SandboxUtil.angleAxisToQuaternion(45, 1, 1, 1));
+        box.setMaterial(material);
+        addMobileBody(new BoxShape(new Vector3(0.28f, 0.28f, 0.28f)), 1, new Vector3(0, 6, 0), SandboxUtil.angleAxisToQuaternion(45, 1, 1, 1)).setMaterial(material);
+        addMobileBody(new ConeShape(1, 2), 1, new Vector3(0, 9, 0), SandboxUtil.angleAxisToQuaternion(89, -1, -1, -1)).setMaterial(material);
+        addMobileBody(new CylinderShape(1, 2), 1, new Vector3(0, 12, 0), SandboxUtil.angleAxisToQuaternion(-15, 1, -1, 1)).setMaterial(material);
+        addMobileBody(new CapsuleShape(1, 1), 1, new Vector3(4, 9, 0), SandboxUtil.angleAxisToQuaternion(-15, 1, -1, -1)).setMaterial(material);
+        final RigidBody sphere = addMobileBody(new SphereShape(1), 1, new Vector3(0, 6, 7), SandboxUtil.angleAxisToQuaternion(32, -1, -1, 1));
+        sphere.setMaterial(material);
+        addImmobileBody(new BoxShape(new Vector3(25, 1, 25)), 100, new Vector3(0, 1.8f, 0), Quaternion.identity()).setMaterial(material);
+        addImmobileBody(new BoxShape(new Vector3(50, 1, 50)), 100, new Vector3(0, 0, 0), Quaternion.identity()).setMaterial(material);
+        final Vector3 boxPosition = box.getTransform().getPosition();
+        final Vector3 spherePosition = sphere.getTransform().getPosition();
+        addSliderJoint(box, sphere, Vector3.add(boxPosition, spherePosition).divide(2), Vector3.subtract(spherePosition, boxPosition), 0, 10, 1, 1);
+    }
+
+    /**
+     * Adds a slider joint between two bodies of the world, using the world's joint correction technique.
+     *
+     * @param body1 The first body
+     * @param body2 The second body
+     * @param anchor The anchor point, in world space
+     * @param axis The slider axis, in world space
+     * @param minTranslation The minimum translation limit
+     * @param maxTranslation The maximum translation limit
+     * @param motorSpeed The motor speed
+     * @param maxMotorForce The maximum motor force
+     */
+    public void addSliderJoint(RigidBody body1, RigidBody body2, Vector3 anchor, Vector3 axis, float minTranslation, float maxTranslation, float motorSpeed, float maxMotorForce) {
+        final SliderJointInfo info = new SliderJointInfo(body1, body2, anchor, axis, minTranslation, maxTranslation, motorSpeed, maxMotorForce);
+        info.setPositionCorrectionTechnique(jointsPositionCorrection);
+        world.createJoint(info);
+        final Vector3f worldAnchor = SandboxUtil.toMathVector3(anchor);
+        final Quaternionf inverse1 = SandboxUtil.toMathQuaternion(body1.getTransform().getOrientation()).invert();
+        sliderJoints.add(new SliderJointRecord(body1, toLocal(body1, worldAnchor), body2, toLocal(body2, worldAnchor), inverse1.rotate(SandboxUtil.toMathVector3(axis)),
+                minTranslation, maxTranslation, motorSpeed, maxMotorForce));
+    }
+
+    /**
+     * Returns the bodies of the world, in no particular order. The list changes as bodies are added and removed.
+     *
+     * @return An unmodifiable view of the bodies
+     */
+    public List<CollisionBody> getBodies() {
+        return registry.getBodies();
+    }
+
+    /**
+     * Returns the slider joints of the world, in creation order.
+     *
+     * @return An unmodifiable view of the slider joints
+     */
+    public List<SliderJointRecord> getSliderJoints() {
+        return Collections.unmodifiableList(sliderJoints);
+    }
+
+    /**
+     * Removes all the bodies and joints from the world.
+     */
+    public void clear() {
+        while (registry.size() > 0) {
+            removeBody(registry.getBodyAt(registry.size() - 1));
+        }
+    }
+
+    /**
+     * Returns true if the simulation of the world is paused.
+     *
+     * @return Whether or not the world is paused
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Pauses or resumes the simulation of the world. Updates do nothing while paused, and the time spent paused isn't caught up on resuming.
+     *
+     * @param paused Whether or not to pause the world
+     */
+    public void setPaused(boolean paused) {
+        if (this.paused == paused) {
+            return;
+        }
+        this.paused = paused;
+        if (paused) {
+            world.stop();
+        } else {
+            world.start();
+        }
+    }
+
+    /**
+     * Submits a command to be executed before the next update. Can be called from any thread.
+     *
+     * @param command The command
+     * @return True if the command was queued, false if the queue is full
+     */
+    public boolean submit(WorldCommand command) {
+        return commands.offer(command);
+    }
+
+    /**
+     * Executes the commands submitted since the last call, in submission order. Must be called from the render thread, between updates.
+     *
+     * @return The number of commands executed
+     */
+    public int executeCommands() {
+        int count = 0;
+        WorldCommand command;
+        while ((command = commands.poll()) != null) {
+            command.execute(this);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Starts the simulation of the world.
+     */
+    public void start() {
+        world.start();
+    }
+
+    /**
+     * Stops the simulation of the world.
+     */
+    public void stop() {
+        world.stop();
+    }
+
+    /**
+     * Updates the physics of the world. This doesn't touch the renderer, so worlds can be updated in parallel.
+     */
+    public void update() {
+        contactCount = 0;
+        contacts.clear();
+        collisionTime = 0;
+        dynamicsTime = 0;
+        if (paused) {
+            return;
+        }
+        final long start = System.nanoTime();
+        lastCollisionEvent = start;
+        world.update();
+        final long end = System.nanoTime();
+        collisionTime = lastCollisionEvent - start;
+        dynamicsTime = end - lastCollisionEvent;
+    }
+
+    /**
+     * Adds a body that can't move to the world.
+     *
+     * @param shape The collision shape
+     * @param mass The mass
+     * @param position The position
+     * @param orientation The orientation
+     * @return The new body
+     */
+    public RigidBody addImmobileBody(CollisionShape shape, float mass, Vector3 position, Quaternion orientation) {
+        final RigidBody body = addMobileBody(shape, mass, position, orientation);
+        body.enableMotion(false);
+        return body;
+    }
+
+    /**
+     * Adds a body that can move to the world.
+     *
+     * @param shape The collision shape
+     * @param mass The mass
+     * @param position The position
+     * @param orientation The orientation
+     * @return The new body
+     */
+    public RigidBody addMobileBody(CollisionShape shape, float mass, Vector3 position, Quaternion orientation) {
+        final RigidBody body = world.createRigidBody(new Transform(position, orientation), mass, shape);
+        final int handle = registry.add(body);
+        if (hasModels) {
+            addModels(registry.getIndex(handle));
+        }
+        version++;
+        return body;
+    }
+
+    /**
+     * Adds many mobile bodies at once. The bookkeeping is sized for the whole batch up front, and when the world has models they are created later by
+     * {@link #createPendingModels(long)}, so a large batch doesn't stall a frame.
+     *
+     * @param shapes The collision shape of each body
+     * @param masses The mass of each body
+     * @param transforms The position and orientation of each body, packed as x, y, z, qx, qy, qz, qw
+     * @param count The number of bodies to add, from the start of the arrays
+     * @return The new bodies
+     */
+    public List<RigidBody> addMobileBodies(CollisionShape[] shapes, float[] masses, float[] transforms, int count) {
+        registry.ensureCapacity(count);
+        final List<RigidBody> added = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int offset = i * 7;
+            final Transform transform = new Transform(
+                    new Vector3(transforms[offset], transforms[offset + 1], transforms[offset + 2]),
+                    new Quaternion(transforms[offset + 3], transforms[offset + 4], transforms[offset + 5], transforms[offset + 6]));
+            final RigidBody body = world.createRigidBody(transform, masses[i], shapes[i]);
+            final int handle = registry.add(body);
+            if (hasModels) {
+                queueModels(registry.getIndex(handle));
+            }
+            added.add(body);
+        }
+        if (hasModels) {
+            SandboxRenderer.ensureModelCapacity(count * 2);
+        }
+        version++;
+        return added;
+    }
+
+    /**
+     * Creates the models of the bodies added in bulk or waiting since the world was displayed, oldest first, until the time budget is spent.
+     *
+     * @param budget The time budget, in nanoseconds
+     * @return The number of bodies whose models were created
+     */
+    public int createPendingModels(long budget) {
+        if (pendingCount == 0) {
+            return 0;
+        }
+        final long start = System.nanoTime();
+        int count = 0;
+        while (pendingStart < pendingHandles.size() && System.nanoTime() - start < budget) {
+            final int handle = pendingHandles.get(pendingStart++);
+            if (!registry.contains(handle)) {
+                continue;
+            }
+            final int index = registry.getIndex(handle);
+            if (!registry.hasFlagsAt(index, BodyRegistry.PENDING_MODELS)) {
+                continue;
+            }
+            registry.setFlagsAt(index, BodyRegistry.PENDING_MODELS, false);
+            addModels(index);
+            pendingCount--;
+            count++;
+        }
+        if (pendingCount == 0 || pendingStart == pendingHandles.size()) {
+            pendingHandles.clear();
+            pendingStart = 0;
+        }
+        if (count > 0) {
+            version++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of bodies still waiting for their models.
+     *
+     * @return The pending model count
+     */
+    public int getPendingModelCount() {
+        return pendingCount;
+    }
+
+    private void queueModels(int index) {
+        if (!registry.hasFlagsAt(index, BodyRegistry.PENDING_MODELS)) {
+            registry.setFlagsAt(index, BodyRegistry.PENDING_MODELS, true);
+            pendingHandles.add(registry.getHandleAt(index));
+            pendingCount++;
+        }
+    }
+
+    /**
+     * Removes a body from the world, along with its models.
+     *
+     * @param body The body to remove, ignored if null
+     */
+    public void removeBody(CollisionBody body) {
+        final int handle = body != null ? registry.getHandle(body) : -1;
+        if (handle < 0) {
+            return;
+        }
+        final int index = registry.getIndex(handle);
+        removeModels(index);
+        if (registry.hasFlagsAt(index, BodyRegistry.PENDING_MODELS)) {
+            pendingCount--;
+        }
+        registry.remove(handle);
+        // The physics world destroys the joints of the body along with it
+        for (Iterator<SliderJointRecord> iterator = sliderJoints.iterator(); iterator.hasNext(); ) {
+            final SliderJointRecord joint = iterator.next();
+            if (joint.body1 == body || joint.body2 == body) {
+                iterator.remove();
+            }
+        }
+        if (body instanceof RigidBody) {
+            world.destroyRigidBody((RigidBody) body);
+        }
+        version++;
+    }
+
+    private void removeModels(int index) {
+        final Model shapeModel = registry.getShapeModelAt(index);
+        if (shapeModel != null) {
+            SandboxRenderer.removeModel(shapeModel);
+        }
+        final Model aabbModel = registry.getAABBModelAt(index);
+        if (aabbModel != null) {
+            SandboxRenderer.removeModel(aabbModel);
+        }
+        registry.setModelsAt(index, null, null);
+    }
+
+    private void addModels(int index) {
+        final CollisionBody body = registry.getBodyAt(index);
+        final Transform bodyTransform = body.getTransform();
+        final Vector3 bodyPosition = bodyTransform.getPosition();
+        final Quaternion bodyOrientation = bodyTransform.getOrientation();
+        final AABB aabb = body.getAABB();
+        final Model aabbModel = SandboxRenderer.addAABB(SandboxUtil.toMathVector3(bodyPosition), SandboxUtil.toMathVector3(Vector3.subtract(aabb.getMax(), aabb.getMin())), this);
+        if (registry.hasFlagsAt(index, BodyRegistry.SELECTED)) {
+            aabbModel.getUniforms().<Vector4Uniform>get("modelColor").set(CausticUtil.BLUE);
+        }
+        final CollisionShape shape = body.getCollisionShape();
+        final Model shapeModel;
+        switch (shape.getType()) {
+            case BOX:
+                final BoxShape box = (BoxShape) shape;
+                shapeModel = SandboxRenderer.addBox(SandboxUtil.toMathVector3(bodyPosition), SandboxUtil.toMathQuaternion(bodyOrientation), SandboxUtil.toMathVector3(box.getExtent()), this);
+                break;
+            case CONE:
+                final ConeShape cone = (ConeShape) shape;
+                shapeModel = SandboxRenderer.addCone(SandboxUtil.toMathVector3(bodyPosition), SandboxUtil.toMathQuaternion(bodyOrientation), cone.getRadius(), cone.getHeight(), this);
+                break;
+            case CYLINDER:
+                final CylinderShape cylinder = (CylinderShape) shape;
+                shapeModel = SandboxRenderer.addCylinder(SandboxUtil.toMathVector3(bodyPosition), SandboxUtil.toMathQuaternion(bodyOrientation), cylinder.getRadius(), cylinder.getHeight(), this);
+                break;
+            case SPHERE:
+                final SphereShape sphere = (SphereShape) shape;
+                shapeModel = SandboxRenderer.addSphere(SandboxUtil.toMathVector3(bodyPosition), SandboxUtil.toMathQuaternion(bodyOrientation), sphere.getRadius(), this);
+                break;
+            case CAPSULE:
+                final CapsuleShape capsule = (CapsuleShape) shape;
+                shapeModel = SandboxRenderer.addCapsule(SandboxUtil.toMathVector3(bodyPosition), SandboxUtil.toMathQuaternion(bodyOrientation), capsule.getRadius(), capsule.getHeight(), this);
+                break;
+            case CONVEX_MESH:
+                shapeModel = SandboxRenderer.addMeshShape(SandboxUtil.toMathVector3(bodyPosition), SandboxUtil.toMathQuaternion(bodyOrientation), MESH_NAME, meshPositions, meshIndices, this);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported collision shape: " + shape.getType());
+        }
+        registry.setModelsAt(index, shapeModel, aabbModel);
+    }
+
+    /**
+     * Updates the models of the bodies that moved since the last call, or of all the bodies after the world was hidden. Does nothing if the world was never displayed.
+     */
+    public void updateBodies() {
+        boolean moved = refreshModels;
+        for (int i = 0; i < registry.size(); i++) {
+            final Model shape = registry.getShapeModelAt(i);
+            if (shape == null) {
+                continue;
+            }
+            final CollisionBody body = registry.getBodyAt(i);
+            // Immobile and sleeping bodies don't move, so they only need to be updated once when they come to rest
+            final boolean isStatic = body.isSleeping() || body instanceof RigidBody && !((RigidBody) body).isMotionEnabled();
+            final boolean wasResting = registry.hasFlagsAt(i, BodyRegistry.RESTING);
+            if (isStatic && wasResting && !refreshModels) {
+                continue;
+            }
+            moved = true;
+            final Model aabbModel = registry.getAABBModelAt(i);
+            if (!isStatic && wasResting) {
+                registry.setFlagsAt(i, BodyRegistry.RESTING, false);
+                SandboxRenderer.setModelStatic(shape, false);
+                SandboxRenderer.setModelStatic(aabbModel, false);
+            }
+            final AABB aabb = body.getAABB();
+            final Transform transform = body.getInterpolatedTransform();
+            final Vector3 position = transform.getPosition();
+            aabbModel.setPosition(SandboxUtil.toMathVector3(position));
+            aabbModel.setScale(SandboxUtil.toMathVector3(Vector3.subtract(aabb.getMax(), aabb.getMin())));
+            shape.setPosition(SandboxUtil.toMathVector3(position));
+            shape.setRotation(SandboxUtil.toMathQuaternion(transform.getOrientation()));
+            SandboxRenderer.markModelMoved(shape);
+            SandboxRenderer.markModelMoved(aabbModel);
+            // Resting bodies go in the cached static shadow map
+            if (isStatic) {
+                registry.setFlagsAt(i, BodyRegistry.RESTING, true);
+                SandboxRenderer.setModelStatic(shape, true);
+                SandboxRenderer.setModelStatic(aabbModel, true);
+            }
+        }
+        refreshModels = false;
+        if (moved) {
+            version++;
+        }
+    }
+
+    /**
+     * Adds the debug lines of the world for the enabled categories: the contact points and normals of the last update, lines between the bodies of the broad phase pairs and the anchors of the
+     * joints. Contacts are only recorded while their category is enabled, so they appear from the next update on.
+     *
+     * @param draw The debug draw to add the lines to
+     */
+    public void drawDebug(DebugDraw draw) {
+        recordingContacts = displayed && draw.isEnabled(DebugDraw.Category.CONTACTS);
+        if (!draw.isAnyEnabled()) {
+            return;
+        }
+        if (draw.isEnabled(DebugDraw.Category.CONTACTS)) {
+            for (int i = 0; i < contacts.size(); i += 6) {
+                final float x = contacts.get(i), y = contacts.get(i + 1), z = contacts.get(i + 2);
+                draw.addPoint(DebugDraw.Category.CONTACTS, x, y, z);
+                draw.addLine(DebugDraw.Category.CONTACTS, x, y, z, x + contacts.get(i + 3), y + contacts.get(i + 4), z + contacts.get(i + 5));
+            }
+        }
+        if (draw.isEnabled(DebugDraw.Category.PAIRS)) {
+            for (BroadPhasePair pair : pairs) {
+                draw.addLine(DebugDraw.Category.PAIRS,
+                        SandboxUtil.toMathVector3(pair.getFirstBody().getTransform().getPosition()),
+                        SandboxUtil.toMathVector3(pair.getSecondBody().getTransform().getPosition()));
+            }
+        }
+        if (draw.isEnabled(DebugDraw.Category.JOINTS)) {
+            for (SliderJointRecord joint : sliderJoints) {
+                final Vector3f anchor1 = toWorld(joint.body1, joint.localAnchor1);
+                final Vector3f anchor2 = toWorld(joint.body2, joint.localAnchor2);
+                draw.addPoint(DebugDraw.Category.JOINTS, anchor1);
+                draw.addPoint(DebugDraw.Category.JOINTS, anchor2);
+                draw.addLine(DebugDraw.Category.JOINTS, SandboxUtil.toMathVector3(joint.body1.getTransform().getPosition()), anchor1);
+                draw.addLine(DebugDraw.Category.JOINTS, SandboxUtil.toMathVector3(joint.body2.getTransform().getPosition()), anchor2);
+            }
+        }
+    }
+
+    private static Vector3f toWorld(CollisionBody body, Vector3f local) {
+        final Transform transform = body.getTransform();
+        return SandboxUtil.toMathQuaternion(transform.getOrientation()).rotate(local).add(SandboxUtil.toMathVector3(transform.getPosition()));
+    }
+
+    private static Vector3f toLocal(CollisionBody body, Vector3f world) {
+        final Transform transform = body.getTransform();
+        final Quaternionf inverse = SandboxUtil.toMathQuaternion(transform.getOrientation()).invert();
+        return inverse.rotate(world.sub(SandboxUtil.toMathVector3(transform.getPosition())));
+    }
+
+    /**
+     * Creates a new collision shape of the type, with the default size of spawned bodies. The convex mesh shape is built once and shared.
+     *
+     * @param type The type of shape
+     * @return The shape
+     */
+    public static CollisionShape createShape(CollisionShapeType type) {
+        switch (type) {
+            case BOX:
+                return new BoxShape(1, 1, 1);
+            case CONE:
+                return new ConeShape(1, 2);
+            case CYLINDER:
+                return new CylinderShape(1, 2);
+            case SPHERE:
+                return new SphereShape(1);
+            case CAPSULE:
+                return new CapsuleShape(1, 1);
+            case CONVEX_MESH:
+                return meshShape;
+            default:
+                throw new IllegalArgumentException("Unsupported collision shape type: " + type);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * A slider joint of the world, with its anchor and axis kept relative to the bodies so they can be found again after they move.
+     */
+    public static class SliderJointRecord {
+        private final RigidBody body1;
+        private final Vector3f localAnchor1;
+        private final RigidBody body2;
+        private final Vector3f localAnchor2;
+        private final Vector3f localAxis1;
+        private final float minTranslation;
+        private final float maxTranslation;
+        private final float motorSpeed;
+        private final float maxMotorForce;
+
+        private SliderJointRecord(RigidBody body1, Vector3f localAnchor1, RigidBody body2, Vector3f localAnchor2, Vector3f localAxis1,
+                                  float minTranslation, float maxTranslation, float motorSpeed, float maxMotorForce) {
+            this.body1 = body1;
+            this.localAnchor1 = localAnchor1;
+            this.body2 = body2;
+            this.localAnchor2 = localAnchor2;
+            this.localAxis1 = localAxis1;
+            this.minTranslation = minTranslation;
+            this.maxTranslation = maxTranslation;
+            this.motorSpeed = motorSpeed;
+            this.maxMotorForce = maxMotorForce;
+        }
+
+        public RigidBody getBody1() {
+            return body1;
+        }
+
+        public RigidBody getBody2() {
+            return body2;
+        }
+
+        /**
+         * Returns the current anchor point in world space, following the first body.
+         *
+         * @return The anchor point
+         */
+        public Vector3f getAnchor() {
+            return toWorld(body1, localAnchor1);
+        }
+
+        /**
+         * Returns the current slider axis in world space, following the first body.
+         *
+         * @return The slider axis
+         */
+        public Vector3f getAxis() {
+            return SandboxUtil.toMathQuaternion(body1.getTransform().getOrientation()).rotate(localAxis1);
+        }
+
+        /**
+         * Returns the current translation of the second body along the slider axis, relative to where the joint was made.
+         *
+         * @return The translation
+         */
+        public float getTranslation() {
+            return toWorld(body2, localAnchor2).sub(getAnchor()).dot(getAxis().normalize());
+        }
+
+        public float getMinTranslation() {
+            return minTranslation;
+        }
+
+        public float getMaxTranslation() {
+            return maxTranslation;
+        }
+
+        public float getMotorSpeed() {
+            return motorSpeed;
+        }
+
+        public float getMaxMotorForce() {
+            return maxMotorForce;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.flowpowered.math.vector.Vector3f;
+
+import org.spout.physics.body.CollisionBody;
+import org.spout.physics.body.RigidBody;
+import org.spout.physics.collision.shape.BoxShape;
+import org.spout.physics.collision.shape.CapsuleShape;
+import org.spout.physics.collision.shape.CollisionShape;
+import org.spout.physics.collision.shape.CollisionShape.CollisionShapeType;
+import org.spout.physics.collision.shape.ConeShape;
+import org.spout.physics.collision.shape.CylinderShape;
+import org.spout.physics.collision.shape.SphereShape;
+import org.spout.physics.engine.Material;
+import org.spout.physics.math.Quaternion;
+import org.spout.physics.math.Transform;
+import org.spout.physics.math.Vector3;
+
+/**
+ * Saves and loads the bodies and joints of a world in a compact binary format. The file is a header followed by a stream of tagged records, bodies first then joints, so neither side needs the
+ * whole scene in memory. Convex meshes are always the sandbox's diamond mesh, so only their type is stored.
+ */
+public class SceneFile {
+    private static final int MAGIC = 0x52534E44;
+    // Only files of this exact version are read, bump it when the format changes
+    private static final int VERSION = 2;
+    private static final byte END_RECORD = 0;
+    private static final byte BODY_RECORD = 1;
+    private static final byte SLIDER_JOINT_RECORD = 2;
+
+    private SceneFile() {
+    }
+
+    /**
+     * Writes the bodies and joints of the world to the file.
+     *
+     * @param world The world to save
+     * @param file The file to write to
+     * @return The number of bodies written
+     * @throws IOException If the file couldn't be written
+     */
+    public static int write(SandboxWorld world, File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            // Joints refer to bodies by their order in the file
+            final Map<CollisionBody, Integer> indices = new IdentityHashMap<>();
+            for (CollisionBody body : world.getBodies()) {
+                if (!(body instanceof RigidBody)) {
+                    continue;
+                }
+                indices.put(body, indices.size());
+                writeBody(out, (RigidBody) body);
+            }
+            for (SandboxWorld.SliderJointRecord joint : world.getSliderJoints()) {
+                out.writeByte(SLIDER_JOINT_RECORD);
+                out.writeInt(indices.get(joint.getBody1()));
+                out.writeInt(indices.get(joint.getBody2()));
+                writeVector3f(out, joint.getAnchor());
+                writeVector3f(out, joint.getAxis());
+                out.writeFloat(joint.getMinTranslation());
+                out.writeFloat(joint.getMaxTranslation());
+                out.writeFloat(joint.getMotorSpeed());
+                out.writeFloat(joint.getMaxMotorForce());
+                out.writeFloat(joint.getTranslation());
+            }
+            out.writeByte(END_RECORD);
+            return indices.size();
+        }
+    }
+
+    private static void writeBody(DataOutputStream out, RigidBody body) throws IOException {
+        out.writeByte(BODY_RECORD);
+        final CollisionShape shape = body.getCollisionShape();
+        out.writeByte(shape.getType().ordinal());
+        switch (shape.getType()) {
+            case BOX:
+                writeVector3(out, ((BoxShape) shape).getExtent());
+                break;
+            case CONE:
+                out.writeFloat(((ConeShape) shape).getRadius());
+                out.writeFloat(((ConeShape) shape).getHeight());
+                break;
+            case CYLINDER:
+                out.writeFloat(((CylinderShape) shape).getRadius());
+                out.writeFloat(((CylinderShape) shape).getHeight());
+                break;
+            case SPHERE:
+                out.writeFloat(((SphereShape) shape).getRadius());
+                break;
+            case CAPSULE:
+                out.writeFloat(((CapsuleShape) shape).getRadius());
+                out.writeFloat(((CapsuleShape) shape).getHeight());
+                break;
+            case CONVEX_MESH:
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported collision shape: " + shape.getType());
+        }
+        out.writeFloat(body.getMass());
+        out.writeBoolean(body.isMotionEnabled());
+        final Transform transform = body.getTransform();
+        writeVector3(out, transform.getPosition());
+        final Quaternion orientation = transform.getOrientation();
+        out.writeFloat(orientation.getX());
+        out.writeFloat(orientation.getY());
+        out.writeFloat(orientation.getZ());
+        out.writeFloat(orientation.getW());
+        writeVector3(out, body.getLinearVelocity());
+        writeVector3(out, body.getAngularVelocity());
+        final Material material = body.getMaterial();
+        out.writeFloat(material.getBounciness());
+        out.writeFloat(material.getFrictionCoefficient());
+    }
+
+    private static void writeVector3(DataOutputStream out, Vector3 vector) throws IOException {
+        out.writeFloat(vector.getX());
+        out.writeFloat(vector.getY());
+        out.writeFloat(vector.getZ());
+    }
+
+    private static void writeVector3f(DataOutputStream out, Vector3f vector) throws IOException {
+        out.writeFloat(vector.getX());
+        out.writeFloat(vector.getY());
+        out.writeFloat(vector.getZ());
+    }
+
+    /**
+     * Opens the stream for reading into the world, for a scene already read into memory. Nothing is read until {@link Reader#read(int)} is called.
+     *
+     * @param world The world to load the scene into
+     * @param stream The stream to read from, closed with the reader
+     * @param name The name of the scene, for the errors
+     * @return The reader
+     * @throws IOException If the stream isn't a scene file
+     */
+    public static Reader read(SandboxWorld world, InputStream stream, String name) throws IOException {
+        return new Reader(world, stream, name);
+    }
+
+    /**
+     * Reads a scene file into a world in batches of records, so a large scene can be loaded over several frames.
+     */
+    public static class Reader implements Closeable {
+        private final SandboxWorld world;
+        private final DataInputStream in;
+        private final List<RigidBody> bodies = new ArrayList<>();
+        private boolean done = false;
+
+        private Reader(SandboxWorld world, InputStream stream, String name) throws IOException {
+            this.world = world;
+            in = new DataInputStream(new BufferedInputStream(stream));
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a scene file: " + name);
+                }
+                final int version = in.readInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported scene file version: " + version);
+                }
+            } catch (IOException ex) {
+                in.close();
+                throw ex;
+            }
+        }
+
+        /**
+         * Reads up to the given number of records, adding their bodies and joints to the world.
+         *
+         * @param count The maximum number of records to read
+         * @return True if the end of the scene was reached
+         * @throws IOException If the file couldn't be read or is malformed
+         */
+        public boolean read(int count) throws IOException {
+            for (int i = 0; i < count && !done; i++) {
+                final byte record = in.readByte();
+                switch (record) {
+                    case BODY_RECORD:
+                        bodies.add(readBody());
+                        break;
+                    case SLIDER_JOINT_RECORD:
+                        readSliderJoint();
+                        break;
+                    case END_RECORD:
+                        done = true;
+                        break;
+                    default:
+                        throw new IOException("Unknown record: " + record);
+                }
+            }
+            return done;
+        }
+
+        /**
+         * Removes the bodies read so far from the world, along with their joints, for a scene that failed to load.
+         */
+        public void discard() {
+            for (RigidBody body : bodies) {
+                world.removeBody(body);
+            }
+            bodies.clear();
+        }
+
+        /**
+         * Returns the world the scene is read into.
+         *
+         * @return The world
+         */
+        public SandboxWorld getWorld() {
+            return world;
+        }
+
+        /**
+         * Returns the number of bodies read so far.
+         *
+         * @return The body count
+         */
+        public int getBodyCount() {
+            return bodies.size();
+        }
+
+        private RigidBody readBody() throws IOException {
+            final int shapeIndex = in.readUnsignedByte();
+            if (shapeIndex >= CollisionShapeType.values().length) {
+                throw new IOException("Bad shape index: " + shapeIndex);
+            }
+            final CollisionShapeType type = CollisionShapeType.values()[shapeIndex];
+            final CollisionShape shape;
+            switch (type) {
+                case BOX:
+                    shape = new BoxShape(readVector3());
+                    break;
+                case CONE:
+                    shape = new ConeShape(in.readFloat(), in.readFloat());
+                    break;
+                case CYLINDER:
+                    shape = new CylinderShape(in.readFloat(), in.readFloat());
+                    break;
+                case SPHERE:
+                    shape = new SphereShape(in.readFloat());
+                    break;
+                case CAPSULE:
+                    shape = new CapsuleShape(in.readFloat(), in.readFloat());
+                    break;
+                case CONVEX_MESH:
+                    shape = SandboxWorld.createShape(CollisionShapeType.CONVEX_MESH);
+                    break;
+                default:
+                    throw new IOException("Unsupported collision shape: " + type);
+            }
+            final float mass = in.readFloat();
+            final boolean motionEnabled = in.readBoolean();
+            final Vector3 position = readVector3();
+            final Quaternion orientation = new Quaternion(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat());
+            final Vector3 linearVelocity = readVector3();
+            final Vector3 angularVelocity = readVector3();
+            final Material material = new Material(in.readFloat(), in.readFloat());
+            final RigidBody body;
+            if (motionEnabled) {
+                body = world.addMobileBody(shape, mass, position, orientation);
+                body.setLinearVelocity(linearVelocity);
+                body.setAngularVelocity(angularVelocity);
+            } else {
+                body = world.addImmobileBody(shape, mass, position, orientation);
+            }
+            body.setMaterial(material);
+            return body;
+        }
+
+        private void readSliderJoint() throws IOException {
+            final RigidBody body1 = readBodyIndex();
+            final RigidBody body2 = readBodyIndex();
+            final Vector3 anchor = readVector3();
+            final Vector3 axis = readVector3();
+            final float minTranslation = in.readFloat();
+            final float maxTranslation = in.readFloat();
+            final float motorSpeed = in.readFloat();
+            final float maxMotorForce = in.readFloat();
+            // The joint is rebuilt at the current pose of the bodies, where its translation is 0, so the limits are moved by the saved translation
+            final float translation = in.readFloat();
+            world.addSliderJoint(body1, body2, anchor, axis, minTranslation - translation, maxTranslation - translation, motorSpeed, maxMotorForce);
+        }
+
+        private RigidBody readBodyIndex() throws IOException {
+            final int index = in.readInt();
+            if (index < 0 || index >= bodies.size()) {
+                throw new IOException("Bad body index: " + index);
+            }
+            return bodies.get(index);
+        }
+
+        private Vector3 readVector3() throws IOException {
+            return new Vector3(in.readFloat(), in.readFloat(), in.readFloat());
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -45,6 +45,7 @@ import com.flowpowered.caustic.api.gl.Texture.InternalFormat;
 import com.flowpowered.caustic.api.util.CausticUtil;
 
 public class ShadowMappingEffect {
+    private static final long SEED = 1;
     private final int kernelSize;
     private final Vector2f[] kernel;
     private final Vector2f noiseScale;
@@ -59,8 +60,8 @@ public class ShadowMappingEffect {
         this.noiseTexture = context.newTexture();
         this.bias = bias;
         this.radius = radius;
-        // Generate the kernel
-        final Random random = new Random();
+        // Generate the kernel, from a fixed seed so the same settings always render the same frames
+        final Random random = new Random(SEED);
         for (int i = 0; i < kernelSize; i++) {
             // Create a set of random unit vectors
             kernel[i] = new Vector2f(random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1).normalize();
@@ -93,10 +94,14 @@ public class ShadowMappingEffect {
     }
 
     public void addUniforms(UniformHolder destination) {
-        destination.add(new IntUniform("kernelSize", kernelSize));
-        destination.add(new Vector2ArrayUniform("kernel", kernel));
-        destination.add(new Vector2Uniform("noiseScale", noiseScale));
-        destination.add(new FloatUniform("bias", bias));
-        destination.add(new FloatUniform("radius", radius));
+        addUniforms(destination, "");
+    }
+
+    public void addUniforms(UniformHolder destination, String prefix) {
+        destination.add(new IntUniform(SandboxUtil.prefixName(prefix, "kernelSize"), kernelSize));
+        destination.add(new Vector2ArrayUniform(SandboxUtil.prefixName(prefix, "kernel"), kernel));
+        destination.add(new Vector2Uniform(SandboxUtil.prefixName(prefix, "noiseScale"), noiseScale));
+        destination.add(new FloatUniform(SandboxUtil.prefixName(prefix, "bias"), bias));
+        destination.add(new FloatUniform(SandboxUtil.prefixName(prefix, "radius"), radius));
     }
 }
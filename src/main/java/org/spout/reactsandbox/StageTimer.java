@@ -0,0 +1,304 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.flowpowered.caustic.api.Action;
+import com.flowpowered.caustic.api.gl.Context;
+
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL33;
+import org.lwjgl.opengl.GLContext;
+
+/**
+ * Records the CPU and GPU time of each stage of the render pipeline, for a fixed number of frames. The stages are delimited by the actions returned by {@link #begin(String)} and {@link #end()}, which
+ * must not overlap. The CPU time is the time spent issuing the stage's commands. The GPU time comes from timer queries, which are read a few frames later so the results don't stall the pipeline, and
+ * is -1 when timer queries aren't supported.
+ */
+public class StageTimer {
+    // Frames of queries in flight before their results are read
+    private static final int LATENCY = 3;
+    private final int capacity;
+    private final List<String> stages = new ArrayList<>();
+    private final boolean gpuTimed;
+    private int[][] queries = null;
+    private boolean[][] started;
+    private final int[] queryFrames = new int[LATENCY];
+    private long[][] cpuTimes;
+    private long[][] gpuTimes;
+    private int frame = 0;
+    private int currentStage = -1;
+    private long stageStart;
+
+    /**
+     * Constructs a new stage timer. Must be called with the OpenGL context current.
+     *
+     * @param capacity The number of frames to record
+     */
+    public StageTimer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than zero");
+        }
+        this.capacity = capacity;
+        gpuTimed = GLContext.getCapabilities().OpenGL33 || GLContext.getCapabilities().GL_ARB_timer_query;
+        Arrays.fill(queryFrames, -1);
+    }
+
+    /**
+     * Removes all the stages and discards the recorded frames, for a new pipeline.
+     */
+    public void clearStages() {
+        disposeQueries();
+        stages.clear();
+        frame = 0;
+        Arrays.fill(queryFrames, -1);
+    }
+
+    /**
+     * Returns an action starting the timing of the stage. Stages with the same name are timed as one.
+     *
+     * @param name The name of the stage
+     * @return The action to add to the pipeline before the stage
+     */
+    public Action begin(String name) {
+        int index = stages.indexOf(name);
+        if (index < 0) {
+            index = stages.size();
+            stages.add(name);
+        }
+        final int stage = index;
+        return new Action() {
+            @Override
+            public void execute(Context context) {
+                if (frame >= capacity) {
+                    return;
+                }
+                if (queries == null) {
+                    allocate();
+                }
+                currentStage = stage;
+                if (gpuTimed) {
+                    GL15.glBeginQuery(GL33.GL_TIME_ELAPSED, queries[frame % LATENCY][stage]);
+                    started[frame % LATENCY][stage] = true;
+                }
+                stageStart = System.nanoTime();
+            }
+        };
+    }
+
+    /**
+     * Returns an action stopping the timing of the last started stage.
+     *
+     * @return The action to add to the pipeline after the stage
+     */
+    public Action end() {
+        return new Action() {
+            @Override
+            public void execute(Context context) {
+                if (currentStage < 0) {
+                    return;
+                }
+                cpuTimes[frame][currentStage] += System.nanoTime() - stageStart;
+                if (gpuTimed) {
+                    GL15.glEndQuery(GL33.GL_TIME_ELAPSED);
+                }
+                currentStage = -1;
+            }
+        };
+    }
+
+    /**
+     * Ends the current frame, reading the GPU times of the oldest frame in flight.
+     */
+    public void endFrame() {
+        if (queries == null || frame >= capacity) {
+            return;
+        }
+        queryFrames[frame % LATENCY] = frame;
+        frame++;
+        // The slot about to be reused holds the oldest queries
+        final int slot = frame % LATENCY;
+        if (queryFrames[slot] >= 0) {
+            readQueries(slot);
+        }
+        if (frame == capacity) {
+            // No more frames will push the last queries out, so they're waited for
+            for (int i = 0; i < LATENCY; i++) {
+                if (queryFrames[i] >= 0) {
+                    readQueries(i);
+                }
+            }
+        }
+    }
+
+    private void readQueries(int slot) {
+        final int recorded = queryFrames[slot];
+        queryFrames[slot] = -1;
+        if (!gpuTimed) {
+            return;
+        }
+        final int[] slotQueries = queries[slot];
+        for (int stage = 0; stage < slotQueries.length; stage++) {
+            // Stages left out of a frame didn't start their query
+            if (started[slot][stage]) {
+                gpuTimes[recorded][stage] = GL33.glGetQueryObjecti64(slotQueries[stage], GL15.GL_QUERY_RESULT);
+                started[slot][stage] = false;
+            }
+        }
+    }
+
+    private void allocate() {
+        queries = new int[LATENCY][stages.size()];
+        started = new boolean[LATENCY][stages.size()];
+        for (int[] slotQueries : queries) {
+            for (int stage = 0; stage < slotQueries.length; stage++) {
+                slotQueries[stage] = gpuTimed ? GL15.glGenQueries() : 0;
+            }
+        }
+        cpuTimes = new long[capacity][stages.size()];
+        gpuTimes = new long[capacity][stages.size()];
+        for (long[] times : gpuTimes) {
+            Arrays.fill(times, -1);
+        }
+    }
+
+    private void disposeQueries() {
+        if (queries == null) {
+            return;
+        }
+        if (gpuTimed) {
+            for (int[] slotQueries : queries) {
+                for (int query : slotQueries) {
+                    GL15.glDeleteQueries(query);
+                }
+            }
+        }
+        queries = null;
+    }
+
+    /**
+     * Releases the timer queries. Must be called with the OpenGL context current.
+     */
+    public void dispose() {
+        disposeQueries();
+    }
+
+    /**
+     * Returns true if all the frames have been recorded.
+     *
+     * @return Whether or not the recording is complete
+     */
+    public boolean isComplete() {
+        return frame >= capacity;
+    }
+
+    /**
+     * Returns true if the GPU times are measured.
+     *
+     * @return Whether or not timer queries are supported
+     */
+    public boolean isGPUTimed() {
+        return gpuTimed;
+    }
+
+    /**
+     * Returns the names of the stages, in the order they were first started.
+     *
+     * @return The stage names
+     */
+    public List<String> getStages() {
+        return stages;
+    }
+
+    /**
+     * Returns the number of recorded frames.
+     *
+     * @return The frame count
+     */
+    public int getFrameCount() {
+        return queries == null ? 0 : frame;
+    }
+
+    /**
+     * Returns the CPU time of the stage for a recorded frame.
+     *
+     * @param frame The frame index
+     * @param stage The stage index
+     * @return The time in nanoseconds
+     */
+    public long getCPUTime(int frame, int stage) {
+        return cpuTimes[frame][stage];
+    }
+
+    /**
+     * Returns the GPU time of the stage for a recorded frame.
+     *
+     * @param frame The frame index
+     * @param stage The stage index
+     * @return The time in nanoseconds, or -1 if not measured
+     */
+    public long getGPUTime(int frame, int stage) {
+        return gpuTimes[frame][stage];
+    }
+
+    /**
+     * Writes the recorded frames to a CSV file, with a CPU and a GPU column in milliseconds for each stage.
+     *
+     * @param file The file to write to
+     * @throws IOException If the file couldn't be written
+     */
+    public void writeCSV(File file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+            writer.print("Frame");
+            for (String stage : stages) {
+                writer.print(',');
+                writer.print(stage + " CPU");
+                writer.print(',');
+                writer.print(stage + " GPU");
+            }
+            writer.println();
+            final int count = getFrameCount();
+            for (int recorded = 0; recorded < count; recorded++) {
+                writer.print(recorded);
+                for (int stage = 0; stage < stages.size(); stage++) {
+                    writer.print(',');
+                    writer.print(cpuTimes[recorded][stage] / 1e6);
+                    writer.print(',');
+                    writer.print(gpuTimes[recorded][stage] < 0 ? "" : String.valueOf(gpuTimes[recorded][stage] / 1e6));
+                }
+                writer.println();
+            }
+        }
+    }
+}
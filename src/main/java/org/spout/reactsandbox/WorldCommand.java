@@ -0,0 +1,133 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+import java.util.Collection;
+
+import org.spout.physics.body.CollisionBody;
+import org.spout.physics.collision.shape.CollisionShape;
+import org.spout.physics.math.Quaternion;
+import org.spout.physics.math.Vector3;
+
+/**
+ * A mutation of a world, submitted from any thread with {@link SandboxWorld#submit(WorldCommand)} and executed on the render thread before the next physics update.
+ */
+public interface WorldCommand {
+    /**
+     * Applies the command to the world.
+     *
+     * @param world The world
+     */
+    void execute(SandboxWorld world);
+
+    /**
+     * Spawns a batch of mobile bodies as a single command. Bodies are added to the batch before it's submitted.
+     */
+    public static class SpawnBodies implements WorldCommand {
+        private final CollisionShape[] shapes;
+        private final float[] masses;
+        private final float[] transforms;
+        private int size = 0;
+
+        /**
+         * Constructs a new empty batch.
+         *
+         * @param capacity The maximum number of bodies in the batch
+         */
+        public SpawnBodies(int capacity) {
+            shapes = new CollisionShape[capacity];
+            masses = new float[capacity];
+            // Position and orientation of each body, packed as x, y, z, qx, qy, qz, qw
+            transforms = new float[capacity * 7];
+        }
+
+        /**
+         * Adds a body to the batch.
+         *
+         * @param shape The collision shape
+         * @param mass The mass
+         * @param position The position
+         * @param orientation The orientation
+         * @return This batch, for chaining
+         */
+        public SpawnBodies add(CollisionShape shape, float mass, Vector3 position, Quaternion orientation) {
+            final int index = size;
+            if (index >= shapes.length) {
+                throw new IllegalStateException("The batch is full");
+            }
+            shapes[index] = shape;
+            size++;
+            masses[index] = mass;
+            final int offset = index * 7;
+            transforms[offset] = position.getX();
+            transforms[offset + 1] = position.getY();
+            transforms[offset + 2] = position.getZ();
+            transforms[offset + 3] = orientation.getX();
+            transforms[offset + 4] = orientation.getY();
+            transforms[offset + 5] = orientation.getZ();
+            transforms[offset + 6] = orientation.getW();
+            return this;
+        }
+
+        /**
+         * Returns the number of bodies in the batch.
+         *
+         * @return The body count
+         */
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void execute(SandboxWorld world) {
+            world.addMobileBodies(shapes, masses, transforms, size);
+        }
+    }
+
+    /**
+     * Removes a batch of bodies as a single command. Bodies that were already removed are ignored.
+     */
+    public static class RemoveBodies implements WorldCommand {
+        private final CollisionBody[] bodies;
+
+        /**
+         * Constructs a new batch of the bodies.
+         *
+         * @param bodies The bodies to remove
+         */
+        public RemoveBodies(Collection<? extends CollisionBody> bodies) {
+            this.bodies = bodies.toArray(new CollisionBody[bodies.size()]);
+        }
+
+        @Override
+        public void execute(SandboxWorld world) {
+            for (CollisionBody body : bodies) {
+                world.removeBody(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Updates a set of worlds once per step, in parallel on a pool of worker threads when there is more than one, and periodically reports their aggregate throughput.
+ */
+public class WorldStepper {
+    private static final long REPORT_INTERVAL = 5000;
+    private final List<SandboxWorld> worlds;
+    private final List<Callable<Long>> updates = new ArrayList<>();
+    private final ExecutorService executor;
+    private long lastReport = System.currentTimeMillis();
+    private int steps = 0;
+    private long bodyUpdates = 0;
+    private long updateTime = 0;
+    private long stepTime = 0;
+
+    /**
+     * Constructs a new world stepper.
+     *
+     * @param worlds The worlds to update
+     * @param threads The number of worker threads, or 0 for one per available processor
+     */
+    public WorldStepper(List<SandboxWorld> worlds, int threads) {
+        if (worlds.isEmpty()) {
+            throw new IllegalArgumentException("There must be at least one world");
+        }
+        if (threads < 0) {
+            throw new IllegalArgumentException("Thread count must be positive or 0");
+        }
+        this.worlds = worlds;
+        for (final SandboxWorld world : worlds) {
+            updates.add(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    final long start = System.nanoTime();
+                    world.update();
+                    return System.nanoTime() - start;
+                }
+            });
+        }
+        if (worlds.size() > 1) {
+            final int poolSize = Math.min(worlds.size(), threads == 0 ? Runtime.getRuntime().availableProcessors() : threads);
+            executor = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "World-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * Updates all the worlds once, returning when they are all done.
+     */
+    public void step() {
+        final long start = System.nanoTime();
+        if (executor == null) {
+            try {
+                updateTime += updates.get(0).call();
+            } catch (Exception ex) {
+                throw new IllegalStateException("World update failed", ex);
+            }
+        } else {
+            try {
+                for (Future<Long> update : executor.invokeAll(updates)) {
+                    updateTime += update.get();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while updating the worlds", ex);
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException("World update failed", ex.getCause());
+            }
+        }
+        stepTime += System.nanoTime() - start;
+        steps++;
+        for (SandboxWorld world : worlds) {
+            bodyUpdates += world.getBodyCount();
+        }
+        final long currentTime = System.currentTimeMillis();
+        final long elapsed = currentTime - lastReport;
+        if (elapsed >= REPORT_INTERVAL) {
+            report(elapsed / 1000f);
+            lastReport = currentTime;
+            steps = 0;
+            bodyUpdates = 0;
+            updateTime = 0;
+            stepTime = 0;
+        }
+    }
+
+    private void report(float seconds) {
+        final int worldUpdates = steps * worlds.size();
+        System.out.printf("Worlds: %d, updates/s: %.1f, body updates/s: %.0f, mean world update: %.3f ms, mean step: %.3f ms%n",
+                worlds.size(), worldUpdates / seconds, bodyUpdates / seconds, updateTime / 1e6f / worldUpdates, stepTime / 1e6f / steps);
+    }
+
+    /**
+     * Stops the worker threads. The stepper can't be used after this.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+// $shader_type: fragment
+
+#version 120
+
+varying vec4 vertexColor;
+
+void main() {
+    gl_FragColor = vertexColor;
+}
@@ -0,0 +1,21 @@
+// $shader_type: vertex
+
+// $attrib_layout: position = 0
+// $attrib_layout: color = 1
+
+#version 120
+
+attribute vec3 position;
+attribute vec4 color;
+
+varying vec4 vertexColor;
+
+uniform mat4 modelMatrix;
+uniform mat4 viewMatrix;
+uniform mat4 projectionMatrix;
+
+void main() {
+    vertexColor = color;
+
+    gl_Position = projectionMatrix * viewMatrix * modelMatrix * vec4(position, 1);
+}
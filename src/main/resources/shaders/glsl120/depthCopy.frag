@@ -0,0 +1,13 @@
+// $shader_type: fragment
+
+// $texture_layout: depths = 0
+
+#version 120
+
+varying vec2 textureUV;
+
+uniform sampler2D depths;
+
+void main() {
+    gl_FragDepth = texture2D(depths, textureUV).r;
+}
@@ -0,0 +1,11 @@
+// $shader_type: fragment
+
+#version 330
+
+in vec4 vertexColor;
+
+layout(location = 0) out vec4 outputColor;
+
+void main() {
+    outputColor = vertexColor;
+}
@@ -0,0 +1,18 @@
+// $shader_type: vertex
+
+#version 330
+
+layout(location = 0) in vec3 position;
+layout(location = 1) in vec4 color;
+
+out vec4 vertexColor;
+
+uniform mat4 modelMatrix;
+uniform mat4 viewMatrix;
+uniform mat4 projectionMatrix;
+
+void main() {
+    vertexColor = color;
+
+    gl_Position = projectionMatrix * viewMatrix * modelMatrix * vec4(position, 1);
+}
@@ -0,0 +1,13 @@
+// $shader_type: fragment
+
+// $texture_layout: depths = 0
+
+#version 330
+
+in vec2 textureUV;
+
+uniform sampler2D depths;
+
+void main() {
+    gl_FragDepth = texture(depths, textureUV).r;
+}
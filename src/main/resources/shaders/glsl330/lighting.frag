@@ -6,6 +6,9 @@
 // $texture_layout: materials = 3
 // $texture_layout: occlusions = 4
 // $texture_layout: shadows = 5
+// $texture_layout: lights = 6
+// $texture_layout: lightTiles = 7
+// $texture_layout: lightIndices = 8
 
 #version 330
 
@@ -22,14 +25,45 @@ uniform sampler2D depths;
 uniform sampler2D materials;
 uniform sampler2D occlusions;
 uniform sampler2D shadows;
+uniform sampler2D lights;
+uniform sampler2D lightTiles;
+uniform sampler2D lightIndices;
 uniform vec2 projection;
 uniform float lightAttenuation;
 uniform	float spotCutoff;
+uniform vec2 shadowChannel;
+uniform bool tiledLights;
+uniform int lightTileSize;
+uniform int lightIndexRowLength;
 
 float linearizeDepth(float depth) {
     return projection.y / (depth - projection.x);
 }
 
+vec3 computeTiledLights(vec3 positionView, vec3 normalView, vec3 material) {
+    vec3 lightTerm = vec3(0);
+    vec2 tile = texelFetch(lightTiles, ivec2(gl_FragCoord.xy) / lightTileSize, 0).rg;
+    int offset = int(tile.x);
+    int count = int(tile.y);
+    vec3 eyeDirection = normalize(positionView);
+    for (int i = 0; i < count; i++) {
+        int index = offset + i;
+        int light = int(texelFetch(lightIndices, ivec2(index % lightIndexRowLength, index / lightIndexRowLength), 0).r);
+        vec4 positionRadius = texelFetch(lights, ivec2(0, light), 0);
+        vec3 lightDifference = positionRadius.xyz - positionView;
+        float lightDistance = length(lightDifference);
+        if (lightDistance >= positionRadius.w) {
+            continue;
+        }
+        vec3 lightDirection = lightDifference / lightDistance;
+        float falloff = 1 - lightDistance / positionRadius.w;
+        float normalDotLight = max(0, dot(normalView, lightDirection));
+        float specular = normalDotLight > 0 ? material.y * pow(max(0, dot(reflect(lightDirection, normalView), eyeDirection)), 20) : 0;
+        lightTerm += texelFetch(lights, ivec2(1, light), 0).rgb * falloff * falloff * (material.x * normalDotLight + specular);
+    }
+    return lightTerm;
+}
+
 void main() {
     outputColor = texture(colors, textureUV);
 
@@ -53,7 +87,8 @@ void main() {
 
     float occlusion = texture(occlusions, textureUV).r;
 
-    float shadow = texture(shadows, textureUV).r;
+    // The shadows are in the second channel when merged with the occlusions
+    float shadow = dot(texture(shadows, textureUV).rg, shadowChannel);
 
     float ambientTerm = material.z * occlusion;
     float diffuseTerm = 0;
@@ -67,5 +102,10 @@ void main() {
         }
     }
 
-    outputColor.rgb *= (diffuseTerm + specularTerm + ambientTerm);
+    vec3 lightTerm = vec3(diffuseTerm + specularTerm + ambientTerm);
+    if (tiledLights) {
+        lightTerm += computeTiledLights(positionView, normalView, material);
+    }
+
+    outputColor.rgb *= lightTerm;
 }
@@ -0,0 +1,123 @@
+// $shader_type: fragment
+
+// $texture_layout: colors = 0
+// $texture_layout: normals = 1
+// $texture_layout: depths = 2
+// $texture_layout: occlusions = 4
+// $texture_layout: shadows = 5
+// $texture_layout: lights = 6
+// $texture_layout: lightTiles = 7
+// $texture_layout: lightIndices = 8
+
+#version 330
+
+in vec2 textureUV;
+noperspective in vec3 viewRay;
+in vec3 lightPositionView;
+in vec3 spotDirectionView;
+
+layout(location = 0) out vec4 outputColor;
+
+uniform sampler2D colors;
+uniform sampler2D normals;
+uniform sampler2D depths;
+uniform sampler2D occlusions;
+uniform sampler2D shadows;
+uniform sampler2D lights;
+uniform sampler2D lightTiles;
+uniform sampler2D lightIndices;
+uniform vec2 projection;
+uniform float lightAttenuation;
+uniform	float spotCutoff;
+uniform vec2 shadowChannel;
+uniform bool tiledLights;
+uniform int lightTileSize;
+uniform int lightIndexRowLength;
+
+float linearizeDepth(float depth) {
+    return projection.y / (depth - projection.x);
+}
+
+vec3 computeTiledLights(vec3 positionView, vec3 normalView, vec3 material) {
+    vec3 lightTerm = vec3(0);
+    vec2 tile = texelFetch(lightTiles, ivec2(gl_FragCoord.xy) / lightTileSize, 0).rg;
+    int offset = int(tile.x);
+    int count = int(tile.y);
+    vec3 eyeDirection = normalize(positionView);
+    for (int i = 0; i < count; i++) {
+        int index = offset + i;
+        int light = int(texelFetch(lightIndices, ivec2(index % lightIndexRowLength, index / lightIndexRowLength), 0).r);
+        vec4 positionRadius = texelFetch(lights, ivec2(0, light), 0);
+        vec3 lightDifference = positionRadius.xyz - positionView;
+        float lightDistance = length(lightDifference);
+        if (lightDistance >= positionRadius.w) {
+            continue;
+        }
+        vec3 lightDirection = lightDifference / lightDistance;
+        float falloff = 1 - lightDistance / positionRadius.w;
+        float normalDotLight = max(0, dot(normalView, lightDirection));
+        float specular = normalDotLight > 0 ? material.y * pow(max(0, dot(reflect(lightDirection, normalView), eyeDirection)), 20) : 0;
+        lightTerm += texelFetch(lights, ivec2(1, light), 0).rgb * falloff * falloff * (material.x * normalDotLight + specular);
+    }
+    return lightTerm;
+}
+
+vec3 decodeNormal(vec2 encoded) {
+    encoded = encoded * 2 - 1;
+    vec3 normal = vec3(encoded, 1 - abs(encoded.x) - abs(encoded.y));
+    if (normal.z < 0) {
+        normal.xy = (1 - abs(normal.yx)) * vec2(normal.x >= 0 ? 1 : -1, normal.y >= 0 ? 1 : -1);
+    }
+    return normalize(normal);
+}
+
+vec3 unpackMaterial(float packed) {
+    float code = floor(packed * 255 + 0.5) - 1;
+    return vec3(mod(code, 6), mod(floor(code / 6), 6), floor(code / 36)) / 5;
+}
+
+void main() {
+    outputColor = texture(colors, textureUV);
+    if (outputColor.a <= 0) {
+        return;
+    }
+    // The alpha holds the material, the models are opaque
+    vec3 material = unpackMaterial(outputColor.a);
+    outputColor.a = 1;
+
+    vec3 normalView = decodeNormal(texture(normals, textureUV).rg);
+
+    vec3 positionView = viewRay * linearizeDepth(texture(depths, textureUV).r);
+
+    vec3 lightDifference = lightPositionView - positionView;
+    float lightDistance = length(lightDifference);
+    vec3 lightDirection = lightDifference / lightDistance;
+    float distanceIntensity = 1 / (1 + lightAttenuation * lightDistance);
+
+    float spotDotLight = dot(spotDirectionView, -lightDirection);
+    float normalDotLight = dot(normalView, lightDirection);
+
+    float occlusion = texture(occlusions, textureUV).r;
+
+    // The shadows are in the second channel when merged with the occlusions
+    float shadow = dot(texture(shadows, textureUV).rg, shadowChannel);
+
+    float ambientTerm = material.z * occlusion;
+    float diffuseTerm = 0;
+    float specularTerm = 0;
+    if (spotDotLight > spotCutoff && shadow > 0) {
+        distanceIntensity *= (spotDotLight - spotCutoff) / (1 - spotCutoff);
+        normalDotLight = max(0, normalDotLight);
+        diffuseTerm = material.x * distanceIntensity * shadow * normalDotLight;
+        if (normalDotLight > 0) {
+            specularTerm = material.y * distanceIntensity * shadow * pow(max(0, dot(reflect(lightDirection, normalView), normalize(viewRay))), 20);
+        }
+    }
+
+    vec3 lightTerm = vec3(diffuseTerm + specularTerm + ambientTerm);
+    if (tiledLights) {
+        lightTerm += computeTiledLights(positionView, normalView, material);
+    }
+
+    outputColor.rgb *= lightTerm;
+}
@@ -0,0 +1,120 @@
+// $shader_type: fragment
+
+// $texture_layout: normals = 0
+// $texture_layout: depths = 1
+// $texture_layout: lightDepths = 2
+// $texture_layout: ssaoNoise = 3
+// $texture_layout: shadowNoise = 4
+// $texture_layout: vertexNormals = 5
+
+#version 330
+
+const int MAX_KERNEL_SIZE = 32;
+
+in vec2 textureUV;
+noperspective in vec3 viewRay;
+in vec3 lightPositionView;
+
+layout(location = 0) out vec2 outputOcclusionShadow;
+
+uniform sampler2D normals;
+uniform sampler2D depths;
+uniform sampler2DShadow lightDepths;
+uniform sampler2D ssaoNoise;
+uniform sampler2D shadowNoise;
+uniform sampler2D vertexNormals;
+uniform mat4 projectionMatrix;
+uniform mat4 inverseViewMatrix;
+uniform mat4 lightViewMatrix;
+uniform mat4 lightProjectionMatrix;
+uniform vec2 projection;
+uniform int ssaoKernelSize;
+uniform vec3[MAX_KERNEL_SIZE] ssaoKernel;
+uniform float ssaoRadius;
+uniform float ssaoThreshold;
+uniform vec2 ssaoNoiseScale;
+uniform float ssaoPower;
+uniform int shadowKernelSize;
+uniform vec2[MAX_KERNEL_SIZE] shadowKernel;
+uniform vec2 shadowNoiseScale;
+uniform vec2 noiseOffset;
+uniform float shadowBias;
+uniform float shadowRadius;
+
+float linearizeDepth(float depth) {
+    return projection.y / (depth - projection.x);
+}
+
+vec3 decodeNormal(vec2 encoded) {
+    encoded = encoded * 2 - 1;
+    vec3 normal = vec3(encoded, 1 - abs(encoded.x) - abs(encoded.y));
+    if (normal.z < 0) {
+        normal.xy = (1 - abs(normal.yx)) * vec2(normal.x >= 0 ? 1 : -1, normal.y >= 0 ? 1 : -1);
+    }
+    return normalize(normal);
+}
+
+float computeOcclusion(vec3 origin) {
+    vec3 normal = decodeNormal(texture(normals, textureUV).rg);
+
+    // Reorient the sample kernel along the normal, with a random rotation from the noise texture
+    vec3 noiseVector = texture(ssaoNoise, textureUV * ssaoNoiseScale + noiseOffset).xyz * 2 - 1;
+    vec3 tangent = normalize(noiseVector - normal * dot(noiseVector, normal));
+    vec3 biTangent = cross(normal, tangent);
+    mat3 tbn = mat3(tangent, biTangent, normal);
+
+    float occlusion = 0;
+    for (int i = 0; i < ssaoKernelSize; i++) {
+        vec3 sample = tbn * ssaoKernel[i];
+        sample = sample * ssaoRadius + origin;
+
+        vec4 offset = projectionMatrix * vec4(sample, 1);
+        offset.xy /= offset.w;
+        offset.xy = offset.xy * 0.5 + 0.5;
+
+        float sampleDepth = -linearizeDepth(texture(depths, offset.xy).r);
+
+        float rangeCheck = smoothstep(0, 1, ssaoRadius / abs(origin.z - sampleDepth));
+        occlusion += rangeCheck * (sampleDepth - sample.z >= ssaoThreshold ? 1 : 0);
+    }
+
+    return pow(1 - occlusion / ssaoKernelSize, ssaoPower);
+}
+
+float computeShadow(vec3 positionView) {
+    vec3 normalView = decodeNormal(texture(vertexNormals, textureUV).rg);
+
+    vec3 lightDirection = normalize(lightPositionView - positionView);
+    float normalDotLight = dot(normalView, lightDirection);
+
+    vec4 positionLightClip = lightProjectionMatrix * lightViewMatrix * inverseViewMatrix * vec4(positionView, 1);
+    positionLightClip.xyz = positionLightClip.xyz / positionLightClip.w * 0.5 + 0.5;
+
+    float slopedBias = clamp(tan(acos(normalDotLight)) * shadowBias, shadowBias / 2, shadowBias * 2);
+
+    vec2 noiseVector = texture(shadowNoise, textureUV * shadowNoiseScale + noiseOffset).xy * 2 - 1;
+    vec2 orthogonalVector = vec2(noiseVector.y, -noiseVector.x);
+    mat2 basis = mat2(noiseVector, orthogonalVector);
+
+    float shadow = 0;
+    for (int i = 0; i < shadowKernelSize; i++) {
+        vec2 offsetPosition = positionLightClip.xy + basis * shadowKernel[i] * shadowRadius;
+        shadow += texture(lightDepths, vec3(offsetPosition, positionLightClip.z - slopedBias));
+    }
+
+    return shadow / shadowKernelSize;
+}
+
+void main() {
+    // The background is left at the cleared depth
+    float depth = texture(depths, textureUV).r;
+    if (depth >= 1) {
+        outputOcclusionShadow = vec2(1, 0);
+        return;
+    }
+
+    // Both terms share the reconstructed position
+    vec3 positionView = viewRay * linearizeDepth(depth);
+
+    outputOcclusionShadow = vec2(computeOcclusion(positionView), computeShadow(positionView));
+}
@@ -0,0 +1,27 @@
+// $shader_type: fragment
+
+// $texture_layout: source = 0
+
+#version 330
+
+in vec2 textureUV;
+
+layout(location = 0) out vec2 outputColor;
+
+uniform sampler2D source;
+uniform int blurSize;
+uniform vec2 texelSize;
+uniform vec2 direction;
+
+void main() {
+    // One dimension of the box blur, the other is done by a second pass
+    vec2 blurred = vec2(0);
+    float halfBlurSize = float(blurSize) / 2;
+    int blurStart = int(-floor(halfBlurSize));
+    int blurEnd = int(ceil(halfBlurSize));
+    vec2 step = direction * texelSize;
+    for (int i = blurStart; i < blurEnd; i++) {
+        blurred += texture(source, textureUV + step * i).rg;
+    }
+    outputColor = blurred / blurSize;
+}
@@ -26,6 +26,7 @@ uniform vec2 projection;
 uniform int kernelSize;
 uniform vec2[MAX_KERNEL_SIZE] kernel;
 uniform vec2 noiseScale;
+uniform vec2 noiseOffset;
 uniform float bias;
 uniform float radius;
 
@@ -50,7 +51,7 @@ void main() {
 
     float slopedBias = clamp(tan(acos(normalDotLight)) * bias, bias / 2, bias * 2);
 
-    vec2 noiseVector = texture(noise, textureUV * noiseScale).xy * 2 - 1;
+    vec2 noiseVector = texture(noise, textureUV * noiseScale + noiseOffset).xy * 2 - 1;
     vec2 orthogonalVector = vec2(noiseVector.y, -noiseVector.x);
     mat2 basis = mat2(noiseVector, orthogonalVector);
 
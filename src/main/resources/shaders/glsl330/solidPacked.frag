@@ -0,0 +1,40 @@
+// $shader_type: fragment
+
+#version 330
+
+in vec4 positionClip;
+in vec4 previousPositionClip;
+in vec3 normalView;
+
+layout(location = 0) out vec4 outputColor;
+layout(location = 1) out vec2 outputNormal;
+layout(location = 2) out vec2 outputVertexNormal;
+layout(location = 3) out vec2 outputVelocity;
+
+uniform vec4 modelColor;
+uniform float diffuseIntensity;
+uniform float specularIntensity;
+uniform float ambientIntensity;
+
+vec2 encodeNormal(vec3 normal) {
+    // Octahedral encoding: project on the octahedron, then fold the lower half over the upper one
+    normal /= abs(normal.x) + abs(normal.y) + abs(normal.z);
+    vec2 encoded = normal.z >= 0 ? normal.xy : (1 - abs(normal.yx)) * vec2(normal.x >= 0 ? 1 : -1, normal.y >= 0 ? 1 : -1);
+    return encoded * 0.5 + 0.5;
+}
+
+float packMaterial(float diffuse, float specular, float ambient) {
+    // Six levels for each parameter, offset by one so that zero is left for the background
+    vec3 levels = floor(clamp(vec3(diffuse, specular, ambient), 0, 1) * 5 + 0.5);
+    return (1 + levels.x + levels.y * 6 + levels.z * 36) / 255;
+}
+
+void main() {
+    outputColor = vec4(modelColor.rgb, packMaterial(diffuseIntensity, specularIntensity, ambientIntensity));
+
+    outputNormal = encodeNormal(normalize(normalView));
+
+    outputVertexNormal = outputNormal;
+
+    outputVelocity = (positionClip.xy / positionClip.w - previousPositionClip.xy / previousPositionClip.w) * 0.5;
+}
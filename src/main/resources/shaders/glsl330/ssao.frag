@@ -23,6 +23,7 @@ uniform vec3[MAX_KERNEL_SIZE] kernel;
 uniform float radius;
 uniform float threshold;
 uniform vec2 noiseScale;
+uniform vec2 noiseOffset;
 uniform float power;
 
 float linearizeDepth(float depth) {
@@ -44,7 +45,7 @@ void main() {
 
     // Construct a change of basis matrix to reorient our sample kernel along the object's normal
     // Extract the random vector from the noise texture
-    vec3 noiseVector = texture(noise, textureUV * noiseScale).xyz * 2 - 1;
+    vec3 noiseVector = texture(noise, textureUV * noiseScale + noiseOffset).xyz * 2 - 1;
 
     // Calculate the tangent and bi-tangent using Gram-Schmidt
     vec3 tangent = normalize(noiseVector - normal * dot(noiseVector, normal));
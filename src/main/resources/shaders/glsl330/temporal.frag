@@ -0,0 +1,59 @@
+// $shader_type: fragment
+
+// $texture_layout: occlusions = 0
+// $texture_layout: shadows = 1
+// $texture_layout: history = 2
+// $texture_layout: velocities = 3
+// $texture_layout: depths = 4
+
+#version 330
+
+in vec2 textureUV;
+noperspective in vec3 viewRay;
+
+layout(location = 0) out vec4 outputHistory;
+
+uniform sampler2D occlusions;
+uniform sampler2D shadows;
+uniform sampler2D history;
+uniform sampler2D velocities;
+uniform sampler2D depths;
+uniform vec2 projection;
+uniform mat4 inverseViewMatrix;
+uniform mat4 previousViewMatrix;
+uniform vec2 shadowChannel;
+uniform float historyWeight;
+uniform float depthTolerance;
+
+float linearizeDepth(float depth) {
+    return projection.y / (depth - projection.x);
+}
+
+void main() {
+    vec2 current = vec2(texture(occlusions, textureUV).r, dot(texture(shadows, textureUV).rg, shadowChannel));
+
+    // The alpha marks the history of the models, the background has none
+    float rawDepth = texture(depths, textureUV).r;
+    if (rawDepth >= 1) {
+        outputHistory = vec4(current, 0, 0);
+        return;
+    }
+
+    float depth = linearizeDepth(rawDepth);
+    vec3 positionView = viewRay * depth;
+
+    // Where the fragment was last frame, and how far it was from the previous camera
+    vec2 previousUV = textureUV - texture(velocities, textureUV).rg;
+    float previousDepth = -(previousViewMatrix * inverseViewMatrix * vec4(positionView, 1)).z;
+
+    vec4 previous = texture(history, previousUV);
+
+    // Reject the history outside the screen, and where the surface it belongs to is a different one, which was uncovered
+    float weight = historyWeight;
+    if (any(lessThan(previousUV, vec2(0))) || any(greaterThan(previousUV, vec2(1)))
+            || previous.a <= 0 || abs(previous.b - previousDepth) > depthTolerance * previousDepth) {
+        weight = 0;
+    }
+
+    outputHistory = vec4(mix(current, previous.rg, weight), depth, 1);
+}
@@ -0,0 +1,49 @@
+// $shader_type: fragment
+
+// $texture_layout: diffuse = 0
+// $texture_layout: normals = 1
+// $texture_layout: specular = 2
+
+#version 330
+
+in vec4 positionClip;
+in vec4 previousPositionClip;
+in vec3 normalView;
+in vec2 textureUV;
+in mat3 tangentMatrix;
+
+layout(location = 0) out vec4 outputColor;
+layout(location = 1) out vec2 outputNormal;
+layout(location = 2) out vec2 outputVertexNormal;
+layout(location = 3) out vec2 outputVelocity;
+
+uniform sampler2D diffuse;
+uniform sampler2D normals;
+uniform sampler2D specular;
+uniform float diffuseIntensity;
+uniform float ambientIntensity;
+
+vec2 encodeNormal(vec3 normal) {
+    // Octahedral encoding: project on the octahedron, then fold the lower half over the upper one
+    normal /= abs(normal.x) + abs(normal.y) + abs(normal.z);
+    vec2 encoded = normal.z >= 0 ? normal.xy : (1 - abs(normal.yx)) * vec2(normal.x >= 0 ? 1 : -1, normal.y >= 0 ? 1 : -1);
+    return encoded * 0.5 + 0.5;
+}
+
+float packMaterial(float diffuse, float specular, float ambient) {
+    // Six levels for each parameter, offset by one so that zero is left for the background
+    vec3 levels = floor(clamp(vec3(diffuse, specular, ambient), 0, 1) * 5 + 0.5);
+    return (1 + levels.x + levels.y * 6 + levels.z * 36) / 255;
+}
+
+void main() {
+    float specularIntensity = texture(specular, textureUV).r;
+    outputColor = vec4(texture(diffuse, textureUV).rgb, packMaterial(diffuseIntensity, specularIntensity, ambientIntensity));
+
+    vec3 textureNormalView = tangentMatrix * (texture(normals, textureUV).xyz * 2 - 1);
+    outputNormal = encodeNormal(normalize(textureNormalView));
+
+    outputVertexNormal = encodeNormal(normalize(normalView));
+
+    outputVelocity = (positionClip.xy / positionClip.w - previousPositionClip.xy / previousPositionClip.w) * 0.5;
+}
@@ -0,0 +1,139 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import com.flowpowered.math.matrix.Matrix4f;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the pyramid and the box tests of {@link HiZBuffer}. The view projection is the identity, so the boxes are given directly in normalized device coordinates and the depth of a z coordinate is
+ * z * 0.5 + 0.5.
+ */
+public class HiZBufferTest {
+    private static final float EPSILON = 1e-6f;
+
+    @Test
+    public void testPyramidKeepsFarthestDepth() {
+        final float[] depths = {
+                0.1f, 0.2f, 0.3f, 0.4f,
+                0.5f, 0.6f, 0.7f, 0.8f,
+                0.9f, 0.0f, 0.1f, 0.2f,
+                0.3f, 0.4f, 0.5f, 0.95f
+        };
+        final HiZBuffer buffer = build(depths, 4, 4);
+        Assert.assertEquals(3, buffer.getLevelCount());
+        Assert.assertEquals(2, buffer.getLevelWidth(1));
+        Assert.assertEquals(2, buffer.getLevelHeight(1));
+        Assert.assertEquals(0.6f, buffer.getDepth(1, 0, 0), EPSILON);
+        Assert.assertEquals(0.8f, buffer.getDepth(1, 1, 0), EPSILON);
+        Assert.assertEquals(0.9f, buffer.getDepth(1, 0, 1), EPSILON);
+        Assert.assertEquals(0.95f, buffer.getDepth(1, 1, 1), EPSILON);
+        Assert.assertEquals(1, buffer.getLevelWidth(2));
+        Assert.assertEquals(0.95f, buffer.getDepth(2, 0, 0), EPSILON);
+    }
+
+    @Test
+    public void testPyramidClampsOddSizes() {
+        final float[] depths = {
+                0.1f, 0.1f, 0.1f, 0.1f, 0.2f,
+                0.1f, 0.1f, 0.1f, 0.1f, 0.3f,
+                0.4f, 0.1f, 0.1f, 0.1f, 0.5f
+        };
+        final HiZBuffer buffer = build(depths, 5, 3);
+        Assert.assertEquals(4, buffer.getLevelCount());
+        Assert.assertEquals(3, buffer.getLevelWidth(1));
+        Assert.assertEquals(2, buffer.getLevelHeight(1));
+        // The last column and row have no pair, they only cover the edge texels
+        Assert.assertEquals(0.3f, buffer.getDepth(1, 2, 0), EPSILON);
+        Assert.assertEquals(0.4f, buffer.getDepth(1, 0, 1), EPSILON);
+        Assert.assertEquals(0.5f, buffer.getDepth(1, 2, 1), EPSILON);
+        Assert.assertEquals(0.1f, buffer.getDepth(1, 1, 1), EPSILON);
+        Assert.assertEquals(2, buffer.getLevelWidth(2));
+        Assert.assertEquals(1, buffer.getLevelHeight(2));
+        Assert.assertEquals(0.4f, buffer.getDepth(2, 0, 0), EPSILON);
+        Assert.assertEquals(0.5f, buffer.getDepth(2, 1, 0), EPSILON);
+        Assert.assertEquals(0.5f, buffer.getDepth(3, 0, 0), EPSILON);
+    }
+
+    @Test
+    public void testBoxBehindDepthsIsOccluded() {
+        final HiZBuffer buffer = build(fill(8, 8, 0.5f), 8, 8);
+        Assert.assertTrue(buffer.isOccluded(-0.5f, -0.5f, 0.5f, 0.5f, 0.5f, 0.9f));
+    }
+
+    @Test
+    public void testBoxInFrontOfDepthsIsVisible() {
+        final HiZBuffer buffer = build(fill(8, 8, 0.5f), 8, 8);
+        Assert.assertFalse(buffer.isOccluded(-0.5f, -0.5f, -0.9f, 0.5f, 0.5f, -0.5f));
+    }
+
+    @Test
+    public void testBoxStraddlingDepthsIsVisible() {
+        final HiZBuffer buffer = build(fill(8, 8, 0.5f), 8, 8);
+        Assert.assertFalse(buffer.isOccluded(-0.5f, -0.5f, -0.5f, 0.5f, 0.5f, 0.5f));
+    }
+
+    @Test
+    public void testBoxStraddlingOccluderEdgeIsVisible() {
+        // A near occluder over the left half of the screen, nothing over the right half
+        final float[] depths = fill(8, 8, 1);
+        for (int y = 0; y < 8; y++) {
+            Arrays.fill(depths, y * 8, y * 8 + 4, 0.1f);
+        }
+        final HiZBuffer buffer = build(depths, 8, 8);
+        Assert.assertTrue(buffer.isOccluded(-0.9f, -0.5f, 0, -0.1f, 0.5f, 0.5f));
+        Assert.assertFalse(buffer.isOccluded(-0.5f, -0.5f, 0, 0.5f, 0.5f, 0.5f));
+    }
+
+    @Test
+    public void testBoxOutsideBufferIsVisible() {
+        final HiZBuffer buffer = build(fill(8, 8, 0), 8, 8);
+        Assert.assertFalse(buffer.isOccluded(2, 2, 0.5f, 3, 3, 0.9f));
+    }
+
+    @Test
+    public void testEmptyBufferOccludesNothing() {
+        Assert.assertFalse(new HiZBuffer().isOccluded(-0.5f, -0.5f, 0.5f, 0.5f, 0.5f, 0.9f));
+    }
+
+    private static HiZBuffer build(float[] depths, int width, int height) {
+        final HiZBuffer buffer = new HiZBuffer();
+        buffer.update(FloatBuffer.wrap(depths), width, height, Matrix4f.IDENTITY);
+        return buffer;
+    }
+
+    private static float[] fill(int width, int height, float depth) {
+        final float[] depths = new float[width * height];
+        Arrays.fill(depths, depth);
+        return depths;
+    }
+}
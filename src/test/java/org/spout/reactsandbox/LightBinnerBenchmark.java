@@ -0,0 +1,88 @@
+/*
+ * This file is part of ReactSandbox.
+ *
+ * Copyright (c) 2013 Spout LLC <http://www.spout.org/>
+ * ReactSandbox is licensed under the Spout License Version 1.
+ *
+ * ReactSandbox is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * ReactSandbox is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.reactsandbox;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.flowpowered.math.matrix.Matrix4f;
+import com.flowpowered.math.vector.Vector3f;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times the binning of the point lights into screen tiles for a range of light counts and tile grid sizes. The lights are scattered like those of the sandbox, seen from its start position. Run it
+ * with "mvn -P benchmark test-compile exec:exec".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LightBinnerBenchmark {
+    private static final float TAN_HALF_FOV = (float) Math.tan(Math.toRadians(30));
+    @Param({"16", "128", "1024"})
+    public int lightCount;
+    // Screen sizes in pixels, 40x30 to 120x68 tiles
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String screenSize;
+    private final LightBinner binner = new LightBinner();
+    private final Matrix4f viewMatrix = Matrix4f.createTranslation(new Vector3f(0, -5, -10));
+    private int width;
+    private int height;
+
+    @Setup
+    public void setup() {
+        final String[] size = screenSize.split("x");
+        width = Integer.parseInt(size[0]);
+        height = Integer.parseInt(size[1]);
+        final Random random = new Random(1);
+        binner.clear();
+        for (int i = 0; i < lightCount; i++) {
+            final Vector3f position = new Vector3f(random.nextFloat() * 50 - 25, 3 + random.nextFloat() * 5, random.nextFloat() * 50 - 25);
+            binner.addLight(position, 3 + random.nextFloat() * 5, Vector3f.ONE);
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer bin() {
+        binner.bin(viewMatrix, TAN_HALF_FOV, (float) width / height, width, height);
+        return binner.getIndexData();
+    }
+}